@@ -66,6 +66,11 @@ public class JobSettings extends ValueObject{
 			return this;
 		}
 		
+		public Builder withProgress(JobProgress progress) {
+			job.progress = progress;
+			return this;
+		}
+		
 		public Builder withDateModified(Date date) {
 			job.dateModified = new Date(date.getTime());
 			return this;
@@ -96,6 +101,8 @@ public class JobSettings extends ValueObject{
 	
 	private JobSchedule schedule;
 	
+	private JobProgress progress;
+	
 	@JsonbProperty("date_modified")
 	private Date dateModified;
 	
@@ -127,6 +134,10 @@ public class JobSettings extends ValueObject{
         return jobOwner;
     }
 	
+	public JobProgress getProgress() {
+		return progress;
+	}
+	
 	public Date getDateModified() {
 		if(dateModified == null) {
 			return null;
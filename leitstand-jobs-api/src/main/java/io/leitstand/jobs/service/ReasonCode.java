@@ -47,6 +47,8 @@ public enum ReasonCode implements Reason{
     JOB0205E_CANNOT_MODIFY_COMPLETED_TASK,
     JOB0206I_TASK_PARAMETER_UPDATED,
     JOB0300E_TASK_PROCESSOR_CALL_FAILED,
+    JOB0301E_TASK_TIMEOUT,
+    JOB0302W_TASK_RETRY_SCHEDULED,
 	JOB1000I_REST_API_CALL_SUCCEEDED,
 	JOB1001E_REST_API_CALL_REJECTED,
 	JOB1002E_REST_API_CALL_FAILED;
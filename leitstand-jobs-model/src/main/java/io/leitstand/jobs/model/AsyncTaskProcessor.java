@@ -0,0 +1,47 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.jobs.model;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * An <code>AsyncTaskProcessor</code> processes a single task of a {@link Job} asynchronously.
+ * <p>
+ * The task remains active and occupies no task handler until the returned completion stage completes.
+ * The task result is persisted in a new transaction when the completion stage completes.
+ * A task processor must not modify the task before the completion stage completes.
+ * </p>
+ */
+public interface AsyncTaskProcessor extends TaskProcessor {
+
+    /**
+     * Starts the execution of the given task.
+     * @param task the task to execute
+     * @return the completion stage of the task execution.
+     */
+    CompletionStage<TaskResult> executeAsync(Job_Task task);
+    
+    /**
+     * Executes the given task and waits for the task to complete.
+     * @param task the task to execute
+     * @return whether the task was successfully executed or not
+     */
+    @Override
+    default TaskResult execute(Job_Task task) {
+        return executeAsync(task).toCompletableFuture().join();
+    }
+    
+}
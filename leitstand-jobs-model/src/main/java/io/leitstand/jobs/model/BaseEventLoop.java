@@ -54,10 +54,19 @@ public abstract class BaseEventLoop implements Runnable, StartupListener, Shutdo
 	}
 	
     public EventLoopStatus getStatus() {
-        return newJobEventLoopStatus()
-               .withEnabled(active)
-               .withDateModified(dateModified)
-               .build();
+        EventLoopStatus.Builder status = newJobEventLoopStatus()
+                                         .withEnabled(active)
+                                         .withDateModified(dateModified);
+        addStatusDetails(status);
+        return status.build();
+    }
+    
+    /**
+     * Adds event loop specific details to the event loop status.
+     * @param status the event loop status builder
+     */
+    protected void addStatusDetails(EventLoopStatus.Builder status) {
+        // No details by default.
     }
 	
 	public void startEventLoop() {
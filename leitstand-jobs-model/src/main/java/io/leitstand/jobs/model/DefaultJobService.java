@@ -20,7 +20,10 @@ import static io.leitstand.commons.jpa.BooleanConverter.parseBoolean;
 import static io.leitstand.commons.messages.MessageFactory.createMessage;
 import static io.leitstand.commons.model.ObjectUtil.not;
 import static io.leitstand.commons.model.ObjectUtil.optional;
+import static io.leitstand.jobs.model.JobScheduler.TASK_STATE_COUNTS;
+import static io.leitstand.jobs.model.Job_Task.releaseSuccessors;
 import static io.leitstand.jobs.model.Job_Task.setTaskStateToWaitingForExecution;
+import static io.leitstand.jobs.model.TaskStateChangedEvent.taskStateChanged;
 import static io.leitstand.jobs.service.JobApplication.jobApplication;
 import static io.leitstand.jobs.service.JobFlow.newJobFlow;
 import static io.leitstand.jobs.service.JobId.jobId;
@@ -32,6 +35,7 @@ import static io.leitstand.jobs.service.JobSettings.newJobSettings;
 import static io.leitstand.jobs.service.JobTask.newJobTask;
 import static io.leitstand.jobs.service.JobTasks.newJobTasks;
 import static io.leitstand.jobs.service.JobType.jobType;
+import static io.leitstand.jobs.service.ReasonCode.JOB0100E_JOB_NOT_FOUND;
 import static io.leitstand.jobs.service.ReasonCode.JOB0101I_JOB_SETTINGS_UPDATED;
 import static io.leitstand.jobs.service.ReasonCode.JOB0102E_JOB_SETTINGS_IMMUTABLE;
 import static io.leitstand.jobs.service.ReasonCode.JOB0103I_JOB_CONFIRMED;
@@ -58,17 +62,16 @@ import static java.lang.String.format;
 import static java.util.stream.Collectors.toList;
 
 import java.util.Date;
-import java.util.HashSet;
-import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.logging.Logger;
 
+import javax.enterprise.event.Event;
 import javax.inject.Inject;
 
 import io.leitstand.commons.ConflictException;
+import io.leitstand.commons.EntityNotFoundException;
 import io.leitstand.commons.db.DatabaseService;
 import io.leitstand.commons.messages.Messages;
 import io.leitstand.commons.model.Repository;
@@ -93,20 +96,6 @@ public class DefaultJobService implements JobService {
 	
 	private static final Logger LOG = Logger.getLogger(DefaultJobService.class.getName());
 	
-	static class TaskByStateCount {
-		
-		private int[] counts = new int[State.values().length];
-		
-		void increment(State state) {
-			counts[state.ordinal()]++;
-		}
-		
-		int getCount(State state) {
-			return counts[state.ordinal()];
-		}
-		
-	}
-
 	@Inject
 	@Jobs
 	private Repository repository;
@@ -130,6 +119,12 @@ public class DefaultJobService implements JobService {
 	@Inject
 	private UserContext user;
 	
+	@Inject
+	private Event<JobReadyEvent> jobReady;
+	
+	@Inject
+	private Event<JobEvent> jobEvents;
+	
 	protected DefaultJobService() {
 		
 	}
@@ -140,7 +135,9 @@ public class DefaultJobService implements JobService {
 					  InventoryClient inventory,
 					  JobEditor jobEditor,
 					  Messages messages,
-					  UserContext user){
+					  UserContext user,
+					  Event<JobReadyEvent> jobReady,
+					  Event<JobEvent> jobEvents){
 		this.repository = repository;
 		this.jobs = jobs;
 		this.db = db;
@@ -148,25 +145,36 @@ public class DefaultJobService implements JobService {
 		this.editor = jobEditor;
 		this.messages = messages;
 		this.user = user;
+		this.jobReady = jobReady;
+		this.jobEvents = jobEvents;
 	}
 	
 	public JobProgress getJobProgress(JobId jobId) {
-		Job job = jobs.fetchJob(jobId);
-		Set<Job_Task> elements = new HashSet<>();
-		job.getTasks();
-		TaskByStateCount stats = new TaskByStateCount();
-		traverse(elements, job.getStart(),stats);
-		return jobProgress(stats);
-				
-	}
-	
-	private void traverse(Set<Job_Task> tasks, Job_Task task, TaskByStateCount stats){
-		if(tasks.add(task)) {
-			stats.increment(task.getTaskState());
-			for(Job_Task_Transition transition : task.getSuccessors()){
-				traverse(tasks, transition.getTo(),stats);
-			}
+		// Read the task state counters without loading the job entity graph or the task rows.
+		// The outer join returns a single row with a NULL state for a job without tasks
+		// and no row at all if the job does not exist.
+		String sql = "SELECT c.state, sum(c.count) "+
+		             "FROM job.job j "+
+		             "LEFT OUTER JOIN "+TASK_STATE_COUNTS+" c "+
+		             "ON j.id = c.job_id "+
+		             "WHERE j.uuid = ? "+
+		             "GROUP BY c.state";
+		int[] stats = new int[State.values().length];
+		List<String> states = db.executeQuery(prepare(sql, jobId.getValue()), 
+		                                      rs -> {
+		                                          String state = rs.getString(1);
+		                                          if(state != null) {
+		                                              stats[taskState(state).ordinal()] = rs.getInt(2);
+		                                          }
+		                                          return state;
+		                                      });
+		if(states.isEmpty()) {
+		    LOG.fine(() -> format("%s: Job %s not found.",
+		                          JOB0100E_JOB_NOT_FOUND.getReasonCode(),
+		                          jobId));
+		    throw new EntityNotFoundException(JOB0100E_JOB_NOT_FOUND,jobId);
 		}
+		return jobProgress(stats);
 	}
 	
 	@Override
@@ -230,6 +238,8 @@ public class DefaultJobService implements JobService {
     		}
     		// Mark job ready for execution
     		job.setJobState(READY);
+    		jobReady.fire(new JobReadyEvent(job.getJobId()));
+    		jobEvents.fire(new JobStateChangedEvent(job.getJobId(), READY));
 
             LOG.fine(() -> format("%s: Job %s (%s) stored. Owner: %s", 
                                   JOB0107I_JOB_STORED.getReasonCode(),
@@ -276,11 +286,12 @@ public class DefaultJobService implements JobService {
 	@Override
 	public JobTasks getJobTasks(JobId jobId) {
 		Job job = jobs.fetchJob(jobId);
+		Map<ElementId,ElementSettings> elements = inventory.getElements(job);
 		
 		List<JobTask> tasks = job.getOrderedTasks()
 								 .stream()
 								 .filter(task -> task.getElementId() != null || task.getParameters() != null)
-								 .map(task -> taskInfo(task))
+								 .map(task -> taskInfo(task, elements.get(task.getElementId())))
 								 .collect(toList());
 		
 		ElementGroupSettings group = inventory.getGroupSettings(job);
@@ -304,18 +315,15 @@ public class DefaultJobService implements JobService {
 	public JobInfo getJobInfo(JobId jobId) {
 		
 		Job job = jobs.fetchJob(jobId);
+		Map<ElementId,ElementSettings> elements = inventory.getElements(job);
 		
 		List<JobTask> tasks = job.getOrderedTasks()
 								 .stream()
 								 .filter(task -> task.getElementId() != null || task.getParameters() != null)
-								 .map(task -> taskInfo(task))
+								 .map(task -> taskInfo(task, elements.get(task.getElementId())))
 								 .collect(toList());
 		
-		TaskByStateCount stats = new TaskByStateCount();
-		Set<Job_Task> elements = new LinkedHashSet<>();
-		traverse(elements, job.getStart(),stats);
-			
-		JobProgress progress = jobProgress(stats);
+		JobProgress progress = jobProgress(JobDag.snapshot(job).getTaskCounts());
 				
 		ElementGroupSettings group = inventory.getGroupSettings(job.getGroupId());
 
@@ -337,20 +345,19 @@ public class DefaultJobService implements JobService {
 			   .build();
 	}
 
-    private JobProgress jobProgress(TaskByStateCount stats) {
+    private static JobProgress jobProgress(int[] stats) {
         return newJobProgress()
-               .withActiveCount(stats.getCount(ACTIVE))
-               .withReadyCount(stats.getCount(READY))
-               .withCompletedCount(stats.getCount(COMPLETED)+stats.getCount(CONFIRM))
-			   .withFailedCount(stats.getCount(REJECTED)+stats.getCount(FAILED))
-			   .withTimeoutCount(stats.getCount(TIMEOUT))
-			   .withWaitingCount(stats.getCount(WAITING))
+               .withActiveCount(stats[ACTIVE.ordinal()])
+               .withReadyCount(stats[READY.ordinal()])
+               .withCompletedCount(stats[COMPLETED.ordinal()]+stats[CONFIRM.ordinal()])
+			   .withFailedCount(stats[REJECTED.ordinal()]+stats[FAILED.ordinal()])
+			   .withTimeoutCount(stats[TIMEOUT.ordinal()])
+			   .withWaitingCount(stats[WAITING.ordinal()])
 			   .build();
     }
 
 
-	private JobTask taskInfo(Job_Task task) {
-		ElementSettings element = inventory.getElementSettings(task);
+	private static JobTask taskInfo(Job_Task task, ElementSettings element) {
 		return newJobTask()
 			   .withTaskId(task.getTaskId())
 			   .withTaskName(task.getTaskName())
@@ -384,12 +391,19 @@ public class DefaultJobService implements JobService {
 									   job.getJobName(),
 									   job.getJobId());	
 		}
-		if(job.isFailed() || job.isCancelled()) {
+		if(job.isFailed() || job.isTimedOut() || job.isCancelled()) {
 			job.getTaskList()
 			   .stream()
 			   .filter(Job_Task::isResumable)
-			   .forEach(task -> task.setTaskState(WAITING));
+			   .forEach(task -> {
+			       task.setTaskState(WAITING);
+			       task.resetPendingPredecessors();
+			       task.resetAttempts();
+			       jobEvents.fire(taskStateChanged(task));
+			   });
 			job.setJobState(ACTIVE);
+			jobReady.fire(new JobReadyEvent(job.getJobId()));
+			jobEvents.fire(new JobStateChangedEvent(job.getJobId(), ACTIVE));
 		}
 
 		LOG.fine(()-> format("%s: Resumed job %s (%s). Job State: %s, Owner: %s",
@@ -409,8 +423,20 @@ public class DefaultJobService implements JobService {
 	@Override
 	public List<JobSettings> findJobs(JobQuery query) {
 		
-		String sql = "SELECT j.application, j.type, j.uuid,j.name, j.state, j.owner, j.tsmodified, j.autoresume, j.tsschedule, j.tssuspend "+
+		// The progress of each listed job is read from the task state counters.
+		String sql = "SELECT j.application, j.type, j.uuid,j.name, j.state, j.owner, j.tsmodified, j.autoresume, j.tsschedule, j.tssuspend, "+
+		             "p.active, p.ready, p.completed, p.failed, p.timeout, p.waiting "+
 				 	 "FROM job.job j "+
+				 	 "LEFT JOIN LATERAL ("+
+				 	   "SELECT coalesce(sum(c.count) FILTER (WHERE c.state = 'ACTIVE'),0) AS active, "+
+				 	          "coalesce(sum(c.count) FILTER (WHERE c.state = 'READY'),0) AS ready, "+
+				 	          "coalesce(sum(c.count) FILTER (WHERE c.state IN ('COMPLETED','CONFIRM')),0) AS completed, "+
+				 	          "coalesce(sum(c.count) FILTER (WHERE c.state IN ('FAILED','REJECTED')),0) AS failed, "+
+				 	          "coalesce(sum(c.count) FILTER (WHERE c.state = 'TIMEOUT'),0) AS timeout, "+
+				 	          "coalesce(sum(c.count) FILTER (WHERE c.state = 'WAITING'),0) AS waiting "+
+				 	   "FROM "+TASK_STATE_COUNTS+" c "+
+				 	   "WHERE c.job_id = j.id"+
+				 	 ") p ON TRUE "+
 				 	 "WHERE (j.name ~ ? "+
 				 	 "OR j.application ~ ?"+
 				 	 "OR j.type ~ ? ) ";
@@ -448,6 +474,14 @@ public class DefaultJobService implements JobService {
 												  .withStartTime(rs.getTimestamp(9))
 												  .withEndTime(rs.getTimestamp(10))
 												  .build())
+									.withProgress(newJobProgress()
+												  .withActiveCount(rs.getInt(11))
+												  .withReadyCount(rs.getInt(12))
+												  .withCompletedCount(rs.getInt(13))
+												  .withFailedCount(rs.getInt(14))
+												  .withTimeoutCount(rs.getInt(15))
+												  .withWaitingCount(rs.getInt(16))
+												  .build())
 									.build());
 	}
 
@@ -474,23 +508,37 @@ public class DefaultJobService implements JobService {
 				   				   job.getJobName(), 
 				   				   job.getJobApplication()));
 		job.setJobState(CANCELLED);
+		jobEvents.fire(new JobStateChangedEvent(job.getJobId(), CANCELLED));
 		job.getTaskList()
 		   .stream()
 		   .filter(not(Job_Task::isTerminated))
-		   .forEach(task -> task.setTaskState(State.CANCELLED));
+		   .forEach(task -> {
+		       task.setTaskState(State.CANCELLED);
+		       jobEvents.fire(taskStateChanged(task));
+		   });
 	}
 
 	@Override
 	public void confirmJob(JobId jobId) {
 		Job job = jobs.fetchJob(jobId);
 		if(job.isSuspended()) {
-		    job.getTaskList()
-		       .stream()
-		       .filter(Job_Task::isSuspended)
-		       .forEach(task -> task.setTaskState(State.COMPLETED));
+		    List<Job_Task> confirmedTasks = job.getTaskList()
+		                                       .stream()
+		                                       .filter(Job_Task::isSuspended)
+		                                       .collect(toList());
+		    confirmedTasks.forEach(task -> {
+		        task.setTaskState(State.COMPLETED);
+		        jobEvents.fire(taskStateChanged(task));
+		    });
 		    
+		    State jobState = job.getJobState();
 		    job.confirmed();
 		    job.completed();
+		    if(job.getJobState() != jobState) {
+		        jobEvents.fire(new JobStateChangedEvent(job.getJobId(), job.getJobState()));
+		    }
+		    confirmedTasks.forEach(task -> repository.execute(releaseSuccessors(task)));
+		    jobReady.fire(new JobReadyEvent(job.getJobId()));
 		    LOG.fine(()->format("%s: Job %s (%s) confirmed.",
 								JOB0103I_JOB_CONFIRMED.getReasonCode(),
 								job.getJobName(),
@@ -30,6 +30,8 @@ import static io.leitstand.jobs.service.ReasonCode.JOB0205E_CANNOT_MODIFY_COMPLE
 import static io.leitstand.jobs.service.ReasonCode.JOB0206I_TASK_PARAMETER_UPDATED;
 import static java.lang.String.format;
 
+import java.util.concurrent.CompletionStage;
+
 import javax.inject.Inject;
 import javax.json.JsonObject;
 
@@ -64,6 +66,9 @@ public class DefaultJobTaskService implements JobTaskService{
 	@Inject
 	private TaskProcessingService processor;
 	
+	@Inject
+	private TaskSchedulerService scheduler;
+	
 	@Inject
 	private Messages messages;
 	
@@ -101,7 +106,10 @@ public class DefaultJobTaskService implements JobTaskService{
             throw new EntityNotFoundException(JOB0200E_TASK_NOT_FOUND,
                                               taskId);
         }
-		processor.executeTask(task);
+		CompletionStage<TaskResult> outcome = processor.executeTask(task);
+		if(outcome != null) {
+		    scheduler.awaitOutcome(taskId, outcome);
+		}
 	}
 
 	@Override
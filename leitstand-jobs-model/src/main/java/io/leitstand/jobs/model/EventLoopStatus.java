@@ -1,8 +1,13 @@
 package io.leitstand.jobs.model;
 
 import static io.leitstand.commons.model.BuilderUtil.assertNotInvalidated;
+import static java.util.Collections.unmodifiableList;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.List;
+import java.util.TreeSet;
 
 public class EventLoopStatus {
 
@@ -42,6 +47,105 @@ public class EventLoopStatus {
             status.dateModified = new Date(dateModified.getTime());
             return this;
         }
+        
+        /**
+         * Sets the maximum number of concurrently executed tasks.
+         * @param limit the maximum number of concurrently executed tasks.
+         * @return a reference to this builder to continue object creation
+         */
+        public Builder withHandlerLimit(int limit) {
+            assertNotInvalidated(getClass(), status);
+            status.handlerLimit = limit;
+            return this;
+        }
+        
+        /**
+         * Sets the number of tasks currently being executed.
+         * @param inFlight the number of tasks currently being executed.
+         * @return a reference to this builder to continue object creation
+         */
+        public Builder withHandlersInFlight(int inFlight) {
+            assertNotInvalidated(getClass(), status);
+            status.handlersInFlight = inFlight;
+            return this;
+        }
+        
+        /**
+         * Sets whether the handler limit adapts to the observed task execution latency and error rate.
+         * @param adaptive <code>true</code> if the limit is adaptive, <code>false</code> otherwise.
+         * @return a reference to this builder to continue object creation
+         */
+        public Builder withAdaptiveHandlerLimit(boolean adaptive) {
+            assertNotInvalidated(getClass(), status);
+            status.adaptiveHandlerLimit = adaptive;
+            return this;
+        }
+        
+        /**
+         * Sets the number of tasks waiting for execution or the number of job events waiting to be published.
+         * @param queueDepth the number of tasks waiting for execution or job events waiting to be published.
+         * @return a reference to this builder to continue object creation
+         */
+        public Builder withQueueDepth(int queueDepth) {
+            assertNotInvalidated(getClass(), status);
+            status.queueDepth = queueDepth;
+            return this;
+        }
+        
+        /**
+         * Sets the number of job events published since startup.
+         * @param delivered the number of published job events.
+         * @return a reference to this builder to continue object creation
+         */
+        public Builder withDeliveredEvents(long delivered) {
+            assertNotInvalidated(getClass(), status);
+            status.deliveredEvents = delivered;
+            return this;
+        }
+        
+        /**
+         * Sets the delivery latency of the last published batch of job events.
+         * @param latencyMillis the delivery latency in milliseconds.
+         * @return a reference to this builder to continue object creation
+         */
+        public Builder withDeliveryLatencyMillis(long latencyMillis) {
+            assertNotInvalidated(getClass(), status);
+            status.deliveryLatencyMillis = latencyMillis;
+            return this;
+        }
+        
+        /**
+         * Sets the ID of the node running the event loop.
+         * @param node the node ID
+         * @return a reference to this builder to continue object creation
+         */
+        public Builder withNode(String node) {
+            assertNotInvalidated(getClass(), status);
+            status.node = node;
+            return this;
+        }
+        
+        /**
+         * Sets the task shards owned by this node.
+         * @param shards the owned task shards
+         * @return a reference to this builder to continue object creation
+         */
+        public Builder withOwnedShards(Collection<Integer> shards) {
+            assertNotInvalidated(getClass(), status);
+            status.ownedShards = new ArrayList<>(new TreeSet<>(shards));
+            return this;
+        }
+        
+        /**
+         * Sets whether this node is the leader among all nodes running the event loop.
+         * @param leader <code>true</code> if this node is the leader, <code>false</code> otherwise.
+         * @return a reference to this builder to continue object creation
+         */
+        public Builder withLeader(boolean leader) {
+            assertNotInvalidated(getClass(), status);
+            status.leader = leader;
+            return this;
+        }
             
         /**
          * Returns an immutable job event loop state.
@@ -61,6 +165,15 @@ public class EventLoopStatus {
     
     private boolean enabled;
     private Date dateModified;
+    private Integer handlerLimit;
+    private Integer handlersInFlight;
+    private Boolean adaptiveHandlerLimit;
+    private Integer queueDepth;
+    private Long deliveredEvents;
+    private Long deliveryLatencyMillis;
+    private String node;
+    private Boolean leader;
+    private List<Integer> ownedShards;
     
     /**
      * Returns whether the job event loop is enabled.
@@ -81,5 +194,82 @@ public class EventLoopStatus {
         return new Date(dateModified.getTime());
     }
     
+    /**
+     * Returns the maximum number of concurrently executed tasks.
+     * @return the maximum number of concurrently executed tasks or <code>null</code> if the event loop does not execute tasks.
+     */
+    public Integer getHandlerLimit() {
+        return handlerLimit;
+    }
+    
+    /**
+     * Returns the number of tasks currently being executed.
+     * @return the number of tasks currently being executed or <code>null</code> if the event loop does not execute tasks.
+     */
+    public Integer getHandlersInFlight() {
+        return handlersInFlight;
+    }
+    
+    /**
+     * Returns whether the handler limit adapts to the observed task execution latency and error rate.
+     * @return <code>true</code> if the limit is adaptive, <code>false</code> if the limit is fixed 
+     * and <code>null</code> if the event loop does not execute tasks.
+     */
+    public Boolean getAdaptiveHandlerLimit() {
+        return adaptiveHandlerLimit;
+    }
+    
+    /**
+     * Returns the number of tasks waiting for execution or the number of job events waiting to be published.
+     * @return the number of waiting tasks or job events or <code>null</code> if the event loop has no queue.
+     */
+    public Integer getQueueDepth() {
+        return queueDepth;
+    }
+    
+    /**
+     * Returns the number of job events published since startup.
+     * @return the number of published job events or <code>null</code> if the event loop does not publish job events.
+     */
+    public Long getDeliveredEvents() {
+        return deliveredEvents;
+    }
+    
+    /**
+     * Returns the delivery latency of the last published batch of job events, 
+     * i.e. the time elapsed between storing the oldest event of the batch and publishing the batch.
+     * @return the delivery latency in milliseconds or <code>null</code> if the event loop does not publish job events.
+     */
+    public Long getDeliveryLatencyMillis() {
+        return deliveryLatencyMillis;
+    }
+    
+    /**
+     * Returns the ID of the node running the event loop.
+     * @return the node ID or <code>null</code> if the event loop does not elect a leader.
+     */
+    public String getNode() {
+        return node;
+    }
+    
+    /**
+     * Returns whether this node is the leader among all nodes running the event loop.
+     * @return <code>true</code> if this node is the leader, <code>false</code> if another node is the leader
+     * and <code>null</code> if the event loop does not elect a leader.
+     */
+    public Boolean getLeader() {
+        return leader;
+    }
+    
+    /**
+     * Returns the task shards owned by this node.
+     * @return the owned task shards or <code>null</code> if task sharding is disabled.
+     */
+    public List<Integer> getOwnedShards() {
+        if(ownedShards == null) {
+            return null;
+        }
+        return unmodifiableList(ownedShards);
+    }
     
 }
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.jobs.model;
+
+import io.leitstand.jobs.service.TaskId;
+import io.leitstand.jobs.service.TaskType;
+
+/**
+ * A task claimed for execution by the {@link TaskSchedulerService}.
+ */
+public class ExecutableTask {
+    
+    public static ExecutableTask executableTask(TaskId taskId, TaskType taskType) {
+        return new ExecutableTask(taskId, taskType);
+    }
+
+    private final TaskId taskId;
+    private final TaskType taskType;
+    
+    protected ExecutableTask(TaskId taskId, TaskType taskType) {
+        this.taskId = taskId;
+        this.taskType = taskType;
+    }
+    
+    /**
+     * Returns the task ID.
+     * @return the task ID.
+     */
+    public TaskId getTaskId() {
+        return taskId;
+    }
+    
+    /**
+     * Returns the task type or <code>null</code> if the task has no type.
+     * @return the task type.
+     */
+    public TaskType getTaskType() {
+        return taskType;
+    }
+    
+}
@@ -0,0 +1,341 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.jobs.model;
+
+import static io.leitstand.jobs.model.InventoryCacheStatistics.newInventoryCacheStatistics;
+import static java.lang.Boolean.TRUE;
+import static java.lang.Integer.getInteger;
+import static java.lang.Long.getLong;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.enterprise.context.ApplicationScoped;
+
+import io.leitstand.inventory.service.ElementGroupId;
+import io.leitstand.inventory.service.ElementGroupName;
+import io.leitstand.inventory.service.ElementGroupSettings;
+import io.leitstand.inventory.service.ElementGroupType;
+import io.leitstand.inventory.service.ElementId;
+import io.leitstand.inventory.service.ElementName;
+import io.leitstand.inventory.service.ElementSettings;
+
+/**
+ * Application-wide cache of element and element group settings.
+ * <p>
+ * Elements are cached by their ID and indexed by their name. 
+ * Element groups are cached by their ID and indexed by their type and name.
+ * All entries expire after the configured time-to-live.
+ * Unknown elements and element groups are remembered for a shorter time-to-live
+ * to not query the inventory for the same unknown name over and over again.
+ * The {@link InventoryClient} reads through this cache.
+ */
+@ApplicationScoped
+public class InventoryCache {
+    
+    static final String CACHE_SIZE = "leitstand.jobs.inventory_cache.size";
+    static final String CACHE_TTL_SECONDS = "leitstand.jobs.inventory_cache.ttl_seconds";
+    static final String CACHE_UNKNOWN_TTL_SECONDS = "leitstand.jobs.inventory_cache.unknown_ttl_seconds";
+    
+    private static final class GroupKey {
+        private final ElementGroupType groupType;
+        private final ElementGroupName groupName;
+        
+        GroupKey(ElementGroupType groupType, ElementGroupName groupName){
+            this.groupType = groupType;
+            this.groupName = groupName;
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(groupType, groupName);
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if(o == this) {
+                return true;
+            }
+            if(o == null || o.getClass() != getClass()) {
+                return false;
+            }
+            GroupKey key = (GroupKey) o;
+            return Objects.equals(groupType, key.groupType) && Objects.equals(groupName, key.groupName);
+        }
+    }
+    
+    private final long ttlMillis;
+    private final long unknownTtlMillis;
+    private final TtlCache<ElementId,ElementSettings> elements;
+    private final TtlCache<ElementName,ElementId> elementNames;
+    private final TtlCache<ElementGroupId,ElementGroupSettings> groups;
+    private final TtlCache<GroupKey,ElementGroupId> groupNames;
+    private final TtlCache<Object,Boolean> unknownElements;
+    private final TtlCache<Object,Boolean> unknownGroups;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    
+    public InventoryCache() {
+        this(getInteger(CACHE_SIZE, 10000),
+             SECONDS.toMillis(getLong(CACHE_TTL_SECONDS, 60L)),
+             SECONDS.toMillis(getLong(CACHE_UNKNOWN_TTL_SECONDS, 5L)));
+    }
+    
+    protected InventoryCache(int maxSize, long ttlMillis) {
+        this(maxSize, ttlMillis, SECONDS.toMillis(5));
+    }
+    
+    protected InventoryCache(int maxSize, long ttlMillis, long unknownTtlMillis) {
+        this.ttlMillis = ttlMillis;
+        this.unknownTtlMillis = unknownTtlMillis;
+        this.elements = new TtlCache<>(maxSize, ttlMillis);
+        this.elementNames = new TtlCache<>(maxSize, ttlMillis);
+        this.groups = new TtlCache<>(maxSize, ttlMillis);
+        this.groupNames = new TtlCache<>(maxSize, ttlMillis);
+        this.unknownElements = new TtlCache<>(maxSize, unknownTtlMillis);
+        this.unknownGroups = new TtlCache<>(maxSize, unknownTtlMillis);
+    }
+    
+    /**
+     * Returns the cached element settings.
+     * @param id the element ID
+     * @return the cached element settings or <code>null</code> if the element is not cached.
+     */
+    public ElementSettings getElement(ElementId id) {
+        return count(elements.get(id));
+    }
+    
+    /**
+     * Returns the cached element settings.
+     * @param name the element name
+     * @return the cached element settings or <code>null</code> if the element is not cached.
+     */
+    public ElementSettings getElement(ElementName name) {
+        ElementId id = elementNames.get(name);
+        if(id == null) {
+            return count(null);
+        }
+        ElementSettings settings = elements.get(id);
+        if(settings == null || !name.equals(settings.getElementName())) {
+            // Element has expired or was renamed.
+            return count(null);
+        }
+        return count(settings);
+    }
+    
+    /**
+     * Caches the given element settings.
+     * @param settings the element settings
+     */
+    public void putElement(ElementSettings settings) {
+        elements.put(settings.getElementId(), settings);
+        elementNames.put(settings.getElementName(), settings.getElementId());
+        unknownElements.invalidate(settings.getElementId());
+        unknownElements.invalidate(settings.getElementName());
+    }
+    
+    /**
+     * Tests whether the element is known to not exist.
+     * @param id the element ID
+     * @return <code>true</code> if the inventory recently reported that the element does not exist.
+     */
+    public boolean isUnknownElement(ElementId id) {
+        return countUnknown(unknownElements.get(id));
+    }
+
+    /**
+     * Tests whether the element is known to not exist.
+     * @param name the element name
+     * @return <code>true</code> if the inventory recently reported that the element does not exist.
+     */
+    public boolean isUnknownElement(ElementName name) {
+        return countUnknown(unknownElements.get(name));
+    }
+    
+    /**
+     * Remembers that the element does not exist.
+     * @param id the element ID
+     */
+    public void putUnknownElement(ElementId id) {
+        unknownElements.put(id, TRUE);
+    }
+    
+    /**
+     * Remembers that the element does not exist.
+     * @param name the element name
+     */
+    public void putUnknownElement(ElementName name) {
+        unknownElements.put(name, TRUE);
+    }
+    
+    /**
+     * Removes an element from the cache including its name index entry and all unknown element names.
+     * @param id the element ID
+     */
+    public void invalidateElement(ElementId id) {
+        elements.invalidate(id);
+        elementNames.invalidateIf((name,elementId) -> id.equals(elementId));
+        unknownElements.invalidate(id);
+        // An unknown element name cannot be related to an element ID.
+        // Remove all unknown element names, as the invalidated element might have been created under one of them.
+        unknownElements.invalidateIf((key,unknown) -> key instanceof ElementName);
+    }
+    
+    /**
+     * Returns the cached element group settings.
+     * @param id the element group ID
+     * @return the cached element group settings or <code>null</code> if the group is not cached.
+     */
+    public ElementGroupSettings getGroup(ElementGroupId id) {
+        return count(groups.get(id));
+    }
+    
+    /**
+     * Returns the cached element group settings.
+     * @param groupType the element group type
+     * @param groupName the element group name
+     * @return the cached element group settings or <code>null</code> if the group is not cached.
+     */
+    public ElementGroupSettings getGroup(ElementGroupType groupType, ElementGroupName groupName) {
+        ElementGroupId id = groupNames.get(new GroupKey(groupType,groupName));
+        if(id == null) {
+            return count(null);
+        }
+        ElementGroupSettings settings = groups.get(id);
+        if(settings == null || !groupName.equals(settings.getGroupName())) {
+            // Group has expired or was renamed.
+            return count(null);
+        }
+        return count(settings);
+    }
+    
+    /**
+     * Caches the given element group settings.
+     * @param settings the element group settings
+     */
+    public void putGroup(ElementGroupSettings settings) {
+        groups.put(settings.getGroupId(), settings);
+        groupNames.put(new GroupKey(settings.getGroupType(),settings.getGroupName()), 
+                       settings.getGroupId());
+        unknownGroups.invalidate(settings.getGroupId());
+        unknownGroups.invalidate(new GroupKey(settings.getGroupType(),settings.getGroupName()));
+    }
+    
+    /**
+     * Tests whether the element group is known to not exist.
+     * @param id the element group ID
+     * @return <code>true</code> if the inventory recently reported that the group does not exist.
+     */
+    public boolean isUnknownGroup(ElementGroupId id) {
+        return countUnknown(unknownGroups.get(id));
+    }
+    
+    /**
+     * Tests whether the element group is known to not exist.
+     * @param groupType the element group type
+     * @param groupName the element group name
+     * @return <code>true</code> if the inventory recently reported that the group does not exist.
+     */
+    public boolean isUnknownGroup(ElementGroupType groupType, ElementGroupName groupName) {
+        return countUnknown(unknownGroups.get(new GroupKey(groupType,groupName)));
+    }
+    
+    /**
+     * Remembers that the element group does not exist.
+     * @param id the element group ID
+     */
+    public void putUnknownGroup(ElementGroupId id) {
+        unknownGroups.put(id, TRUE);
+    }
+    
+    /**
+     * Remembers that the element group does not exist.
+     * @param groupType the element group type
+     * @param groupName the element group name
+     */
+    public void putUnknownGroup(ElementGroupType groupType, ElementGroupName groupName) {
+        unknownGroups.put(new GroupKey(groupType,groupName), TRUE);
+    }
+    
+    /**
+     * Removes an element group from the cache including its name index entry and all unknown group names.
+     * @param id the element group ID
+     */
+    public void invalidateGroup(ElementGroupId id) {
+        groups.invalidate(id);
+        groupNames.invalidateIf((key,groupId) -> id.equals(groupId));
+        unknownGroups.invalidate(id);
+        // An unknown group name cannot be related to an element group ID.
+        // Remove all unknown group names, as the invalidated group might have been created under one of them.
+        unknownGroups.invalidateIf((key,unknown) -> key instanceof GroupKey);
+    }
+    
+    /**
+     * Removes all elements and element groups from the cache.
+     */
+    public void invalidateAll() {
+        elements.invalidateAll();
+        elementNames.invalidateAll();
+        groups.invalidateAll();
+        groupNames.invalidateAll();
+        unknownElements.invalidateAll();
+        unknownGroups.invalidateAll();
+    }
+    
+    /**
+     * Returns the cache statistics.
+     * @return the cache statistics.
+     */
+    public InventoryCacheStatistics getStatistics() {
+        return newInventoryCacheStatistics()
+               .withElements(elements.getSize())
+               .withGroups(groups.getSize())
+               .withUnknowns(unknownElements.getSize() + unknownGroups.getSize())
+               .withMaxSize(elements.getMaxSize())
+               .withTtlSeconds(MILLISECONDS.toSeconds(ttlMillis))
+               .withUnknownTtlSeconds(MILLISECONDS.toSeconds(unknownTtlMillis))
+               .withHits(hits.sum())
+               .withMisses(misses.sum())
+               .withEvictions(elements.getEvictions() + 
+                              elementNames.getEvictions() + 
+                              groups.getEvictions() + 
+                              groupNames.getEvictions() +
+                              unknownElements.getEvictions() + 
+                              unknownGroups.getEvictions())
+               .build();
+    }
+    
+    private <T> T count(T value) {
+        if(value == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return value;
+    }
+    
+    private boolean countUnknown(Boolean unknown) {
+        if(unknown == null) {
+            return false;
+        }
+        // A known unknown saves a call to the inventory.
+        hits.increment();
+        return true;
+    }
+    
+}
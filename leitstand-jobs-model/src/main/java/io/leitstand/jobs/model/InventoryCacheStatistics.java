@@ -0,0 +1,235 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.jobs.model;
+
+import static io.leitstand.commons.model.BuilderUtil.assertNotInvalidated;
+
+/**
+ * Statistics of the inventory cache.
+ */
+public class InventoryCacheStatistics {
+
+    /**
+     * Creates a new inventory cache statistics.
+     * @return a builder for an immutable inventory cache statistics object.
+     */
+    public static Builder newInventoryCacheStatistics() {
+        return new Builder();
+    }
+    
+    /**
+     * Builder for immutable inventory cache statistics value object.
+     */
+    public static class Builder {
+        
+        private InventoryCacheStatistics stats = new InventoryCacheStatistics();
+        
+        /**
+         * Sets the number of cached elements.
+         * @param elements the number of cached elements.
+         * @return a reference to this builder to continue object creation
+         */
+        public Builder withElements(int elements) {
+            assertNotInvalidated(getClass(), stats);
+            stats.elements = elements;
+            return this;
+        }
+        
+        /**
+         * Sets the number of cached element groups.
+         * @param groups the number of cached element groups.
+         * @return a reference to this builder to continue object creation
+         */
+        public Builder withGroups(int groups) {
+            assertNotInvalidated(getClass(), stats);
+            stats.groups = groups;
+            return this;
+        }
+        
+        /**
+         * Sets the number of cached unknown elements and element groups.
+         * @param unknowns the number of cached unknown elements and element groups.
+         * @return a reference to this builder to continue object creation
+         */
+        public Builder withUnknowns(int unknowns) {
+            assertNotInvalidated(getClass(), stats);
+            stats.unknowns = unknowns;
+            return this;
+        }
+        
+        /**
+         * Sets the maximum number of cached entries per cache.
+         * @param maxSize the maximum number of cached entries.
+         * @return a reference to this builder to continue object creation
+         */
+        public Builder withMaxSize(int maxSize) {
+            assertNotInvalidated(getClass(), stats);
+            stats.maxSize = maxSize;
+            return this;
+        }
+        
+        /**
+         * Sets the time-to-live of a cached entry in seconds.
+         * @param ttlSeconds the time-to-live in seconds.
+         * @return a reference to this builder to continue object creation
+         */
+        public Builder withTtlSeconds(long ttlSeconds) {
+            assertNotInvalidated(getClass(), stats);
+            stats.ttlSeconds = ttlSeconds;
+            return this;
+        }
+        
+        /**
+         * Sets the time-to-live of a cached unknown element or element group in seconds.
+         * @param unknownTtlSeconds the time-to-live in seconds.
+         * @return a reference to this builder to continue object creation
+         */
+        public Builder withUnknownTtlSeconds(long unknownTtlSeconds) {
+            assertNotInvalidated(getClass(), stats);
+            stats.unknownTtlSeconds = unknownTtlSeconds;
+            return this;
+        }
+        
+        /**
+         * Sets the number of cache hits.
+         * @param hits the number of cache hits.
+         * @return a reference to this builder to continue object creation
+         */
+        public Builder withHits(long hits) {
+            assertNotInvalidated(getClass(), stats);
+            stats.hits = hits;
+            return this;
+        }
+        
+        /**
+         * Sets the number of cache misses.
+         * @param misses the number of cache misses.
+         * @return a reference to this builder to continue object creation
+         */
+        public Builder withMisses(long misses) {
+            assertNotInvalidated(getClass(), stats);
+            stats.misses = misses;
+            return this;
+        }
+        
+        /**
+         * Sets the number of evicted cache entries.
+         * @param evictions the number of evicted cache entries.
+         * @return a reference to this builder to continue object creation
+         */
+        public Builder withEvictions(long evictions) {
+            assertNotInvalidated(getClass(), stats);
+            stats.evictions = evictions;
+            return this;
+        }
+        
+        /**
+         * Returns an immutable inventory cache statistics object.
+         * @return an immutable inventory cache statistics object.
+         */
+        public InventoryCacheStatistics build() {
+            try {
+                assertNotInvalidated(getClass(), stats);
+                return stats;
+            } finally {
+                this.stats = null;
+            }
+        }
+    }
+    
+    private int elements;
+    private int groups;
+    private int unknowns;
+    private int maxSize;
+    private long ttlSeconds;
+    private long unknownTtlSeconds;
+    private long hits;
+    private long misses;
+    private long evictions;
+    
+    /**
+     * Returns the number of cached elements.
+     * @return the number of cached elements.
+     */
+    public int getElements() {
+        return elements;
+    }
+    
+    /**
+     * Returns the number of cached element groups.
+     * @return the number of cached element groups.
+     */
+    public int getGroups() {
+        return groups;
+    }
+    
+    /**
+     * Returns the number of cached unknown elements and element groups.
+     * @return the number of cached unknown elements and element groups.
+     */
+    public int getUnknowns() {
+        return unknowns;
+    }
+    
+    /**
+     * Returns the maximum number of cached entries per cache.
+     * @return the maximum number of cached entries per cache.
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+    
+    /**
+     * Returns the time-to-live of a cached entry in seconds.
+     * @return the time-to-live of a cached entry in seconds.
+     */
+    public long getTtlSeconds() {
+        return ttlSeconds;
+    }
+    
+    /**
+     * Returns the time-to-live of a cached unknown element or element group in seconds.
+     * @return the time-to-live of a cached unknown element or element group in seconds.
+     */
+    public long getUnknownTtlSeconds() {
+        return unknownTtlSeconds;
+    }
+    
+    /**
+     * Returns the number of cache hits.
+     * @return the number of cache hits.
+     */
+    public long getHits() {
+        return hits;
+    }
+    
+    /**
+     * Returns the number of cache misses.
+     * @return the number of cache misses.
+     */
+    public long getMisses() {
+        return misses;
+    }
+    
+    /**
+     * Returns the number of evicted cache entries.
+     * @return the number of evicted cache entries.
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+    
+}
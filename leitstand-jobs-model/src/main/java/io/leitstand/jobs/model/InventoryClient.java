@@ -15,15 +15,23 @@
  */
 package io.leitstand.jobs.model;
 
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
 import static java.util.Collections.unmodifiableMap;
 
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
-import javax.annotation.PostConstruct;
 import javax.enterprise.context.RequestScoped;
 import javax.inject.Inject;
 
+import io.leitstand.commons.EntityNotFoundException;
+import io.leitstand.inventory.service.ElementGroupElements;
+import io.leitstand.inventory.service.ElementGroupElementsService;
 import io.leitstand.inventory.service.ElementGroupId;
 import io.leitstand.inventory.service.ElementGroupName;
 import io.leitstand.inventory.service.ElementGroupSettings;
@@ -38,29 +46,28 @@ import io.leitstand.inventory.service.ElementSettingsService;
 public class InventoryClient {
 
 	private ElementGroupSettingsService groups;
+	
+	private ElementGroupElementsService groupElements;
 
 	private ElementSettingsService elements;
 	
-	
-	private Map<ElementGroupId,ElementGroupSettings> groupCache;
-	private Map<ElementId,ElementSettings> elementCache;
+	private InventoryCache cache;
 	
 	protected InventoryClient() {
 		// Make InventoryClient proxyable.
 	}
 
 	@Inject
-	public InventoryClient(ElementGroupSettingsService groups, ElementSettingsService elements) {
+	public InventoryClient(ElementGroupSettingsService groups, 
+	                       ElementGroupElementsService groupElements,
+	                       ElementSettingsService elements,
+	                       InventoryCache cache) {
 		this.groups = groups;
+		this.groupElements = groupElements;
 		this.elements = elements;
+		this.cache = cache;
 	}
 
-	@PostConstruct
-	protected void initCaches() {
-		groupCache = new HashMap<>();
-		elementCache = new HashMap<>();
-	}
-	
 	public ElementGroupSettings getGroupSettings(Job job) {
 		if(job == null) {
 			return null;
@@ -72,12 +79,20 @@ public class InventoryClient {
 		if(id == null) {
 			return null;
 		}
-		if(groupCache.containsKey(id)) {
-			return groupCache.get(id);
+		if(cache.isUnknownGroup(id)) {
+			return null;
+		}
+		ElementGroupSettings settings = cache.getGroup(id);
+		if(settings != null) {
+			return settings;
 		}
 		
-		ElementGroupSettings settings = groups.getGroupSettings(id);
-		groupCache.put(id,settings);
+		settings = groups.getGroupSettings(id);
+		if(settings != null) {
+			cache.putGroup(settings);
+		} else {
+			cache.putUnknownGroup(id);
+		}
 		return settings;
 		
 	}
@@ -93,28 +108,40 @@ public class InventoryClient {
 		if(id == null) {
 			return null;
 		}
-		if(elementCache.containsKey(id)) {
-			return elementCache.get(id);
+		if(cache.isUnknownElement(id)) {
+			return null;
+		}
+		ElementSettings settings = cache.getElement(id);
+		if(settings != null) {
+			return settings;
 		}
 		
-		ElementSettings settings = elements.getElementSettings(id);
-		elementCache.put(id,settings);
+		settings = elements.getElementSettings(id);
+		if(settings != null) {
+			cache.putElement(settings);
+		} else {
+			cache.putUnknownElement(id);
+		}
 		return settings;
 	}
 
 	public ElementSettings getElementSettings(ElementName name) {
-		for(ElementSettings settings : elementCache.values()) {
-			if(settings == null) {
-				continue;
-			}
-			if(settings.getElementName().equals(name)) {
-				return settings;
-			}
+		if(name == null) {
+			return null;
+		}
+		if(cache.isUnknownElement(name)) {
+			return null;
+		}
+		ElementSettings settings = cache.getElement(name);
+		if(settings != null) {
+			return settings;
 		}
 		
-		ElementSettings settings = elements.getElementSettings(name);
+		settings = elements.getElementSettings(name);
 		if(settings != null) {
-			elementCache.put(settings.getElementId(),settings);
+			cache.putElement(settings);
+		} else {
+			cache.putUnknownElement(name);
 		}
 		return settings;
 		
@@ -122,33 +149,122 @@ public class InventoryClient {
 
 	public ElementGroupSettings getGroupSettings(ElementGroupType groupType,
 												 ElementGroupName groupName) {
-		for(ElementGroupSettings settings : groupCache.values()) {
-			if(settings == null) {
-				continue;
-			}
-			if(settings.getGroupName().equals(groupName) && settings.getGroupType().equals(groupType)) {
-				return settings;
-			}
+		if(groupType == null || groupName == null) {
+			return null;
+		}
+		if(cache.isUnknownGroup(groupType, groupName)) {
+			return null;
+		}
+		ElementGroupSettings settings = cache.getGroup(groupType, 
+		                                               groupName);
+		if(settings != null) {
+			return settings;
 		}
 		
-		ElementGroupSettings settings = groups.getGroupSettings(groupType,
-															    groupName);
+		settings = groups.getGroupSettings(groupType,
+										   groupName);
 		if(settings != null) {
-			groupCache.put(settings.getGroupId(),
-						   settings);
+			cache.putGroup(settings);
+		} else {
+			cache.putUnknownGroup(groupType, groupName);
 		}
 		return settings;
 	}
 
 	public Map<ElementId,ElementSettings> getElements(Job job){
+		if(job == null) {
+			return emptyMap();
+		}
+		Set<ElementId> ids = new LinkedHashSet<>();
 		for(Job_Task task : job.getTasks().values()) {
-			ElementId elementId = task.getElementId();
-			if(elementId != null) {
-				// Load element settings into cache.
-				getElementSettings(elementId);
+			if(task.getElementId() != null) {
+				ids.add(task.getElementId());
+			}
+		}
+		return getElements(job.getGroupId(), ids);
+	}
+	
+	/**
+	 * Resolves the settings of all given elements in a single pass.
+	 * Duplicate IDs are resolved once, cached elements are served from the shared inventory cache 
+	 * and only the remaining elements are loaded from the inventory.
+	 * Unknown elements are mapped to <code>null</code>.
+	 * @param ids the element IDs
+	 * @return the element settings by element ID.
+	 */
+	public Map<ElementId,ElementSettings> getElements(Collection<ElementId> ids){
+		return getElements(null, ids);
+	}
+	
+	/**
+	 * Resolves the settings of all given elements in a single pass.
+	 * Duplicate IDs are resolved once, cached elements are served from the shared inventory cache 
+	 * and the remaining elements are loaded with a single request for all elements of the given element group.
+	 * Elements that are not members of the group are loaded one by one.
+	 * Unknown elements are mapped to <code>null</code>.
+	 * @param groupId the element group the elements are expected to belong to or <code>null</code> if the group is unknown
+	 * @param ids the element IDs
+	 * @return the element settings by element ID.
+	 */
+	public Map<ElementId,ElementSettings> getElements(ElementGroupId groupId, Collection<ElementId> ids){
+		Map<ElementId,ElementSettings> settings = new HashMap<>();
+		Set<ElementId> misses = new LinkedHashSet<>();
+		for(ElementId id : ids) {
+			if(id == null || settings.containsKey(id)) {
+				continue;
+			}
+			if(cache.isUnknownElement(id)) {
+				settings.put(id, null);
+				continue;
+			}
+			ElementSettings element = cache.getElement(id);
+			if(element == null) {
+				misses.add(id);
+			}
+			settings.put(id, element);
+		}
+		if(!misses.isEmpty()) {
+			settings.putAll(loadElements(groupId, misses));
+		}
+		return unmodifiableMap(settings);
+	}
+	
+	protected Map<ElementId,ElementSettings> loadElements(ElementGroupId groupId, Set<ElementId> ids){
+		Map<ElementId,ElementSettings> settings = new HashMap<>();
+		if(groupId != null && ids.size() > 1) {
+			// Load all group members at once and cache them for subsequent requests.
+			for(ElementSettings element : loadGroupElements(groupId)) {
+				cache.putElement(element);
+				if(ids.contains(element.getElementId())) {
+					settings.put(element.getElementId(), element);
+				}
+			}
+		}
+		for(ElementId id : ids) {
+			if(settings.containsKey(id)) {
+				continue;
+			}
+			ElementSettings element = elements.getElementSettings(id);
+			if(element != null) {
+				cache.putElement(element);
+			} else {
+				cache.putUnknownElement(id);
+			}
+			settings.put(id, element);
+		}
+		return settings;
+	}
+	
+	private List<ElementSettings> loadGroupElements(ElementGroupId groupId) {
+		try {
+			ElementGroupElements members = groupElements.getGroupElements(groupId);
+			if(members != null) {
+				return members.getElements();
 			}
+		} catch (EntityNotFoundException e) {
+			// Group has been removed. Load the elements one by one.
 		}
-		return unmodifiableMap(elementCache);
+		return emptyList();
 	}
 	
 }
@@ -31,8 +31,11 @@ import static javax.persistence.EnumType.STRING;
 import static javax.persistence.LockModeType.OPTIMISTIC_FORCE_INCREMENT;
 import static javax.persistence.TemporalType.TIMESTAMP;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -268,12 +271,12 @@ public class Job extends VersionableEntity {
 	public void submit() {
 	    if(isNew()) {
 	        this.state = READY;
-	        getTaskList().forEach(t -> t.setTaskState(WAITING));
+	        tasks.values().forEach(t -> t.setTaskState(WAITING));
 	    }
 	}
 
 	public Map<TaskId,Job_Task> getTasks() {
-		return unmodifiableMap(new LinkedHashMap<>(tasks));
+		return unmodifiableMap(tasks);
 	}
 
 	public void removeTask(Job_Task task) {
@@ -358,7 +361,7 @@ public class Job extends VersionableEntity {
 	}
 
 	public boolean completed() {
-		for(Job_Task task : getTasks().values()) {
+		for(Job_Task task : tasks.values()) {
 			if(task.isSucceeded()) {
 				continue;
 			}
@@ -369,27 +372,41 @@ public class Job extends VersionableEntity {
 	}
 
 	public Job_Task getTask(TaskId taskId) {
-		return getTasks().get(taskId);
+		return tasks.get(taskId);
 	}
 	
 	public Set<Job_Task> getOrderedTasks(){
 		Set<Job_Task> orderedTasks = new LinkedHashSet<>();
-		orderedTasks.add(getStart());
-		traverse(orderedTasks, getStart());
+		Job_Task start = getStart();
+		orderedTasks.add(start);
+		// Depth-first traversal with an explicit stack of successor iterators.
+		// The successors of a task are only traversed when all its predecessors have been added.
+		Deque<Iterator<Job_Task_Transition>> stack = new ArrayDeque<>();
+		if(hasAllPredecessors(orderedTasks, start)) {
+		    stack.push(start.getSuccessors().iterator());
+		}
+		while(!stack.isEmpty()) {
+		    Iterator<Job_Task_Transition> successors = stack.peek();
+		    if(!successors.hasNext()) {
+		        stack.pop();
+		        continue;
+		    }
+		    Job_Task successor = successors.next().getTo();
+		    orderedTasks.add(successor);
+		    if(hasAllPredecessors(orderedTasks, successor)) {
+		        stack.push(successor.getSuccessors().iterator());
+		    }
+		}
 		return orderedTasks;
 	}
 	
-	private void traverse(Set<Job_Task> tasks, Job_Task task) {
+	private static boolean hasAllPredecessors(Set<Job_Task> tasks, Job_Task task) {
 		for(Job_Task_Transition transition: task.getPredecessors()) {
 		    if(!tasks.contains(transition.getFrom())) {
-		        return;
+		        return false;
 		    }
 		}
-	    
-		for(Job_Task_Transition transition : task.getSuccessors()) {
-		    tasks.add(transition.getTo());
-		    traverse(tasks, transition.getTo());
-		}
+		return true;
 	}
 
 	public JobName getJobName() {
@@ -397,11 +414,11 @@ public class Job extends VersionableEntity {
 	}
 
 	public List<Job_Task> getTaskList() {
-		return new ArrayList<>(getTasks().values());
+		return new ArrayList<>(tasks.values());
 	}
 
     public void confirmed() {
-        for(Job_Task task : getTaskList()) {
+        for(Job_Task task : tasks.values()) {
             if(task.isSuspended()) {
                 return;
             }
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.jobs.model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import io.leitstand.jobs.service.State;
+
+/**
+ * Compact, read-only snapshot of a job's task graph.
+ * <p>
+ * The snapshot contains all tasks reachable from the job's start task. 
+ * Tasks are numbered in depth-first pre-order, i.e. in the same order the {@link JobGraph} has visited them.
+ * Successors and predecessors are stored as compressed sparse row adjacency arrays of task indices,
+ * and the task states are stored in a byte array of {@link State} ordinals.
+ * All traversals are iterative and run against the arrays without navigating the entity graph, 
+ * which also avoids stack overflows for long serial job flows.
+ * The snapshot does not reflect task state changes made after it was taken.
+ */
+public class JobDag {
+    
+    private static final State[] STATES = State.values();
+    
+    /**
+     * Creates a snapshot of the task graph of the given job.
+     * @param job the job
+     * @return the task graph snapshot.
+     */
+    public static JobDag snapshot(Job job) {
+        return new JobDag(job.getStart());
+    }
+
+    private final Job_Task[] tasks;
+    private final byte[] states;
+    private final int[] successorOffsets;
+    private final int[] successors;
+    private final Job_Task_Transition[] transitions;
+    private final int[] predecessorOffsets;
+    private final int[] predecessors;
+    
+    JobDag(Job_Task start) {
+        // Number the tasks in depth-first pre-order.
+        List<Job_Task> ordered = new ArrayList<>();
+        Map<Job_Task,Integer> indexes = new HashMap<>();
+        if(start != null) {
+            Deque<Iterator<Job_Task_Transition>> stack = new ArrayDeque<>();
+            indexes.put(start, 0);
+            ordered.add(start);
+            stack.push(start.getSuccessors().iterator());
+            while(!stack.isEmpty()) {
+                Iterator<Job_Task_Transition> next = stack.peek();
+                if(!next.hasNext()) {
+                    stack.pop();
+                    continue;
+                }
+                Job_Task to = next.next().getTo();
+                if(!indexes.containsKey(to)) {
+                    indexes.put(to, ordered.size());
+                    ordered.add(to);
+                    stack.push(to.getSuccessors().iterator());
+                }
+            }
+        }
+        
+        int n = ordered.size();
+        this.tasks = ordered.toArray(new Job_Task[n]);
+        this.states = new byte[n];
+        this.successorOffsets = new int[n+1];
+        
+        // Build successor adjacency arrays.
+        List<Job_Task_Transition> edges = new ArrayList<>();
+        for(int i = 0; i < n; i++) {
+            states[i] = (byte) tasks[i].getTaskState().ordinal();
+            edges.addAll(tasks[i].getSuccessors());
+            successorOffsets[i+1] = edges.size();
+        }
+        this.transitions = edges.toArray(new Job_Task_Transition[edges.size()]);
+        this.successors = new int[transitions.length];
+        int[] inDegree = new int[n];
+        for(int e = 0; e < transitions.length; e++) {
+            int to = indexes.get(transitions[e].getTo());
+            successors[e] = to;
+            inDegree[to]++;
+        }
+        
+        // Build predecessor adjacency arrays.
+        this.predecessorOffsets = new int[n+1];
+        for(int i = 0; i < n; i++) {
+            predecessorOffsets[i+1] = predecessorOffsets[i] + inDegree[i];
+        }
+        this.predecessors = new int[transitions.length];
+        int[] cursor = new int[n];
+        for(int i = 0; i < n; i++) {
+            for(int e = successorOffsets[i]; e < successorOffsets[i+1]; e++) {
+                int to = successors[e];
+                predecessors[predecessorOffsets[to] + cursor[to]++] = i;
+            }
+        }
+    }
+    
+    /**
+     * Returns the number of tasks in this snapshot.
+     * @return the number of tasks.
+     */
+    public int getSize() {
+        return tasks.length;
+    }
+    
+    /**
+     * Returns the task with the given index.
+     * @param index the task index
+     * @return the task with the given index.
+     */
+    public Job_Task getTask(int index) {
+        return tasks[index];
+    }
+    
+    /**
+     * Returns the state of the task with the given index when this snapshot was taken.
+     * @param index the task index
+     * @return the task state.
+     */
+    public State getTaskState(int index) {
+        return STATES[states[index]];
+    }
+    
+    /**
+     * Returns the indexes of the successors of the given task.
+     * @param index the task index
+     * @return the successor indexes in successor order.
+     */
+    public int[] getSuccessors(int index) {
+        return slice(successors, successorOffsets, index);
+    }
+    
+    /**
+     * Returns the indexes of the predecessors of the given task.
+     * @param index the task index
+     * @return the predecessor indexes.
+     */
+    public int[] getPredecessors(int index) {
+        return slice(predecessors, predecessorOffsets, index);
+    }
+    
+    private static int[] slice(int[] adjacency, int[] offsets, int index) {
+        int[] slice = new int[offsets[index+1] - offsets[index]];
+        System.arraycopy(adjacency, offsets[index], slice, 0, slice.length);
+        return slice;
+    }
+    
+    /**
+     * Returns the number of tasks in the given state.
+     * @param state the task state
+     * @return the number of tasks in the given state.
+     */
+    public int getTaskCount(State state) {
+        int count = 0;
+        byte ordinal = (byte) state.ordinal();
+        for(byte s : states) {
+            if(s == ordinal) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Returns the number of tasks per state, indexed by the {@link State} ordinal.
+     * @return the number of tasks per state.
+     */
+    public int[] getTaskCounts() {
+        int[] counts = new int[STATES.length];
+        for(byte s : states) {
+            counts[s]++;
+        }
+        return counts;
+    }
+    
+    /**
+     * Traverses the task graph depth-first and reports all tasks and transitions to the given visitor.
+     * A task is reported when it is discovered. 
+     * A transition is reported after the subgraph reachable from its target task has been traversed.
+     * @param visitor the graph visitor
+     */
+    public void accept(JobGraphVisitor visitor) {
+        int n = tasks.length;
+        if(n == 0) {
+            return;
+        }
+        boolean[] visited = new boolean[n];
+        // Explicit stack of the traversed tasks, their next successor edge and the edge they were reached by.
+        int[] stackTask = new int[n];
+        int[] stackNext = new int[n];
+        int[] stackEdge = new int[n];
+        int top = 0;
+        visited[0] = true;
+        visitor.visitNode(tasks[0]);
+        stackTask[0] = 0;
+        stackNext[0] = successorOffsets[0];
+        stackEdge[0] = -1;
+        while(top >= 0) {
+            int task = stackTask[top];
+            int e = stackNext[top];
+            if(e == successorOffsets[task+1]) {
+                top--;
+                if(stackEdge[top+1] >= 0) {
+                    visitor.visitEdge(transitions[stackEdge[top+1]]);
+                }
+                continue;
+            }
+            stackNext[top]++;
+            int to = successors[e];
+            if(visited[to]) {
+                visitor.visitEdge(transitions[e]);
+                continue;
+            }
+            visited[to] = true;
+            visitor.visitNode(tasks[to]);
+            top++;
+            stackTask[top] = to;
+            stackNext[top] = successorOffsets[to];
+            stackEdge[top] = e;
+        }
+    }
+    
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.jobs.model;
+
+import io.leitstand.jobs.service.JobId;
+
+/**
+ * Base class of all job lifecycle events.
+ * <p>
+ * Job events are fired when the state of a job or of one of its tasks changes.
+ * The {@link JobEventBus} forwards all job events to the subscribers of the job once the transaction has been committed.
+ */
+public abstract class JobEvent {
+
+    private final JobId jobId;
+    
+    protected JobEvent(JobId jobId) {
+        this.jobId = jobId;
+    }
+    
+    /**
+     * Returns the ID of the affected job.
+     * @return the ID of the affected job.
+     */
+    public JobId getJobId() {
+        return jobId;
+    }
+    
+}
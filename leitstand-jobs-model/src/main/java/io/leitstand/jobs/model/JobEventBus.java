@@ -0,0 +1,274 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.jobs.model;
+
+import static io.leitstand.jobs.model.LeaseService.nodeId;
+import static java.lang.Long.getLong;
+import static java.lang.Math.max;
+import static java.lang.String.format;
+import static java.lang.System.currentTimeMillis;
+import static java.util.Collections.singleton;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.logging.Level.FINE;
+import static java.util.logging.Logger.getLogger;
+import static javax.enterprise.event.TransactionPhase.AFTER_SUCCESS;
+import static javax.enterprise.event.TransactionPhase.BEFORE_COMPLETION;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Logger;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+
+import io.leitstand.jobs.model.JobEventOutbox.Entry;
+import io.leitstand.jobs.service.JobId;
+
+/**
+ * Bus that fans out job events to the subscribers of a job.
+ * <p>
+ * The bus collects the {@link JobEvent}s fired in a transaction and stores the events of subscribed jobs 
+ * in the {@link JobEventStream} with a single statement before the transaction completes.
+ * Events of rolled back transactions are therefore never streamed
+ * and transactions that change unsubscribed jobs only do not write to the stream.
+ * The bus thread of every node reads the events of the jobs subscribed on this node from the stream 
+ * and forwards them to the subscribers, 
+ * so that a subscriber receives the state changes made by all nodes.
+ * The bus thread is woken up immediately when a transaction of this node has been committed 
+ * and polls the stream with the configured poll interval otherwise.
+ * The bus renews the subscriptions of the jobs subscribed on this node and asks the subscribers to verify their connections periodically.
+ * A subscriber that fails to consume an event or that has been closed is unsubscribed.
+ */
+@ApplicationScoped
+public class JobEventBus extends BaseEventLoop {
+    
+    private static final Logger LOG = getLogger(JobEventBus.class.getName());
+    
+    static final String STREAM_POLL_MILLIS = "leitstand.jobs.events.stream_poll_ms";
+    static final String STREAM_LOOKBACK_MILLIS = "leitstand.jobs.events.stream_lookback_ms";
+    private static final long PURGE_INTERVAL_MILLIS = 60_000;
+    static final long SUBSCRIPTION_SECONDS = 30;
+
+    private final Map<JobId,List<JobEventSubscriber>> subscribers = new ConcurrentHashMap<>();
+    
+    // Sequence numbers of the events read within the lookback period and the time when they have been read.
+    private final Map<Long,Long> relayed = new HashMap<>();
+    
+    @Inject
+    private JobEventStream stream;
+    
+    @Inject
+    private JobEventStreamBuffer buffer;
+    
+    private String node;
+    
+    private long lookbackMillis = 10_000;
+    private long nextPurge;
+    private long nextRenewal;
+    
+    private Pause pause = new Pause(500, MILLISECONDS);
+    
+    protected JobEventBus() {
+        // CDI
+    }
+    
+    JobEventBus(JobEventStream stream, JobEventStreamBuffer buffer) {
+        this.stream = stream;
+        this.buffer = buffer;
+    }
+    
+    @Override
+    public void onStartup() {
+        long pollMillis = max(10, getLong(STREAM_POLL_MILLIS, 500L));
+        lookbackMillis = max(1000, getLong(STREAM_LOOKBACK_MILLIS, 10_000L));
+        pause = new Pause(pollMillis, MILLISECONDS);
+        node = nodeId();
+        LOG.info(() -> format("Poll job event stream every %d ms with a lookback of %d ms.", 
+                              pollMillis,
+                              lookbackMillis));
+        super.onStartup();
+    }
+    
+    @Override
+    public void run() {
+        try {
+            LOG.info("Job event bus started.");
+            while(isActive()) {
+                relayEvents();
+                renewSubscriptions();
+                purgeEvents();
+                pause.sleep();
+            }
+            LOG.info("Job event bus stopped.");
+        } catch (Exception e) {
+            LOG.severe("Job event bus crashed: "+e.getMessage());
+            stopEventLoop();
+            startEventLoop();
+        }
+    }
+    
+    /**
+     * Forwards the events of all subscribed jobs that have not been forwarded yet.
+     * @return the number of forwarded events.
+     */
+    int relayEvents() {
+        if(subscribers.isEmpty()) {
+            return 0;
+        }
+        long now = currentTimeMillis();
+        // An event leaves the lookback period at the latest one lookback period after it has been read.
+        relayed.values().removeIf(read -> read < now - lookbackMillis);
+        int events = 0;
+        for(Entry entry : stream.fetchEvents(subscribers.keySet(), lookbackMillis)) {
+            if(relayed.putIfAbsent(entry.getId(), now) == null) {
+                publish(entry.getEvent());
+                events++;
+            }
+        }
+        return events;
+    }
+    
+    /**
+     * Removes the closed subscribers and renews the subscriptions of the jobs with remaining subscribers 
+     * once per third of the subscription lease period.
+     */
+    void renewSubscriptions() {
+        long now = currentTimeMillis();
+        if(now < nextRenewal) {
+            return;
+        }
+        nextRenewal = now + SECONDS.toMillis(SUBSCRIPTION_SECONDS) / 3;
+        for(Map.Entry<JobId,List<JobEventSubscriber>> jobSubscribers : subscribers.entrySet()) {
+            for(JobEventSubscriber subscriber : jobSubscribers.getValue()) {
+                if(!subscriber.isClosed()) {
+                    subscriber.keepAlive();
+                }
+                if(subscriber.isClosed()) {
+                    LOG.fine(() -> format("Unsubscribe closed subscriber of job %s", jobSubscribers.getKey()));
+                    unsubscribe(jobSubscribers.getKey(), subscriber);
+                }
+            }
+        }
+        try {
+            stream.renewSubscriptions(subscribers.keySet(), node, SUBSCRIPTION_SECONDS);
+        } catch (RuntimeException e) {
+            LOG.warning(() -> format("Unable to renew job event subscriptions: %s", e.getMessage()));
+            LOG.log(FINE, e.getMessage(), e);
+        }
+    }
+    
+    private void purgeEvents() {
+        long now = currentTimeMillis();
+        if(now < nextPurge) {
+            return;
+        }
+        nextPurge = now + PURGE_INTERVAL_MILLIS;
+        try {
+            stream.removeEvents(PURGE_INTERVAL_MILLIS + lookbackMillis);
+            stream.removeSubscriptions();
+        } catch (RuntimeException e) {
+            LOG.warning(() -> format("Unable to remove expired job events: %s", e.getMessage()));
+            LOG.log(FINE, e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Subscribes to the events of the given job.
+     * The subscription of the job is renewed before this method returns,
+     * so that the subscriber receives all events committed afterwards.
+     * @param jobId the job ID
+     * @param subscriber the event subscriber
+     */
+    public void subscribe(JobId jobId, JobEventSubscriber subscriber) {
+        stream.renewSubscriptions(singleton(jobId), node, SUBSCRIPTION_SECONDS);
+        subscribers.compute(jobId, (id,jobSubscribers) -> {
+            if(jobSubscribers == null) {
+                jobSubscribers = new CopyOnWriteArrayList<>();
+            }
+            jobSubscribers.add(subscriber);
+            return jobSubscribers;
+        });
+    }
+    
+    /**
+     * Cancels a subscription to the events of the given job.
+     * @param jobId the job ID
+     * @param subscriber the event subscriber
+     */
+    public void unsubscribe(JobId jobId, JobEventSubscriber subscriber) {
+        subscribers.computeIfPresent(jobId, (id,jobSubscribers) -> {
+            jobSubscribers.remove(subscriber);
+            return jobSubscribers.isEmpty() ? null : jobSubscribers;
+        });
+    }
+    
+    /**
+     * Returns the number of subscribers of the given job.
+     * @param jobId the job ID
+     * @return the number of subscribers of the given job.
+     */
+    public int getSubscriberCount(JobId jobId) {
+        List<JobEventSubscriber> jobSubscribers = subscribers.get(jobId);
+        return jobSubscribers != null ? jobSubscribers.size() : 0;
+    }
+    
+    void onJobEvent(@Observes JobEvent event) {
+        buffer.add(event);
+    }
+    
+    void onJobEventCompleting(@Observes(during=BEFORE_COMPLETION) JobEvent event) {
+        // The first notification stores all events of the transaction.
+        List<JobEvent> events = buffer.drain();
+        if(!events.isEmpty()) {
+            stream.storeEvents(events);
+        }
+    }
+    
+    void onJobEventCommitted(@Observes(during=AFTER_SUCCESS) JobEvent event) {
+        if(!subscribers.isEmpty()) {
+            pause.wakeup();
+        }
+    }
+    
+    /**
+     * Forwards the given event to all subscribers of the affected job.
+     * @param event the job event
+     */
+    public void publish(JobEvent event) {
+        List<JobEventSubscriber> jobSubscribers = subscribers.get(event.getJobId());
+        if(jobSubscribers == null) {
+            return;
+        }
+        for(JobEventSubscriber subscriber : jobSubscribers) {
+            try {
+                subscriber.accept(event);
+            } catch (RuntimeException e) {
+                LOG.log(FINE, 
+                        format("Unsubscribe failed subscriber of job %s: %s", 
+                               event.getJobId(), 
+                               e.getMessage()), 
+                        e);
+                unsubscribe(event.getJobId(), subscriber);
+            }
+        }
+    }
+    
+}
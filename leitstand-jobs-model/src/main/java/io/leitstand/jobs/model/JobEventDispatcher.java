@@ -0,0 +1,407 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.jobs.model;
+
+import static io.leitstand.jobs.model.LeaseService.nodeId;
+import static java.lang.Integer.getInteger;
+import static java.lang.Long.getLong;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.String.format;
+import static java.lang.System.currentTimeMillis;
+import static java.lang.Thread.sleep;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static java.util.Collections.unmodifiableList;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.logging.Level.FINER;
+import static java.util.logging.Logger.getLogger;
+import static java.util.stream.Collectors.toList;
+import static javax.enterprise.event.TransactionPhase.AFTER_SUCCESS;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+
+import io.leitstand.jobs.model.JobEventOutbox.Entry;
+
+/**
+ * Relays the job events from the job event outbox to all registered {@link JobEventPublisher}s.
+ * <p>
+ * The dispatcher observes all {@link JobEvent}s and stores them in the {@link JobEventOutbox} 
+ * in the transaction that fired the event.
+ * The dispatcher thread drains the outbox in batches and passes each batch to every publisher.
+ * The events of a batch are ordered by their outbox sequence number, which reflects the order in which 
+ * the events have been stored but not the order in which the storing transactions committed.
+ * The events are removed from the outbox once all publishers have published the batch.
+ * If a publisher fails, the batch remains in the outbox and is retried with an increasing delay.
+ * The dispatcher does not sleep while backing off but keeps renewing its lease and skips the batch until the delay has elapsed.
+ * A retried batch is passed only to the publishers that have not accepted it yet.
+ * The next batch is not fetched before the current batch has been published,
+ * so that a slow publisher throttles the dispatcher rather than the other way round.
+ * Events are delivered at least once.
+ * <p>
+ * If a batch fails the configured number of times in a row, the dispatcher passes its events one by one to the publishers
+ * and moves every event that still cannot be published to the dead letter table.
+ * Hence, a permanently failing publisher or an event that cannot be published never blocks the outbox.
+ * <p>
+ * A partial batch is held back until its oldest event has lingered for the configured linger time
+ * to let more events join the batch.
+ * Only the node owning the <code>job_event_dispatcher</code> lease relays events, 
+ * so that no two nodes publish the same events concurrently.
+ */
+@ApplicationScoped
+public class JobEventDispatcher extends BaseEventLoop {
+
+    private static final Logger LOG = getLogger(JobEventDispatcher.class.getName());
+    private static final long MAX_WAIT_SECONDS = 5;
+    private static final long MAX_RETRY_MILLIS = 60_000;
+    
+    static final String EVENTS_BATCH_SIZE = "leitstand.jobs.events.batch_size";
+    static final String EVENTS_LINGER_MILLIS = "leitstand.jobs.events.linger_ms";
+    static final String EVENTS_MAX_ATTEMPTS = "leitstand.jobs.events.max_attempts";
+    static final String EVENTS_DEAD_LETTER_RETENTION_DAYS = "leitstand.jobs.events.dead_letter_retention_days";
+    static final String LEASE = "job_event_dispatcher";
+
+    @Inject
+    private Instance<JobEventPublisher> registry;
+    
+    @Inject
+    private JobEventOutbox outbox;
+    
+    @Inject
+    private LeaseService leases;
+    
+    private volatile List<JobEventPublisher> publishers = emptyList();
+    
+    private int batchSize = 100;
+    
+    private long lingerMillis = 20;
+    
+    private int maxAttempts = 10;
+    
+    private int failedAttempts;
+    private long retryDelayMillis;
+    private long nextAttempt;
+    
+    // The outbox sequence numbers of the pending batch and the publishers that have accepted it.
+    private List<Long> pendingBatch = emptyList();
+    private final Set<JobEventPublisher> accepted = new HashSet<>();
+    
+    private int deadLetterRetentionDays = 7;
+    
+    private String node;
+    private long leaseSeconds;
+    private long nextLeaseRenewal;
+    private volatile boolean leader;
+    
+    private Pause pause = new Pause(MAX_WAIT_SECONDS, SECONDS);
+    
+    private final AtomicLong deliveredEvents = new AtomicLong();
+    private volatile long deliveryLatencyMillis;
+    
+    protected JobEventDispatcher() {
+        // CDI
+    }
+    
+    JobEventDispatcher(JobEventOutbox outbox,
+                       List<JobEventPublisher> publishers, 
+                       int batchSize, 
+                       long lingerMillis) {
+        this(outbox,
+             publishers,
+             batchSize,
+             lingerMillis,
+             10);
+    }
+    
+    JobEventDispatcher(JobEventOutbox outbox,
+                       List<JobEventPublisher> publishers, 
+                       int batchSize, 
+                       long lingerMillis,
+                       int maxAttempts) {
+        this.outbox = outbox;
+        this.publishers = publishers;
+        this.batchSize = batchSize;
+        this.lingerMillis = lingerMillis;
+        this.maxAttempts = maxAttempts;
+    }
+    
+    @Override
+    public void onStartup() {
+        List<JobEventPublisher> discovered = new ArrayList<>();
+        for(JobEventPublisher publisher : registry) {
+            if(publisher.isEnabled()) {
+                discovered.add(publisher);
+            }
+        }
+        if(discovered.isEmpty()) {
+            LOG.info("No enabled job event publisher found. Job events are not dispatched.");
+            return;
+        }
+        batchSize = max(1, getInteger(EVENTS_BATCH_SIZE, 100));
+        lingerMillis = max(0, getLong(EVENTS_LINGER_MILLIS, 20L));
+        maxAttempts = max(1, getInteger(EVENTS_MAX_ATTEMPTS, 10));
+        deadLetterRetentionDays = max(1, getInteger(EVENTS_DEAD_LETTER_RETENTION_DAYS, 7));
+        node = nodeId();
+        leaseSeconds = max(3*MAX_WAIT_SECONDS, getLong(JobEventLoop.LEADER_LEASE_SECONDS, 15L));
+        publishers = discovered;
+        LOG.info(() -> format("Dispatch job events in batches of up to %d events with a linger time of %d ms to %d publisher(s). Move events to dead letters after %d failed attempts.", 
+                              batchSize,
+                              lingerMillis,
+                              discovered.size(),
+                              maxAttempts));
+        super.onStartup();
+    }
+    
+    @Override
+    public void onShutdown() {
+        super.onShutdown();
+        if(leader) {
+            leases.releaseLease(LEASE, node);
+            leader = false;
+        }
+    }
+    
+    @Override
+    public void run() {
+        try {
+            LOG.info("Job event dispatcher started.");
+            
+            while(isActive()) {
+                if(!electLeader()) {
+                    pause.sleep();
+                    continue;
+                }
+                if(dispatchEvents() > 0) {
+                    pause.reset();
+                } else {
+                    pause.sleep();
+                }
+            }
+            
+            LOG.info("Job event dispatcher stopped.");
+        } catch (Exception e) {
+            LOG.severe("Job event dispatcher crashed: "+e.getMessage());
+            stopEventLoop();
+            startEventLoop();
+        }
+    }
+    
+    /**
+     * Passes the next batch of events from the outbox to all publishers.
+     * @return the number of dispatched events
+     * @throws InterruptedException if the dispatcher thread has been interrupted while waiting for events
+     */
+    int dispatchEvents() throws InterruptedException {
+        if(currentTimeMillis() < nextAttempt) {
+            // Back off from a failed batch.
+            return 0;
+        }
+        List<Entry> batch = outbox.fetchEvents(batchSize);
+        if(batch.isEmpty()) {
+            return 0;
+        }
+        if(batch.size() < batchSize) {
+            long linger = lingerMillis - (currentTimeMillis() - batch.get(0).getDateCreated().getTime());
+            if(linger > 0) {
+                // Wait for more events to join the batch.
+                sleep(linger);
+                batch = outbox.fetchEvents(batchSize);
+            }
+        }
+        List<Long> ids = batch.stream()
+                              .map(Entry::getId)
+                              .collect(toList());
+        if(!ids.equals(pendingBatch)) {
+            // Every publisher has to accept a changed batch.
+            pendingBatch = ids;
+            accepted.clear();
+        }
+        List<JobEvent> events = unmodifiableList(batch.stream()
+                                                      .map(Entry::getEvent)
+                                                      .collect(toList()));
+        try {
+            publish(events);
+        } catch (RuntimeException e) {
+            failedAttempts++;
+            if(failedAttempts >= maxAttempts) {
+                return dispatchEventsIndividually(batch);
+            }
+            // Keep the batch in the outbox and back off before retrying.
+            retryDelayMillis = retryDelayMillis == 0 ? 1000 : min(2*retryDelayMillis, MAX_RETRY_MILLIS);
+            nextAttempt = currentTimeMillis() + retryDelayMillis;
+            return 0;
+        }
+        batchDispatched();
+        outbox.removeEvents(batch);
+        delivered(batch);
+        return batch.size();
+    }
+    
+    /**
+     * Passes the events of a repeatedly failing batch one by one to the publishers that have not accepted the batch
+     * and moves the events that cannot be published to the dead letters.
+     */
+    private int dispatchEventsIndividually(List<Entry> batch) {
+        List<Entry> published = new ArrayList<>(batch.size());
+        List<Entry> failed = new ArrayList<>();
+        String reason = null;
+        for(Entry entry : batch) {
+            List<JobEvent> event = singletonList(entry.getEvent());
+            RuntimeException failure = null;
+            for(JobEventPublisher publisher : publishers) {
+                if(accepted.contains(publisher)) {
+                    // The publisher has accepted the whole batch already.
+                    continue;
+                }
+                try {
+                    publisher.publish(event);
+                } catch (RuntimeException e) {
+                    publishingFailed(publisher, event, e);
+                    failure = e;
+                }
+            }
+            if(failure == null) {
+                published.add(entry);
+            } else {
+                failed.add(entry);
+                reason = failure.getMessage();
+            }
+        }
+        outbox.removeEvents(published);
+        if(!failed.isEmpty()) {
+            int deadLetters = failed.size();
+            LOG.severe(() -> format("Move %d job event(s) to dead letters after %d failed attempts.", 
+                                    deadLetters,
+                                    maxAttempts));
+            outbox.moveToDeadLetters(failed, reason);
+            outbox.removeDeadLetters(deadLetterRetentionDays);
+        }
+        batchDispatched();
+        if(!published.isEmpty()) {
+            delivered(published);
+        }
+        return batch.size();
+    }
+    
+    private void batchDispatched() {
+        failedAttempts = 0;
+        retryDelayMillis = 0;
+        nextAttempt = 0;
+        pendingBatch = emptyList();
+        accepted.clear();
+    }
+    
+    // Publishes the pending batch to all publishers that have not accepted it yet.
+    private void publish(List<JobEvent> events) {
+        for(JobEventPublisher publisher : publishers) {
+            if(accepted.contains(publisher)) {
+                continue;
+            }
+            try {
+                publisher.publish(events);
+                accepted.add(publisher);
+            } catch (RuntimeException e) {
+                publishingFailed(publisher, events, e);
+                throw e;
+            }
+        }
+    }
+    
+    private static void publishingFailed(JobEventPublisher publisher, List<JobEvent> events, RuntimeException e) {
+        LOG.warning(() -> format("%s failed to publish %d job event(s): %s", 
+                                 publisher.getClass().getName(),
+                                 events.size(),
+                                 e.getMessage()));
+        LOG.log(FINER, e.getMessage(), e);
+    }
+    
+    private void delivered(List<Entry> events) {
+        deliveredEvents.addAndGet(events.size());
+        deliveryLatencyMillis = currentTimeMillis() - events.get(0).getDateCreated().getTime();
+    }
+    
+    private boolean electLeader() {
+        long now = currentTimeMillis();
+        if(leader && now < nextLeaseRenewal) {
+            return true;
+        }
+        boolean elected = leases.acquireLease(LEASE, 
+                                              node, 
+                                              leaseSeconds);
+        if(elected != leader) {
+            LOG.info(() -> format("Node %s %s job event dispatcher leadership.",
+                                  node,
+                                  elected ? "acquired" : "lost"));
+        }
+        leader = elected;
+        // Renew the lease three times per lease period.
+        nextLeaseRenewal = now + SECONDS.toMillis(leaseSeconds)/3;
+        return elected;
+    }
+    
+    void onJobEvent(@Observes JobEvent event) {
+        if(publishers.isEmpty()) {
+            return;
+        }
+        outbox.storeEvent(event);
+    }
+    
+    void onJobEventCommitted(@Observes(during=AFTER_SUCCESS) JobEvent event) {
+        if(!publishers.isEmpty()) {
+            pause.wakeup();
+        }
+    }
+    
+    /**
+     * Returns the number of events delivered to the publishers since startup.
+     * @return the number of delivered events.
+     */
+    public long getDeliveredEventCount() {
+        return deliveredEvents.get();
+    }
+    
+    /**
+     * Returns the delivery latency of the last batch, 
+     * i.e. the time elapsed between storing the oldest event of the batch and publishing the batch.
+     * @return the delivery latency of the last batch in milliseconds.
+     */
+    public long getDeliveryLatencyMillis() {
+        return deliveryLatencyMillis;
+    }
+    
+    @Override
+    protected void addStatusDetails(EventLoopStatus.Builder status) {
+        if(publishers.isEmpty()) {
+            return;
+        }
+        status.withQueueDepth((int) outbox.countEvents())
+              .withDeliveredEvents(getDeliveredEventCount())
+              .withDeliveryLatencyMillis(getDeliveryLatencyMillis());
+        status.withNode(node)
+              .withLeader(leader);
+    }
+    
+}
@@ -15,38 +15,88 @@
  */
 package io.leitstand.jobs.model;
 
+import static io.leitstand.jobs.model.LeaseService.nodeId;
+import static io.leitstand.jobs.service.State.COMPLETED;
+import static io.leitstand.jobs.service.State.CONFIRM;
+import static io.leitstand.jobs.service.State.FAILED;
+import static io.leitstand.jobs.service.State.TIMEOUT;
+import static java.lang.Boolean.getBoolean;
+import static java.lang.Long.getLong;
+import static java.lang.Math.max;
 import static java.lang.String.format;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static java.util.logging.Logger.getLogger;
+import static javax.enterprise.event.TransactionPhase.AFTER_SUCCESS;
 
+import java.util.Date;
+import java.util.Map;
 import java.util.logging.Logger;
 
 import javax.annotation.Resource;
 import javax.enterprise.concurrent.ManagedExecutorService;
 import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
 import javax.inject.Inject;
 
+import io.leitstand.jobs.service.State;
+
 @ApplicationScoped
 public class JobEventLoop extends BaseEventLoop {
 	
 	private static final Logger LOG = getLogger(JobEventLoop.class.getName());
 	private static final long MAX_WAIT_SECONDS = 5;
 	
+	static final String LEADER_ELECTION = "leitstand.jobs.leader_election";
+	static final String LEADER_LEASE_SECONDS = "leitstand.jobs.leader_election.lease_seconds";
+	static final String LEASE = "job_event_loop";
+	static final String WAKEUP = "job_event_loop_wakeup";
+	
+	private boolean leaderElection;
+	private String node;
+	private long leaseSeconds;
+	private volatile boolean leader = true;
+	
 	@Resource
 	private ManagedExecutorService wm;
 	
 	@Inject
 	private JobScheduler scheduler;
 	
-	private Pause pause;
+	@Inject
+	private TaskExpiryManager expiry;
+	
+	@Inject
+	private LeaseService leases;
+	
+	private Pause pause = new Pause(MAX_WAIT_SECONDS, SECONDS);
+	
+	private Pause signal = new Pause(1, SECONDS);
 	
 	@Override
 	public void onStartup() {
-	    this.pause = new Pause(MAX_WAIT_SECONDS, 
-	                           SECONDS);
+	    this.leaderElection = getBoolean(LEADER_ELECTION);
+	    if(leaderElection) {
+	        this.node = nodeId();
+	        // The lease must outlast the maximum pause of the leader.
+	        this.leaseSeconds = max(3*MAX_WAIT_SECONDS, getLong(LEADER_LEASE_SECONDS, 15L));
+	        this.leader = false;
+	        LOG.info(() -> format("Leader election enabled for node %s with a lease of %d seconds.",
+	                              node,
+	                              leaseSeconds));
+	    }
 	    super.onStartup();
 	}
 	
+	@Override
+	public void onShutdown() {
+	    super.onShutdown();
+	    if(leaderElection && leader) {
+	        // Release the lease to let another node take over immediately.
+	        leases.releaseLease(LEASE, node);
+	        leader = false;
+	    }
+	}
+	
 	@Override
 	public void run() {
 	    try {
@@ -65,25 +115,87 @@ public class JobEventLoop extends BaseEventLoop {
 	}
 
     protected void scheduleJobs() throws InterruptedException {
-        int failedJobs    = scheduler.markFailedJobs();
+        if(leaderElection && !electLeader()) {
+            pause.sleep();
+            return;
+        }
+        
+        int expiredTasks  = expiry.taskTimedout(new Date());
+        scheduler.compactTaskStateCounts();
+        Map<State,Long> jobs = scheduler.reconcileJobStates();
         int activatedJobs = scheduler.startScheduledJobs();
         int tasksReady    = scheduler.markTasksEligibleForExecution();
-        int jobsToConfirm = scheduler.markJobsWaitingForConfirmation();
-        int completedJobs = scheduler.markCompletedJobs();
         
-        LOG.fine(() -> format("Job event loop: %d job(s) started, %d tasks eligible for execution, %d job(s) completed, %d job(s) failed, %d job(s) wait for confirmation,",
+        LOG.fine(() -> format("Job event loop: %d job(s) started, %d tasks eligible for execution, %d task(s) timed out, %d job(s) completed, %d job(s) failed, %d job(s) timed out, %d job(s) wait for confirmation,",
                               activatedJobs,
                               tasksReady,
-                              completedJobs,
-                              failedJobs,
-                              jobsToConfirm));
+                              expiredTasks,
+                              jobs.getOrDefault(COMPLETED, 0L),
+                              jobs.getOrDefault(FAILED, 0L),
+                              jobs.getOrDefault(TIMEOUT, 0L),
+                              jobs.getOrDefault(CONFIRM, 0L)));
         
-        if(activatedJobs == 0 && tasksReady == 0) {
-            pause.sleep();
+        if(activatedJobs == 0 && tasksReady == 0 && expiredTasks < TaskExpiryManager.MAX_EXPIRED_TASKS) {
+            if(leaderElection) {
+                awaitSignal();
+            } else {
+                pause.sleep();
+            }
         } else {
             pause.reset();
         }
     }
+    
+    // Pauses the leader for up to the maximum pause, 
+    // but checks once per second whether a job has been made ready on any node.
+    private void awaitSignal() throws InterruptedException {
+        for(int i=0; i < MAX_WAIT_SECONDS; i++) {
+            if(leases.consumeSignal(WAKEUP)) {
+                return;
+            }
+            signal.sleep();
+        }
+    }
+    
+    private boolean electLeader() {
+        boolean elected = leases.acquireLease(LEASE, 
+                                              node, 
+                                              leaseSeconds);
+        if(elected != leader) {
+            LOG.info(() -> format("Node %s %s job event loop leadership.",
+                                  node,
+                                  elected ? "acquired" : "lost"));
+        }
+        leader = elected;
+        return elected;
+    }
+    
+    @Override
+    protected void addStatusDetails(EventLoopStatus.Builder status) {
+        if(leaderElection) {
+            status.withNode(node)
+                  .withLeader(leader);
+        }
+    }
+    
+    /**
+     * Wakes up the event loop when a job has been committed, confirmed or resumed.
+     * With leader election enabled, a signal is raised to wake up the leader, which can run on another node.
+     * @param event the job ready event
+     */
+    protected void onJobReady(@Observes(during=AFTER_SUCCESS) JobReadyEvent event) {
+        if(!leaderElection) {
+            pause.wakeup();
+            return;
+        }
+        try {
+            leases.raiseSignal(WAKEUP, node);
+            signal.wakeup();
+        } catch (RuntimeException e) {
+            // The leader starts the job with its next regular iteration.
+            LOG.warning(() -> format("Unable to signal job event loop leader: %s", e.getMessage()));
+        }
+    }
 
 }
 
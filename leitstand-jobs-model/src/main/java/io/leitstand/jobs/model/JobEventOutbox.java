@@ -0,0 +1,206 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.jobs.model;
+
+import static io.leitstand.commons.db.DatabaseService.prepare;
+import static io.leitstand.jobs.service.JobId.jobId;
+import static io.leitstand.jobs.service.State.taskState;
+import static io.leitstand.jobs.service.TaskId.taskId;
+import static io.leitstand.jobs.service.TaskName.taskName;
+import static java.lang.String.join;
+import static java.lang.System.currentTimeMillis;
+import static java.util.Collections.nCopies;
+import static java.util.stream.Collectors.toList;
+
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.List;
+
+import javax.inject.Inject;
+
+import io.leitstand.commons.db.DatabaseService;
+import io.leitstand.commons.model.Service;
+
+/**
+ * Manages the job events stored in the <code>job.job_event_outbox</code> table.
+ * <p>
+ * Job events are stored in the transaction that changed the job or task state.
+ * Events of rolled back transactions are therefore never stored 
+ * and events of committed transactions are never lost, even if the node stops before the events have been published.
+ * The {@link JobEventDispatcher} removes the events from the outbox once they have been published.
+ */
+@Service
+public class JobEventOutbox {
+
+    /**
+     * A job event stored in the outbox.
+     */
+    static final class Entry {
+        
+        private final long id;
+        private final Date dateCreated;
+        private final JobEvent event;
+        
+        Entry(long id, Date dateCreated, JobEvent event) {
+            this.id = id;
+            this.dateCreated = new Date(dateCreated.getTime());
+            this.event = event;
+        }
+        
+        long getId() {
+            return id;
+        }
+        
+        Date getDateCreated() {
+            return new Date(dateCreated.getTime());
+        }
+        
+        JobEvent getEvent() {
+            return event;
+        }
+        
+    }
+    
+    @Inject
+    @Jobs
+    private DatabaseService db;
+    
+    protected JobEventOutbox() {
+        // CDI
+    }
+    
+    JobEventOutbox(DatabaseService db) {
+        this.db = db;
+    }
+    
+    /**
+     * Stores the given event in the outbox.
+     * @param event the job event
+     */
+    public void storeEvent(JobEvent event) {
+        String sql = "INSERT INTO job.job_event_outbox (job_uuid, task_uuid, task_name, state, tscreated) "+
+                     "VALUES (?, ?, ?, ?, ?)";
+        Timestamp now = new Timestamp(currentTimeMillis());
+        if(event instanceof TaskStateChangedEvent) {
+            TaskStateChangedEvent taskEvent = (TaskStateChangedEvent) event;
+            db.executeUpdate(prepare(sql, 
+                                     taskEvent.getJobId().getValue(), 
+                                     taskEvent.getTaskId().getValue(),
+                                     taskEvent.getTaskName().getValue(),
+                                     taskEvent.getTaskState().name(),
+                                     now));
+            return;
+        }
+        JobStateChangedEvent jobEvent = (JobStateChangedEvent) event;
+        db.executeUpdate(prepare(sql, 
+                                 jobEvent.getJobId().getValue(), 
+                                 null,
+                                 null,
+                                 jobEvent.getJobState().name(),
+                                 now));
+    }
+    
+    /**
+     * Returns the oldest events of the outbox in the order they have been stored.
+     * The storing order is not the commit order: a concurrent transaction can commit an event 
+     * with a lower sequence number after events with higher sequence numbers have been fetched.
+     * @param limit the maximum number of returned events
+     * @return the oldest events of the outbox.
+     */
+    public List<Entry> fetchEvents(int limit) {
+        String sql = "SELECT id, job_uuid, task_uuid, task_name, state, tscreated "+
+                     "FROM job.job_event_outbox "+
+                     "ORDER BY id "+
+                     "LIMIT ?";
+        return db.executeQuery(prepare(sql, limit), 
+                               rs -> new Entry(rs.getLong(1),
+                                               rs.getTimestamp(6),
+                                               rs.getString(3) == null 
+                                               ? new JobStateChangedEvent(jobId(rs.getString(2)),
+                                                                          taskState(rs.getString(5)))
+                                               : new TaskStateChangedEvent(jobId(rs.getString(2)),
+                                                                           taskId(rs.getString(3)),
+                                                                           taskName(rs.getString(4)),
+                                                                           taskState(rs.getString(5)))));
+    }
+    
+    /**
+     * Removes the given events from the outbox.
+     * <p>
+     * The events are removed by their IDs rather than by an ID range, 
+     * because a concurrent transaction can commit an event with a lower ID after the events have been fetched.
+     * @param entries the events to be removed
+     * @return the number of removed events.
+     */
+    public int removeEvents(List<Entry> entries) {
+        if(entries.isEmpty()) {
+            return 0;
+        }
+        String sql = "DELETE FROM job.job_event_outbox "+
+                     "WHERE id IN ("+join(",", nCopies(entries.size(), "?"))+")";
+        List<Object> ids = entries.stream()
+                                  .map(Entry::getId)
+                                  .collect(toList());
+        return db.executeUpdate(prepare(sql, ids));
+    }
+    
+    /**
+     * Moves the given events to the <code>job.job_event_deadletter</code> table.
+     * @param entries the events that cannot be published
+     * @param reason the reason why the events cannot be published
+     * @return the number of moved events.
+     */
+    public int moveToDeadLetters(List<Entry> entries, String reason) {
+        if(entries.isEmpty()) {
+            return 0;
+        }
+        String sql = "WITH failed AS ("+
+                       "DELETE FROM job.job_event_outbox "+
+                       "WHERE id IN ("+join(",", nCopies(entries.size(), "?"))+") "+
+                       "RETURNING id, job_uuid, task_uuid, task_name, state, tscreated"+
+                     ") "+
+                     "INSERT INTO job.job_event_deadletter (id, job_uuid, task_uuid, task_name, state, tscreated, tsfailed, reason) "+
+                     "SELECT id, job_uuid, task_uuid, task_name, state, tscreated, NOW(), ? "+
+                     "FROM failed";
+        List<Object> args = entries.stream()
+                                   .map(Entry::getId)
+                                   .collect(toList());
+        args.add(reason);
+        return db.executeUpdate(prepare(sql, args));
+    }
+    
+    /**
+     * Removes all dead letters older than the given retention period.
+     * @param retentionDays the retention period in days
+     * @return the number of removed dead letters.
+     */
+    public int removeDeadLetters(int retentionDays) {
+        String sql = "DELETE FROM job.job_event_deadletter "+
+                     "WHERE tsfailed < NOW() - ? * INTERVAL '1 day'";
+        return db.executeUpdate(prepare(sql, retentionDays));
+    }
+    
+    /**
+     * Returns the number of events waiting to be published.
+     * @return the number of events in the outbox.
+     */
+    public long countEvents() {
+        String sql = "SELECT count(*) FROM job.job_event_outbox";
+        return db.getSingleResult(prepare(sql), 
+                                  rs -> rs.getLong(1));
+    }
+    
+}
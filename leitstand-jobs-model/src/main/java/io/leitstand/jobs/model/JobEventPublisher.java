@@ -0,0 +1,52 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.jobs.model;
+
+import java.util.List;
+
+/**
+ * A <code>JobEventPublisher</code> forwards job lifecycle events to an external event stream.
+ * <p>
+ * All CDI beans implementing this interface are discovered on startup.
+ * The {@link JobEventDispatcher} passes the events of committed transactions in batches to every publisher.
+ * The events of a batch are ordered in the sequence they have been stored.
+ * Events fired by the same transaction keep their order, 
+ * but there is no global order across transactions, because concurrent transactions can commit in a different order 
+ * than they stored their events. An event can even arrive in a later batch than an event stored after it.
+ * A publisher is invoked by the dispatcher thread only and never on the thread that changed the job state.
+ * A publisher signals a failed delivery by throwing a <code>RuntimeException</code>.
+ * The batch is retried later and can therefore be delivered more than once.
+ * Events that cannot be published after repeated attempts are moved to the dead letters.
+ * Disabled publishers are ignored. No events are stored if all publishers are disabled.
+ */
+public interface JobEventPublisher {
+
+    /**
+     * Publishes a batch of job events.
+     * @param events the job events in the order they have been stored
+     */
+    /**
+     * Returns whether this publisher is enabled.
+     * The dispatcher evaluates this flag once on startup.
+     * @return <code>true</code> if this publisher is enabled, <code>false</code> otherwise.
+     */
+    default boolean isEnabled() {
+        return true;
+    }
+    
+    void publish(List<JobEvent> events);
+    
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.jobs.model;
+
+import static io.leitstand.commons.db.DatabaseService.prepare;
+import static io.leitstand.jobs.service.JobId.jobId;
+import static io.leitstand.jobs.service.State.taskState;
+import static io.leitstand.jobs.service.TaskId.taskId;
+import static io.leitstand.jobs.service.TaskName.taskName;
+import static java.lang.Math.min;
+import static java.lang.String.join;
+import static java.util.Collections.nCopies;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import javax.inject.Inject;
+
+import io.leitstand.commons.db.DatabaseService;
+import io.leitstand.commons.model.Service;
+import io.leitstand.jobs.model.JobEventOutbox.Entry;
+import io.leitstand.jobs.service.JobId;
+
+/**
+ * Manages the job events stored in the <code>job.job_event_stream</code> table.
+ * <p>
+ * Job events are stored in the transaction that changed the job or task state 
+ * and are read by the {@link JobEventBus} of every node to stream the events of a job to the subscribers connected to that node.
+ * Only the events of subscribed jobs are stored.
+ * A node that streams the events of a job renews a <code>job_event_stream:&lt;job&gt;</code> lease in the <code>job.job_scheduler_lease</code> table
+ * as long as the job has subscribers on that node.
+ * The events are retained for a short period only and are then removed.
+ * The event timestamps are read from the database clock, so that the clocks of the nodes do not need to be in sync.
+ */
+@Service
+public class JobEventStream {
+
+    static final String SUBSCRIPTION = "job_event_stream:";
+    static final int MAX_BATCH_SIZE = 1000;
+
+    @Inject
+    @Jobs
+    private DatabaseService db;
+    
+    protected JobEventStream() {
+        // CDI
+    }
+    
+    JobEventStream(DatabaseService db) {
+        this.db = db;
+    }
+    
+    /**
+     * Stores the events of subscribed jobs and discards the events of all other jobs.
+     * The events are stored with one statement per {@value #MAX_BATCH_SIZE} events.
+     * @param events the job events in the order they have been fired
+     * @return the number of stored events.
+     */
+    public int storeEvents(List<JobEvent> events) {
+        int stored = 0;
+        for(int i=0; i < events.size(); i+=MAX_BATCH_SIZE) {
+            stored += storeBatch(events.subList(i, min(i+MAX_BATCH_SIZE, events.size())));
+        }
+        return stored;
+    }
+    
+    private int storeBatch(List<JobEvent> events) {
+        String sql = "INSERT INTO job.job_event_stream (job_uuid, task_uuid, task_name, state, tscreated) "+
+                     "SELECT v.job_uuid, v.task_uuid, v.task_name, v.state, clock_timestamp() "+
+                     "FROM (VALUES "+join(",", nCopies(events.size(), "(?, ?, ?, ?, ?)"))+") "+
+                     "AS v (seq, job_uuid, task_uuid, task_name, state) "+
+                     "WHERE EXISTS (SELECT 1 "+
+                                   "FROM job.job_scheduler_lease l "+
+                                   "WHERE l.name = '"+SUBSCRIPTION+"' || v.job_uuid "+
+                                   "AND l.tsexpire >= NOW()) "+
+                     "ORDER BY v.seq";
+        List<Object> args = new ArrayList<>(events.size()*5);
+        int seq = 0;
+        for(JobEvent event : events) {
+            args.add(seq++);
+            args.add(event.getJobId().getValue());
+            if(event instanceof TaskStateChangedEvent) {
+                TaskStateChangedEvent taskEvent = (TaskStateChangedEvent) event;
+                args.add(taskEvent.getTaskId().getValue());
+                args.add(taskEvent.getTaskName().getValue());
+                args.add(taskEvent.getTaskState().name());
+                continue;
+            }
+            JobStateChangedEvent jobEvent = (JobStateChangedEvent) event;
+            args.add(null);
+            args.add(null);
+            args.add(jobEvent.getJobState().name());
+        }
+        return db.executeUpdate(prepare(sql, args));
+    }
+    
+    /**
+     * Renews the subscriptions of the given jobs.
+     * The events of a job are stored as long as at least one node renews the subscription of that job.
+     * @param jobs the IDs of the subscribed jobs
+     * @param node the ID of the node streaming the job events
+     * @param leaseSeconds the subscription lease period in seconds
+     */
+    public void renewSubscriptions(Collection<JobId> jobs, String node, long leaseSeconds) {
+        if(jobs.isEmpty()) {
+            return;
+        }
+        String sql = "INSERT INTO job.job_scheduler_lease AS l (name, owner, tsexpire) "+
+                     "SELECT '"+SUBSCRIPTION+"' || v.job_uuid, ?, NOW() + ? * INTERVAL '1 second' "+
+                     "FROM (VALUES "+join(",", nCopies(jobs.size(), "(?)"))+") AS v (job_uuid) "+
+                     "ON CONFLICT (name) DO UPDATE "+
+                     "SET owner = EXCLUDED.owner, tsexpire = greatest(l.tsexpire, EXCLUDED.tsexpire)";
+        List<Object> args = new ArrayList<>(jobs.size()+2);
+        args.add(node);
+        args.add(leaseSeconds);
+        for(JobId job : jobs) {
+            args.add(job.getValue());
+        }
+        db.executeUpdate(prepare(sql, args));
+    }
+    
+    /**
+     * Returns the events of the given jobs that have been stored within the given lookback period.
+     * A transaction can commit an event after events with higher sequence numbers have been read.
+     * The lookback period must therefore exceed the time between storing an event and committing the transaction.
+     * The caller is in charge to skip events that have already been read.
+     * @param jobs the IDs of the jobs
+     * @param lookbackMillis the lookback period in milliseconds
+     * @return the events of the given jobs ordered by their sequence number.
+     */
+    public List<Entry> fetchEvents(Collection<JobId> jobs, long lookbackMillis) {
+        String sql = "SELECT id, job_uuid, task_uuid, task_name, state, tscreated "+
+                     "FROM job.job_event_stream "+
+                     "WHERE tscreated > clock_timestamp() - ? * INTERVAL '1 millisecond' "+
+                     "AND job_uuid IN ("+join(",", nCopies(jobs.size(), "?"))+") "+
+                     "ORDER BY id";
+        List<Object> args = new ArrayList<>(jobs.size()+1);
+        args.add(lookbackMillis);
+        for(JobId job : jobs) {
+            args.add(job.getValue());
+        }
+        return db.executeQuery(prepare(sql, args), 
+                               rs -> new Entry(rs.getLong(1),
+                                               rs.getTimestamp(6),
+                                               rs.getString(3) == null 
+                                               ? new JobStateChangedEvent(jobId(rs.getString(2)),
+                                                                          taskState(rs.getString(5)))
+                                               : new TaskStateChangedEvent(jobId(rs.getString(2)),
+                                                                           taskId(rs.getString(3)),
+                                                                           taskName(rs.getString(4)),
+                                                                           taskState(rs.getString(5)))));
+    }
+    
+    /**
+     * Removes all events older than the given retention period.
+     * @param retentionMillis the retention period in milliseconds
+     * @return the number of removed events.
+     */
+    public int removeEvents(long retentionMillis) {
+        String sql = "DELETE FROM job.job_event_stream "+
+                     "WHERE tscreated < clock_timestamp() - ? * INTERVAL '1 millisecond'";
+        return db.executeUpdate(prepare(sql, retentionMillis));
+    }
+    
+    /**
+     * Removes all expired subscriptions.
+     * @return the number of removed subscriptions.
+     */
+    public int removeSubscriptions() {
+        String sql = "DELETE FROM job.job_scheduler_lease "+
+                     "WHERE name LIKE '"+SUBSCRIPTION+"%' "+
+                     "AND tsexpire < NOW()";
+        return db.executeUpdate(prepare(sql));
+    }
+    
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.jobs.model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.transaction.TransactionScoped;
+
+/**
+ * Collects the job events fired in the current transaction, 
+ * so that the {@link JobEventBus} can store them in the {@link JobEventStream} with a single statement 
+ * before the transaction completes.
+ */
+@TransactionScoped
+public class JobEventStreamBuffer implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    
+    private final List<JobEvent> events = new ArrayList<>();
+    
+    /**
+     * Adds an event to the buffer.
+     * @param event the job event
+     */
+    public void add(JobEvent event) {
+        events.add(event);
+    }
+    
+    /**
+     * Removes all events from the buffer.
+     * @return the removed events in the order they have been added.
+     */
+    public List<JobEvent> drain() {
+        List<JobEvent> drained = new ArrayList<>(events);
+        events.clear();
+        return drained;
+    }
+    
+}
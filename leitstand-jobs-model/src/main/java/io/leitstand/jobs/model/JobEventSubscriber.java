@@ -0,0 +1,41 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.jobs.model;
+
+import java.util.function.Consumer;
+
+/**
+ * A subscriber of the events of a job.
+ * <p>
+ * The {@link JobEventBus} periodically asks every subscriber to verify its connection
+ * and removes the subscribers that have been closed, 
+ * so that a disconnected subscriber is removed even if the job does not change its state anymore.
+ */
+public interface JobEventSubscriber extends Consumer<JobEvent> {
+
+    /**
+     * Returns whether this subscriber has been closed.
+     * @return <code>true</code> if this subscriber has been closed, <code>false</code> otherwise.
+     */
+    boolean isClosed();
+    
+    /**
+     * Verifies that the subscriber is still connected, for example by sending a keep-alive message. 
+     * A subscriber that detects a disconnect closes itself.
+     */
+    void keepAlive();
+    
+}
@@ -15,35 +15,16 @@
  */
 package io.leitstand.jobs.model;
 
-import java.util.HashSet;
-import java.util.Set;
-
 public class JobGraph  {
 
 	private Job flow;
-	private Set<Job_Task_Transition> edges;
-	private Set<Job_Task> nodes;
 	
 	public JobGraph(Job flow){
 		this.flow = flow;
-		this.edges = new HashSet<>();
-		this.nodes = new HashSet<>();
 	}
 	
 	public void accept(JobGraphVisitor visitor){
-		Job_Task start = flow.getStart();
-		traverse(visitor,start);
+		JobDag.snapshot(flow).accept(visitor);
 	}
 	
-	private void traverse(JobGraphVisitor visitor, Job_Task task){
-		if(nodes.add(task)) {
-			visitor.visitNode(task);
-		}
-		for(Job_Task_Transition transition : task.getSuccessors()){
-			traverse(visitor,transition.getTo());
-			if(edges.add(transition)){
-				visitor.visitEdge(transition);
-			}
-		}
-	}
 }
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.jobs.model;
+
+import io.leitstand.jobs.service.JobId;
+
+/**
+ * Signals that a job has been committed, resumed or confirmed and needs to be scheduled.
+ * <p>
+ * The {@link JobEventLoop} observes this event after the transaction has been committed 
+ * and wakes up immediately to start the job and to release the tasks eligible for execution.
+ */
+public class JobReadyEvent {
+
+    private final JobId jobId;
+    
+    public JobReadyEvent(JobId jobId) {
+        this.jobId = jobId;
+    }
+    
+    /**
+     * Returns the ID of the job to be scheduled.
+     * @return the ID of the job to be scheduled.
+     */
+    public JobId getJobId() {
+        return jobId;
+    }
+    
+}
@@ -16,101 +16,163 @@
 package io.leitstand.jobs.model;
 
 import static io.leitstand.commons.db.DatabaseService.prepare;
+import static io.leitstand.jobs.service.JobId.jobId;
+import static io.leitstand.jobs.service.State.ACTIVE;
+import static io.leitstand.jobs.service.State.READY;
+import static io.leitstand.jobs.service.TaskId.taskId;
+import static io.leitstand.jobs.service.TaskName.taskName;
+import static java.util.stream.Collectors.counting;
+import static java.util.stream.Collectors.groupingBy;
 
+import java.util.List;
+import java.util.Map;
+
+import javax.enterprise.event.Event;
 import javax.inject.Inject;
 
 import io.leitstand.commons.db.DatabaseService;
 import io.leitstand.commons.model.Service;
+import io.leitstand.jobs.service.State;
 
 @Service
 public class JobScheduler {
 	
+	/**
+	 * Sub-select returning the task state counters of all jobs.
+	 * The counters are maintained by insert-only delta rows and 
+	 * the sub-select adds the deltas that have not been compacted yet to the compacted counters.
+	 * A job can have multiple rows per state, which must be summed up.
+	 */
+	static final String TASK_STATE_COUNTS = "(SELECT job_id, state, count "+
+	                                         "FROM job.job_task_state_count "+
+	                                         "UNION ALL "+
+	                                         "SELECT job_id, state, delta "+
+	                                         "FROM job.job_task_state_delta)";
+	
     @Inject
     @Jobs
 	private DatabaseService db;
 	
+	@Inject
+	private Event<TasksReadyEvent> tasksReady;
+	
+	@Inject
+	private Event<JobEvent> jobEvents;
+	
 	public int startScheduledJobs() {
 	    String sql = "UPDATE job.job "+
 	                 "SET state='ACTIVE' "+
 	                 "WHERE state='READY' "+
-	                 "AND tsschedule <= NOW()";
-	    return db.executeUpdate(prepare(sql));	    
+	                 "AND tsschedule <= NOW() "+
+	                 "RETURNING uuid";
+	    List<JobStateChangedEvent> events = db.executeQuery(prepare(sql), 
+	                                                        rs -> new JobStateChangedEvent(jobId(rs.getString(1)), 
+	                                                                                       ACTIVE));
+	    events.forEach(jobEvents::fire);
+	    return events.size();
 	}
 	
+	/**
+	 * Marks all waiting tasks of active jobs without pending predecessors eligible for execution.
+	 * <p>
+	 * Successors of a completed task are released when the task gets completed.
+	 * This method only releases tasks that could not be released on task completion, 
+	 * i.e. the start tasks of a newly activated job and the tasks of a confirmed or resumed job.
+	 * The statement is backed by the partial <code>job_task_pending_ix</code> index and 
+	 * does not evaluate the task transitions.
+	 * @return the number of tasks marked eligible for execution.
+	 */
 	public int markTasksEligibleForExecution(){
-	    String sql = "WITH "+ 
-	                 "active_jobs(id) AS ( "+
-	                   "SELECT id "+ 
-	                   "FROM job.job "+ 
-	                   "WHERE state='ACTIVE' "+
-	                 "), "+
-	                 "blocked_tasks(id) AS ( "+
-	                   "SELECT t.id "+
-	                   "FROM job.job_task t "+
-	                   "JOIN job.job_task_transition tr "+
-	                   "ON tr.to_task_id = t.id "+
-	                   "JOIN job.job_task p "+ 
-	                   "ON tr.from_task_id = p.id "+
-	                   "WHERE t.state = 'WAITING' "+
-	                   "AND p.state <> 'COMPLETED' "+
-	                   "AND t.job_id IN (SELECT id FROM active_jobs) "+
-	                 ") "+
-	                 "UPDATE job.job_task t "+
+	    String sql = "UPDATE job.job_task t "+
 	                 "SET state='READY' "+
-	                 "WHERE t.state='WAITING' "+
-	                 "AND t.id NOT IN (SELECT id FROM blocked_tasks) "+
-	                 "AND t.job_id IN (SELECT id FROM active_jobs)";
-	    return db.executeUpdate(prepare(sql));
+	                 "FROM job.job j "+
+	                 "WHERE t.job_id = j.id "+
+	                 "AND j.state='ACTIVE' "+
+	                 "AND t.state='WAITING' "+
+	                 "AND t.pending_predecessors = 0 "+
+	                 "RETURNING j.uuid, t.uuid, t.name";
+	    List<TaskStateChangedEvent> events = db.executeQuery(prepare(sql), 
+	                                                         rs -> new TaskStateChangedEvent(jobId(rs.getString(1)),
+	                                                                                         taskId(rs.getString(2)),
+	                                                                                         taskName(rs.getString(3)),
+	                                                                                         READY));
+	    int tasks = events.size();
+	    if(tasks > 0) {
+	        tasksReady.fire(new TasksReadyEvent(tasks));
+	        events.forEach(jobEvents::fire);
+	    }
+	    return tasks;
 	}
 
-	public int markCompletedJobs() {
-	    String sql = "WITH completed_jobs AS ( "+
-	                   "SELECT j.id FROM job.job j "+
-	                   "LEFT JOIN job.job_task t "+ 
-	                   "ON j.id = t.job_id "+
-	                   "AND t.state <> 'COMPLETED' "+
-	                   "WHERE j.state = 'ACTIVE' "+
-	                   "AND t.id IS NULL "+
+	/**
+	 * Folds the task state deltas into the task state counters.
+	 * <p>
+	 * Triggers on the <code>job_task</code> table record every task state change as delta row per job and state.
+	 * The delta rows are only inserted, so that concurrent task state changes never contend for a counter row.
+	 * This method removes the delta rows and adds them to the counters in a single statement.
+	 * Deltas of removed jobs are discarded.
+	 * @return the number of updated counters.
+	 */
+	public int compactTaskStateCounts() {
+	    String sql = "WITH d AS ( "+
+	                   "DELETE FROM job.job_task_state_delta "+
+	                   "RETURNING job_id, state, delta"+
 	                 ") "+
-	                 "UPDATE job.job j "+
-	                 "SET state = 'COMPLETED' "+
-	                 "FROM completed_jobs c "+
-	                 "WHERE j.id = c.id "+
-	                 "AND j.state = 'ACTIVE'";
+	                 "INSERT INTO job.job_task_state_count (job_id, state, count) "+
+	                 "SELECT d.job_id, d.state, sum(d.delta) "+
+	                 "FROM d "+
+	                 "JOIN job.job j "+
+	                 "ON j.id = d.job_id "+
+	                 "GROUP BY d.job_id, d.state "+
+	                 "ON CONFLICT (job_id, state) "+
+	                 "DO UPDATE SET count = job.job_task_state_count.count + EXCLUDED.count";
 	    return db.executeUpdate(prepare(sql));
 	}
-
-    public int markJobsWaitingForConfirmation() {
-        String sql = "WITH jobs_to_confirm AS ( "+
-                       "SELECT DISTINCT j.id FROM job.job j "+
-                       "JOIN job.job_task t "+ 
-                       "ON j.id = t.job_id "+
-                       "AND t.state = 'CONFIRM' "+
-                       "WHERE j.state = 'ACTIVE' "+
-                     ") "+
-                     "UPDATE job.job j "+
-                     "SET state = 'CONFIRM' "+
-                     "FROM jobs_to_confirm c "+
-                     "WHERE j.id = c.id "+
-                     "AND j.state = 'ACTIVE'";
-        return db.executeUpdate(prepare(sql));
-    }
-	
 	
-	public int markFailedJobs() {
-        String sql = "WITH failed_jobs AS ( "+
-                       "SELECT DISTINCT j.id FROM job.job j "+
-                       "JOIN job.job_task t "+ 
-                       "ON j.id = t.job_id "+
-                       "AND t.state = 'FAILED' "+
-                       "WHERE j.state = 'ACTIVE' "+
-                     ") "+
-                     "UPDATE job.job j "+
-                     "SET state = 'FAILED' "+
-                     "FROM failed_jobs c "+
-                     "WHERE j.id = c.id "+
-                     "AND j.state = 'ACTIVE'";
-        return db.executeUpdate(prepare(sql));
+	/**
+	 * Derives the state of all active jobs from the states of their tasks in a single pass.
+	 * <p>
+	 * The task states are read from the task state counters, without reading the task rows.
+	 * The counters include the deltas that have not been compacted yet, 
+	 * so that the counters are consistent with the job states read by the same statement.
+	 * An active job 
+	 * <ul>
+	 * <li>fails if at least one task has failed,</li>
+	 * <li>times out if at least one task has timed out,</li>
+	 * <li>waits for confirmation if at least one task waits for confirmation and</li>
+	 * <li>completes if all tasks are completed.</li>
+	 * </ul>
+	 * @return the number of jobs per new job state.
+	 */
+	public Map<State,Long> reconcileJobStates() {
+	    String sql = "WITH task_states AS ( "+
+	                   "SELECT j.id, "+
+	                          "coalesce(sum(c.count) FILTER (WHERE c.state = 'FAILED'),0) AS failed, "+
+	                          "coalesce(sum(c.count) FILTER (WHERE c.state = 'TIMEOUT'),0) AS timeout, "+
+	                          "coalesce(sum(c.count) FILTER (WHERE c.state = 'CONFIRM'),0) AS confirm, "+
+	                          "coalesce(sum(c.count) FILTER (WHERE c.state <> 'COMPLETED'),0) AS pending "+
+	                   "FROM job.job j "+
+	                   "LEFT JOIN "+TASK_STATE_COUNTS+" c "+
+	                   "ON j.id = c.job_id "+
+	                   "WHERE j.state = 'ACTIVE' "+
+	                   "GROUP BY j.id "+
+	                 ") "+
+	                 "UPDATE job.job j "+
+	                 "SET state = CASE WHEN s.failed > 0 THEN 'FAILED' "+
+	                                  "WHEN s.timeout > 0 THEN 'TIMEOUT' "+
+	                                  "WHEN s.confirm > 0 THEN 'CONFIRM' "+
+	                                  "ELSE 'COMPLETED' END "+
+	                 "FROM task_states s "+
+	                 "WHERE j.id = s.id "+
+	                 "AND j.state = 'ACTIVE' "+
+	                 "AND (s.failed > 0 OR s.timeout > 0 OR s.confirm > 0 OR s.pending = 0) "+
+	                 "RETURNING j.uuid, j.state";
+	    List<JobStateChangedEvent> events = db.executeQuery(prepare(sql), 
+	                                                        rs -> new JobStateChangedEvent(jobId(rs.getString(1)),
+	                                                                                       State.valueOf(rs.getString(2))));
+	    events.forEach(jobEvents::fire);
+	    return events.stream()
+	                 .collect(groupingBy(JobStateChangedEvent::getJobState,counting()));
 	}
 	
 }
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.jobs.model;
+
+import io.leitstand.jobs.service.JobId;
+import io.leitstand.jobs.service.State;
+
+/**
+ * Signals that a job has changed its state.
+ */
+public class JobStateChangedEvent extends JobEvent {
+
+    private final State jobState;
+    
+    public JobStateChangedEvent(JobId jobId, State jobState) {
+        super(jobId);
+        this.jobState = jobState;
+    }
+    
+    /**
+     * Returns the new job state.
+     * @return the new job state.
+     */
+    public State getJobState() {
+        return jobState;
+    }
+    
+}
@@ -1,18 +1,56 @@
 package io.leitstand.jobs.model;
 
+import static io.leitstand.jobs.model.LeaseService.nodeId;
+import static io.leitstand.jobs.model.TaskBulkheads.bulkheads;
+import static io.leitstand.jobs.model.TaskBulkheads.noBulkheads;
+import static io.leitstand.jobs.model.TaskHandlerPool.adaptivePool;
+import static io.leitstand.jobs.model.TaskHandlerPool.fixedPool;
+import static io.leitstand.jobs.model.TaskRateLimit.rateLimit;
+import static io.leitstand.jobs.model.TaskRateLimits.noRateLimits;
+import static io.leitstand.jobs.model.TaskRateLimits.rateLimits;
+import static io.leitstand.jobs.model.TaskShards.noShards;
+import static io.leitstand.jobs.model.TaskShards.shards;
+import static io.leitstand.jobs.service.State.FAILED;
+import static java.lang.Boolean.getBoolean;
+import static java.lang.Integer.getInteger;
+import static java.lang.Long.getLong;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.String.format;
+import static java.lang.System.currentTimeMillis;
+import static java.lang.System.getProperty;
+import static java.util.Collections.emptySet;
+import static java.util.concurrent.CompletableFuture.allOf;
+import static java.util.concurrent.CompletableFuture.runAsync;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.TimeUnit.MINUTES;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static java.util.logging.Logger.getLogger;
+import static javax.enterprise.event.TransactionPhase.AFTER_SUCCESS;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 import javax.annotation.Resource;
+import javax.enterprise.concurrent.ContextService;
 import javax.enterprise.concurrent.ManagedExecutorService;
 import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
 import javax.inject.Inject;
 
+import io.leitstand.jobs.service.State;
 import io.leitstand.jobs.service.TaskId;
+import io.leitstand.jobs.service.TaskType;
 
 @ApplicationScoped
 public class JobTaskEventLoop extends BaseEventLoop{
@@ -21,22 +59,185 @@ public class JobTaskEventLoop extends BaseEventLoop{
     
     private static final long MAX_WAIT_TIME_SECONDS = 30;
     
-    private AtomicInteger availableHandlers = new AtomicInteger(10);
+    static final String TASK_HANDLERS = "leitstand.jobs.task.handlers";
+    static final String TASK_HANDLERS_ADAPTIVE = "leitstand.jobs.task.handlers.adaptive";
+    static final String TASK_HANDLERS_MIN = "leitstand.jobs.task.handlers.min";
+    static final String TASK_HANDLERS_MAX = "leitstand.jobs.task.handlers.max";
+    static final String TASK_LATENCY_THRESHOLD_MILLIS = "leitstand.jobs.task.latency_threshold_ms";
+    static final String TASK_IO_EXECUTOR = "leitstand.jobs.task.io_executor";
+    static final String TASK_BATCH_SIZE = "leitstand.jobs.task.batch_size";
+    static final String TASK_SHARDS = "leitstand.jobs.task.shards";
+    static final String TASK_SHARDS_LEASE_SECONDS = "leitstand.jobs.task.shards.lease_seconds";
+    static final String TASK_GROUP_RATE_LIMIT = "leitstand.jobs.task.group_rate_limit";
+    static final String TASK_GROUP_BURST = "leitstand.jobs.task.group_burst";
+    static final String TASK_JOB_RATE_LIMIT = "leitstand.jobs.task.job_rate_limit";
+    static final String TASK_JOB_BURST = "leitstand.jobs.task.job_burst";
+    
+    static final String MANAGED_EXECUTOR = "managed";
+    static final String DEDICATED_EXECUTOR = "dedicated";
+    static final String VIRTUAL_THREAD_EXECUTOR = "virtual";
+    
+    private TaskHandlerPool handlers = fixedPool(10);
+    
+    private TaskBulkheads bulkheads = noBulkheads();
+    
+    int batchSize = 1;
+    
+    private TaskShards shards = noShards();
+    
+    private TaskRateLimits rateLimits = noRateLimits();
+    
+    private long nextPurge;
+    
+    private String node;
+    
+    private long shardLeaseSeconds;
+    
+    private long nextRebalance;
+    
+    private Set<TaskType> ioBoundTaskTypes = emptySet();
+    
+    private ExecutorService ioExecutor;
     
     @Resource
     private ManagedExecutorService wm;
     
+    @Resource
+    private ContextService contextService;
+    
     @Inject
     private TaskSchedulerService scheduler;
     
+    @Inject
+    private TaskProcessorDiscoveryService processors;
+    
+    @Inject
+    private LeaseService leases;
+    
+    @Inject
+    private TaskProcessingService service;
+    
+    @Inject
+    private TaskOutcomeService taskOutcomes;
+    
     private Pause pause;
     
     @Override
     public void onStartup() {
-        pause = new Pause(MAX_WAIT_TIME_SECONDS,
+        long maxWaitTimeSeconds = MAX_WAIT_TIME_SECONDS;
+        shards = shards(max(0, getInteger(TASK_SHARDS, 0)));
+        if(shards.isEnabled()) {
+            node = nodeId();
+            shardLeaseSeconds = max(3, getLong(TASK_SHARDS_LEASE_SECONDS, 15L));
+            // Wake up often enough to renew the shard leases in time.
+            maxWaitTimeSeconds = min(maxWaitTimeSeconds, max(1, shardLeaseSeconds/3));
+            LOG.info(() -> format("Task sharding enabled for node %s: %d shards, lease of %d seconds.",
+                                  node,
+                                  shards.getShardCount(),
+                                  shardLeaseSeconds));
+        }
+        pause = new Pause(maxWaitTimeSeconds,
                           SECONDS);
+        handlers = createTaskHandlerPool();
+        Map<TaskType,Integer> limits = processors.getConcurrencyLimits();
+        LOG.info(() -> format("Task type concurrency limits: %s", limits));
+        bulkheads = bulkheads(limits);
+        rateLimits = rateLimits(processors.getRateLimits(),
+                                createTaskRateLimit(TASK_GROUP_RATE_LIMIT, TASK_GROUP_BURST),
+                                createTaskRateLimit(TASK_JOB_RATE_LIMIT, TASK_JOB_BURST));
+        LOG.info(() -> format("Task rate limits: %s", rateLimits));
+        batchSize = max(1, getInteger(TASK_BATCH_SIZE, 1));
+        LOG.info(() -> format("Task batch size: %d", batchSize));
+        ioExecutor = createIoTaskExecutor(getProperty(TASK_IO_EXECUTOR, MANAGED_EXECUTOR));
+        if(ioExecutor != null) {
+            ioBoundTaskTypes = processors.getIoBoundTaskTypes();
+            LOG.info(() -> format("I/O-bound task types: %s", ioBoundTaskTypes));
+        }
         super.onStartup();
     }
+    
+    @Override
+    public void onShutdown() {
+        super.onShutdown();
+        if(ioExecutor != null) {
+            ioExecutor.shutdown();
+        }
+        if(shards.isEnabled()) {
+            // Release all shards to let the remaining nodes take over immediately.
+            shards.releaseAll(leases, node);
+        }
+    }
+    
+    /**
+     * Creates the executor for I/O-bound task processors.
+     * @param mode the configured executor mode
+     * @return the I/O task executor or <code>null</code> if I/O-bound task processors shall run on the managed executor.
+     */
+    static ExecutorService createIoTaskExecutor(String mode) {
+        if(VIRTUAL_THREAD_EXECUTOR.equals(mode)) {
+            try {
+                // Virtual threads are available since Java 21.
+                ExecutorService executor = (ExecutorService) Executors.class
+                                                                      .getMethod("newVirtualThreadPerTaskExecutor")
+                                                                      .invoke(null);
+                LOG.info("Execute I/O-bound task processors on virtual threads.");
+                return executor;
+            } catch (ReflectiveOperationException e) {
+                LOG.warning(() -> format("Virtual threads are not supported by this JVM (%s). Execute I/O-bound task processors on a dedicated thread pool instead.",
+                                         getProperty("java.version")));
+                return newDedicatedIoTaskExecutor();
+            }
+        }
+        if(DEDICATED_EXECUTOR.equals(mode)) {
+            LOG.info("Execute I/O-bound task processors on a dedicated thread pool.");
+            return newDedicatedIoTaskExecutor();
+        }
+        return null;
+    }
+    
+    private static ExecutorService newDedicatedIoTaskExecutor() {
+        AtomicInteger threads = new AtomicInteger();
+        return newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "leitstand-io-task-"+threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    /**
+     * Creates the rate limit configured by the given system properties.
+     * @param rateProperty the property that sets the number of tasks per minute
+     * @param burstProperty the property that sets the burst size
+     * @return the rate limit or <code>null</code> if the rate is not limited.
+     */
+    static TaskRateLimit createTaskRateLimit(String rateProperty, String burstProperty) {
+        int tasksPerMinute = getInteger(rateProperty, 0);
+        if(tasksPerMinute <= 0) {
+            return null;
+        }
+        return rateLimit(tasksPerMinute, 1, MINUTES)
+               .withBurst(getInteger(burstProperty, 1));
+    }
+    
+    static TaskHandlerPool createTaskHandlerPool() {
+        int limit = getInteger(TASK_HANDLERS, 10);
+        if(getBoolean(TASK_HANDLERS_ADAPTIVE)) {
+            int minLimit = getInteger(TASK_HANDLERS_MIN, 1);
+            int maxLimit = getInteger(TASK_HANDLERS_MAX, 20*limit);
+            long latencyThreshold = getLong(TASK_LATENCY_THRESHOLD_MILLIS, 5000L);
+            LOG.info(() -> format("Adaptive task handler limit enabled. Initial limit: %d, range: [%d,%d], latency threshold: %d ms",
+                                  limit,
+                                  minLimit,
+                                  maxLimit,
+                                  latencyThreshold));
+            return adaptivePool(limit, 
+                                minLimit, 
+                                maxLimit, 
+                                latencyThreshold);
+        }
+        LOG.info(() -> format("Fixed task handler limit: %d",limit));
+        return fixedPool(limit);
+    }
 
     @Override
     public void run() {
@@ -56,29 +257,258 @@ public class JobTaskEventLoop extends BaseEventLoop{
     }
 
     protected void scheduleTasks() throws InterruptedException{
-        int limit = availableHandlers.get();
+        if(shards.isEnabled()) {
+            rebalanceShards();
+        }
+        if(rateLimits.isEnabled()) {
+            removeIdleBuckets();
+        }
+        int limit = handlers.available();
         if(limit > 0) {
-            List<TaskId> tasks = scheduler.fetchExecutableTasks(limit);
+            List<ExecutableTask> tasks = scheduler.fetchExecutableTasks(limit, 
+                                                                        bulkheads,
+                                                                        shards,
+                                                                        rateLimits);
             if(!tasks.isEmpty()) {
                 // Reset wait time to eagerly schedule tasks eligible for execution.
                 pause.reset(); 
                 
-                // Schedule all tasks
-                for(TaskId taskId : tasks) {
-                    availableHandlers.decrementAndGet();
-                    wm.execute(() -> {
-                        try {
-                            scheduler.executeTask(taskId);
-                        } finally {
-                            availableHandlers.incrementAndGet();
-                        }
-                    });
+                // Schedule all tasks. 
+                // Tasks processed on the managed executor are executed in batches if batching is enabled.
+                List<TaskId> batch = new ArrayList<>(batchSize);
+                for(ExecutableTask task : tasks) {
+                    // Occupy the partition capacity after the claim has been committed.
+                    bulkheads.acquire(task.getTaskType(), task.getTaskId());
+                    handlers.acquire();
+                    if(isIoBound(task)) {
+                        dispatch(task);
+                        continue;
+                    }
+                    batch.add(task.getTaskId());
+                    if(batch.size() == batchSize) {
+                        dispatch(batch);
+                        batch = new ArrayList<>(batchSize);
+                    }
+                }
+                if(!batch.isEmpty()) {
+                    dispatch(batch);
                 }
 
                 return;
             }
+            if(rateLimits.isThrottled()) {
+                // Poll with the minimum wait time until the exhausted token buckets permit further tasks.
+                pause.reset();
+            }
+            Long retryDelay = scheduler.getNextRetryDelayMillis();
+            if(retryDelay != null) {
+                // Wake up when the earliest retry is due.
+                pause.sleep(retryDelay);
+                return;
+            }
         }
         pause.sleep();
     }
+    
+    private void removeIdleBuckets() {
+        long now = currentTimeMillis();
+        if(now < nextPurge) {
+            return;
+        }
+        int removed = scheduler.removeIdleBuckets(rateLimits);
+        LOG.fine(() -> format("Removed %d idle task rate limit buckets.", removed));
+        nextPurge = now + MINUTES.toMillis(1);
+    }
+    
+    private void rebalanceShards() {
+        long now = currentTimeMillis();
+        if(now < nextRebalance) {
+            return;
+        }
+        Set<Integer> previous = shards.getOwnedShards();
+        shards.rebalance(leases, node, shardLeaseSeconds);
+        if(!previous.equals(shards.getOwnedShards())) {
+            LOG.info(() -> format("Node %s owns task shards %s.",
+                                  node,
+                                  shards.getOwnedShards()));
+        }
+        // Renew the leases three times per lease period.
+        nextRebalance = now + SECONDS.toMillis(shardLeaseSeconds)/3;
+    }
+    
+    private boolean isIoBound(ExecutableTask task) {
+        return ioExecutor != null && ioBoundTaskTypes.contains(task.getTaskType());
+    }
+    
+    private void dispatch(ExecutableTask task) {
+        Runnable execution = () -> executeTask(task.getTaskId());
+        // Propagate the container context of the event loop to the I/O executor threads.
+        ioExecutor.execute(contextService.createContextualProxy(execution, Runnable.class));
+    }
+    
+    private void dispatch(List<TaskId> batch) {
+        if(batch.size() == 1) {
+            TaskId taskId = batch.get(0);
+            wm.execute(() -> executeTask(taskId));
+            return;
+        }
+        wm.execute(() -> executeTasks(batch));
+    }
+    
+    private void executeTask(TaskId taskId) {
+        long start = currentTimeMillis();
+        boolean failed = true;
+        try {
+            State state = scheduler.executeTask(taskId);
+            failed = state == FAILED;
+        } finally {
+            releaseHandler(taskId, 
+                           currentTimeMillis() - start, 
+                           failed);
+            // Wake up the event loop to occupy the released handler.
+            pause.wakeup();
+        }
+    }
+    
+    /**
+     * Executes a batch of claimed tasks.
+     * <p>
+     * The tasks are loaded by one transaction. 
+     * Each task processor is invoked on its own executor thread outside of any transaction.
+     * The outcomes of all synchronous task processors are persisted by one transaction.
+     * Should this transaction fail, each outcome is persisted in its own transaction.
+     * Tasks executed by an {@link AsyncTaskProcessor} are completed individually.
+     * @param taskIds the claimed tasks
+     */
+    private void executeTasks(List<TaskId> taskIds) {
+        List<Job_Task> tasks;
+        try {
+            tasks = scheduler.startTasks(taskIds);
+        } catch (Exception e) {
+            LOG.fine(() -> format("Cannot load task batch %s: %s. Execute the tasks individually.", 
+                                  taskIds,
+                                  e.getMessage()));
+            taskIds.forEach(taskId -> wm.execute(() -> executeTask(taskId)));
+            return;
+        }
+        
+        Set<TaskId> loaded = new HashSet<>();
+        Map<TaskId,CompletableFuture<TaskResult>> outcomes = new ConcurrentHashMap<>();
+        Map<TaskId,Long> latencies = new ConcurrentHashMap<>();
+        List<CompletableFuture<Void>> executions = new ArrayList<>(tasks.size());
+        for(Job_Task task : tasks) {
+            TaskId taskId = task.getTaskId();
+            loaded.add(taskId);
+            executions.add(runAsync(() -> invokeTaskProcessor(task, outcomes, latencies), wm));
+        }
+        
+        // Release the handlers of removed tasks.
+        for(TaskId taskId : taskIds) {
+            if(!loaded.contains(taskId)) {
+                releaseHandler(taskId, 0, true);
+            }
+        }
+        
+        allOf(executions.toArray(new CompletableFuture[executions.size()]))
+        .whenCompleteAsync((done,error) -> completeTasks(tasks, outcomes, latencies), wm);
+    }
+    
+    private void invokeTaskProcessor(Job_Task task, 
+                                     Map<TaskId,CompletableFuture<TaskResult>> outcomes,
+                                     Map<TaskId,Long> latencies) {
+        TaskId taskId = task.getTaskId();
+        long start = currentTimeMillis();
+        CompletionStage<TaskResult> outcome;
+        try {
+            outcome = service.invokeTaskProcessor(task);
+        } catch (Exception e) {
+            CompletableFuture<TaskResult> failure = new CompletableFuture<>();
+            failure.completeExceptionally(e);
+            outcome = failure;
+        }
+        CompletableFuture<TaskResult> result = outcome.toCompletableFuture();
+        if(!result.isDone()) {
+            // The asynchronous task processor completes the task.
+            scheduler.awaitOutcome(taskId, outcome);
+            releaseHandler(taskId, currentTimeMillis() - start, false);
+            return;
+        }
+        latencies.put(taskId, currentTimeMillis() - start);
+        outcomes.put(taskId, result);
+    }
+    
+    private void completeTasks(List<Job_Task> tasks,
+                               Map<TaskId,CompletableFuture<TaskResult>> outcomes,
+                               Map<TaskId,Long> latencies) {
+        if(outcomes.isEmpty()) {
+            pause.wakeup();
+            return;
+        }
+        try {
+            scheduler.completeTasks(tasks, outcomes);
+        } catch (Exception e) {
+            LOG.fine(() -> format("Cannot persist outcomes of task batch %s: %s. Persist the outcomes individually.", 
+                                  outcomes.keySet(),
+                                  e.getMessage()));
+            for(Job_Task task : tasks) {
+                CompletableFuture<TaskResult> outcome = outcomes.get(task.getTaskId());
+                if(outcome != null) {
+                    completeTask(task, outcome);
+                }
+            }
+        } finally {
+            outcomes.forEach((taskId,outcome) -> releaseHandler(taskId, 
+                                                                latencies.get(taskId), 
+                                                                isFailed(outcome)));
+            // Wake up the event loop to occupy the released handlers.
+            pause.wakeup();
+        }
+    }
+    
+    private void completeTask(Job_Task task, CompletableFuture<TaskResult> outcome) {
+        TaskId taskId = task.getTaskId();
+        try {
+            outcome.whenComplete((result,error) -> taskOutcomes.completeTask(task, result, error))
+                   .join();
+        } catch (Exception e) {
+            // The task times out if its outcome cannot be persisted.
+            LOG.fine(() -> format("Cannot persist outcome of task %s: %s", 
+                                  taskId,
+                                  e.getMessage()));
+        }
+    }
+    
+    private static boolean isFailed(CompletableFuture<TaskResult> outcome) {
+        return outcome.isCompletedExceptionally() || outcome.join().getTaskState() == FAILED;
+    }
+    
+    private void releaseHandler(TaskId taskId, long latency, boolean failed) {
+        bulkheads.release(taskId);
+        handlers.release(latency, failed);
+    }
+    
+    @Override
+    protected void addStatusDetails(EventLoopStatus.Builder status) {
+        status.withHandlerLimit(handlers.getLimit())
+              .withHandlersInFlight(handlers.getInFlight())
+              .withAdaptiveHandlerLimit(handlers.isAdaptive())
+              .withQueueDepth(scheduler.countExecutableTasks());
+        if(shards.isEnabled()) {
+            status.withNode(node)
+                  .withOwnedShards(shards.getOwnedShards());
+        }
+    }
+    
+    /**
+     * Wakes up the event loop when tasks have been marked eligible for execution.
+     * The polling with exponential backoff remains in place as fallback for tasks 
+     * released by other nodes.
+     * @param event the tasks ready event
+     */
+    protected void onTasksReady(@Observes(during=AFTER_SUCCESS) TasksReadyEvent event) {
+        if(pause != null) {
+            pause.wakeup();
+        }
+    }
 
 }
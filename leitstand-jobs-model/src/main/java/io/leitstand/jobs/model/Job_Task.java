@@ -36,6 +36,7 @@ import static java.util.Collections.unmodifiableList;
 import static java.util.stream.Collectors.toList;
 import static javax.persistence.CascadeType.ALL;
 import static javax.persistence.EnumType.STRING;
+import static javax.persistence.TemporalType.TIMESTAMP;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -57,6 +58,8 @@ import javax.persistence.ManyToOne;
 import javax.persistence.NamedQuery;
 import javax.persistence.OneToMany;
 import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.Transient;
 
 import io.leitstand.commons.jpa.BooleanConverter;
 import io.leitstand.commons.jpa.SerializableJsonObjectConverter;
@@ -85,15 +88,22 @@ import io.leitstand.security.auth.UserName;
 @Table(schema="job", name="job_task")
 @NamedQuery(name="Job_Task.findByTaskId", 
 			query="SELECT t FROM Job_Task t WHERE t.taskId=:id")
+@NamedQuery(name="Job_Task.findByTaskIds", 
+			query="SELECT t FROM Job_Task t JOIN FETCH t.job WHERE t.taskId IN :ids")
 @NamedQuery(name="Job_Task.setTasksWaitingForExecution", 
 			query="UPDATE Job_Task t "+
 				  "SET t.taskState=io.leitstand.jobs.service.State.WAITING "+
 				  "WHERE t.job=:job")
-@NamedQuery(name="Job_Task.markExpiredTasks",
+@NamedQuery(name="Job_Task.decrementPendingPredecessors",
 			query="UPDATE Job_Task t "+
-				  "SET t.taskState=io.leitstand.jobs.service.State.TIMEOUT "+
-				  "WHERE t.taskState=io.leitstand.jobs.service.State.ACTIVE "+
-				  "AND t.dateModified < :expired")
+				  "SET t.pendingPredecessors = t.pendingPredecessors - 1 "+
+				  "WHERE t IN (SELECT tr.to FROM Job_Task_Transition tr WHERE tr.from=:task)")
+@NamedQuery(name="Job_Task.markSuccessorsReady",
+			query="UPDATE Job_Task t "+
+				  "SET t.taskState=io.leitstand.jobs.service.State.READY "+
+				  "WHERE t.taskState=io.leitstand.jobs.service.State.WAITING "+
+				  "AND t.pendingPredecessors <= 0 "+
+				  "AND t IN (SELECT tr.to FROM Job_Task_Transition tr WHERE tr.from=:task)")
 public class Job_Task extends AbstractEntity{
 
 	private static final long serialVersionUID = 1L;
@@ -104,17 +114,47 @@ public class Job_Task extends AbstractEntity{
 				       .getSingleResult();
 	}
 	
-	public static Update markExpiredTasks(Date expiryDate){
-		return em -> em.createNamedQuery("Job_Task.markExpiredTasks",Job_Task.class)
-					   .setParameter("expired",expiryDate)
-					   .executeUpdate();
+	/**
+	 * Loads the given tasks along with their jobs and journals.
+	 * @param ids the task IDs
+	 * @return the tasks.
+	 */
+	public static Query<List<Job_Task>> findTasksByIds(Collection<TaskId> ids) {
+		return em -> em.createNamedQuery("Job_Task.findByTaskIds", Job_Task.class)
+					   .setParameter("ids", ids)
+					   .setHint("eclipselink.batch", "t.messages")
+					   .setHint("eclipselink.batch.type", "IN")
+					   .getResultList();
 	}
-
+	
 	public static Update setTaskStateToWaitingForExecution(Job job) {
 		return em -> em.createNamedQuery("Job_Task.setTasksWaitingForExecution")
 					   .setParameter("job", job)
 					   .executeUpdate();
 	}
+	
+	/**
+	 * Releases the successors of a completed task.
+	 * Decrements the pending predecessors counter of all successors and 
+	 * marks all waiting successors without pending predecessors eligible for execution, 
+	 * provided that the job is running. 
+	 * Successors of a suspended job are released by the job scheduler when the job gets resumed.
+	 * @param task the completed task
+	 * @return the number of successors marked eligible for execution
+	 */
+	public static Update releaseSuccessors(Job_Task task) {
+		return em -> {
+			int successors = em.createNamedQuery("Job_Task.decrementPendingPredecessors")
+							   .setParameter("task", task)
+							   .executeUpdate();
+			if(successors == 0 || !task.getJob().isRunning()) {
+				return 0;
+			}
+			return em.createNamedQuery("Job_Task.markSuccessorsReady")
+					 .setParameter("task", task)
+					 .executeUpdate();
+		};
+	}
 
 	// A task will be scheduled only if the predecessor is completed and all
 	// other tasks with a higher priority are completed as well
@@ -163,6 +203,31 @@ public class Job_Task extends AbstractEntity{
 	@OneToMany(mappedBy="to", cascade=ALL, orphanRemoval=true)
 	private List<Job_Task_Transition> predecessors;
 	
+	// Number of predecessors that are not completed yet.
+	// The task is eligible for execution when all predecessors are completed.
+	@Column(name="pending_predecessors")
+	private int pendingPredecessors;
+	
+	// Expiry date of an active task. 
+	// The task times out if its outcome has not been reported until then.
+	@Column(name="tsexpire")
+	@Temporal(TIMESTAMP)
+	private Date dateExpiry;
+	
+	// Number of failed attempts to execute this task.
+	@Column(name="attempts")
+	private int attempts;
+	
+	// Earliest date to retry a failed task.
+	@Column(name="tsnotbefore")
+	@Temporal(TIMESTAMP)
+	private Date dateNotBefore;
+	
+	// Successors ordered by task ID. 
+	// Computed on first access and discarded when a successor is added or removed.
+	@Transient
+	private List<Job_Task_Transition> orderedSuccessors;
+	
 	protected Job_Task(){
 		//JPA
 		this.successors = new LinkedList<>();
@@ -292,6 +357,65 @@ public class Job_Task extends AbstractEntity{
 	
 	public void setTaskState(State state) {
 		this.taskState = state;
+		if(state != ACTIVE) {
+			this.dateExpiry = null;
+		}
+	}
+	
+	/**
+	 * Returns the expiry date of this task.
+	 * @return the expiry date or <code>null</code> if the task is not active or never expires.
+	 */
+	public Date getDateExpiry() {
+		if(dateExpiry == null) {
+			return null;
+		}
+		return new Date(dateExpiry.getTime());
+	}
+	
+	/**
+	 * Returns the number of failed attempts to execute this task.
+	 * @return the number of failed attempts.
+	 */
+	public int getAttempts() {
+		return attempts;
+	}
+	
+	/**
+	 * Returns the earliest date to retry this task.
+	 * @return the earliest retry date or <code>null</code> if the task has not been retried.
+	 */
+	public Date getDateNotBefore() {
+		if(dateNotBefore == null) {
+			return null;
+		}
+		return new Date(dateNotBefore.getTime());
+	}
+	
+	/**
+	 * Records a failed attempt and makes this task eligible for execution again at the given date.
+	 * @param notBefore the earliest date to retry this task
+	 */
+	public void retry(Date notBefore) {
+		this.attempts++;
+		this.dateNotBefore = new Date(notBefore.getTime());
+		setTaskState(READY);
+	}
+	
+	/**
+	 * Discards all failed attempts, for example when the task is resumed manually.
+	 */
+	public void resetAttempts() {
+		this.attempts = 0;
+		this.dateNotBefore = null;
+	}
+	
+	/**
+	 * Sets the expiry date of this active task.
+	 * @param dateExpiry the expiry date or <code>null</code> if the task never expires.
+	 */
+	public void setDateExpiry(Date dateExpiry) {
+		this.dateExpiry = dateExpiry != null ? new Date(dateExpiry.getTime()) : null;
 	}
 	
 	public TaskId getTaskId() {
@@ -340,6 +464,7 @@ public class Job_Task extends AbstractEntity{
 		transition = new Job_Task_Transition(this,task);
 		transition.setName(name);
 		successors.add(transition);
+		orderedSuccessors = null;
 		task.onAddPredecessor(this);
 	}
 
@@ -356,6 +481,7 @@ public class Job_Task extends AbstractEntity{
 		Job_Task_Transition transition = findTransitionToPredecessor(task);
 		if(transition == null){
 			predecessors.add(task.findTransitionToSuccessor(this));
+			pendingPredecessors++;
 		}
 	}
 	
@@ -363,7 +489,26 @@ public class Job_Task extends AbstractEntity{
 		Job_Task_Transition transition = findTransitionToPredecessor(task);
 		if(transition != null){
 			predecessors.remove(transition);
+			pendingPredecessors--;
+		}
+	}
+	
+	/**
+	 * Recomputes the number of pending predecessors from the current predecessor states.
+	 * Invoked when a task is reset to be executed again, e.g. when a job is resumed.
+	 */
+	public void resetPendingPredecessors() {
+		int pending = 0;
+		for(Job_Task_Transition transition : predecessors) {
+			if(!transition.getFrom().isSucceeded()) {
+				pending++;
+			}
 		}
+		this.pendingPredecessors = pending;
+	}
+	
+	public int getPendingPredecessors() {
+		return pendingPredecessors;
 	}
 	
 	public void removeSuccessor(Job_Task task){
@@ -371,6 +516,7 @@ public class Job_Task extends AbstractEntity{
 		if(transition != null){
 			task.onRemovePredecessor(this);
 			successors.remove(transition);
+			orderedSuccessors = null;
 		}
 	}
 	
@@ -419,9 +565,12 @@ public class Job_Task extends AbstractEntity{
 	}
 	
 	public List<Job_Task_Transition> getSuccessors() {
-	    List<Job_Task_Transition> orderedSuccessors = new LinkedList<>(successors);
-	    orderedSuccessors.sort((a,b) -> Long.compare(a.getTo().getId(),b.getTo().getId()));
-		return unmodifiableList(orderedSuccessors);
+	    if(orderedSuccessors == null) {
+	        List<Job_Task_Transition> ordered = new ArrayList<>(successors);
+	        ordered.sort((a,b) -> Long.compare(a.getTo().getId(),b.getTo().getId()));
+	        orderedSuccessors = unmodifiableList(ordered);
+	    }
+		return orderedSuccessors;
 	}
 
 	public List<Job_Task_Transition> getPredecessors() {
@@ -556,5 +705,17 @@ public class Job_Task extends AbstractEntity{
 		this.messages.add(message.build());
 	}
 
+	/**
+	 * Copies the changes a task processor made to a detached copy of this task.
+	 * The parameters are replaced by the parameters of the copy and the messages added to the copy are appended.
+	 * @param executed the detached copy passed to the task processor
+	 */
+	void copyProcessorChanges(Job_Task executed) {
+		this.parameter = executed.parameter;
+		if(executed.messages.size() > this.messages.size()) {
+			this.messages.addAll(executed.messages.subList(this.messages.size(), executed.messages.size()));
+		}
+	}
+
 	
 }
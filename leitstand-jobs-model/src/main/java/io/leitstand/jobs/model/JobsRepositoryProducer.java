@@ -30,6 +30,9 @@ public class JobsRepositoryProducer {
 	@PersistenceUnit(unitName="jobs")
 	private EntityManagerFactory emf;
 	
+	@PersistenceUnit(unitName="jobs-batch")
+	private EntityManagerFactory batchEmf;
+	
 	@Produces
 	@TransactionScoped
 	@Jobs
@@ -37,8 +40,19 @@ public class JobsRepositoryProducer {
 		return new Repository(emf.createEntityManager());
 	}
 	
+	@Produces
+	@TransactionScoped
+	@JobsBatch
+	public Repository createBatchRepository() {
+		return new Repository(batchEmf.createEntityManager());
+	}
+	
 	public void closeRepository(@Disposes @Jobs Repository repository) {
 		repository.close();
 	}
 	
+	public void closeBatchRepository(@Disposes @JobsBatch Repository repository) {
+		repository.close();
+	}
+	
 }
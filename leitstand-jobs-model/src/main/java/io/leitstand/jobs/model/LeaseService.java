@@ -0,0 +1,131 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.jobs.model;
+
+import static io.leitstand.commons.db.DatabaseService.prepare;
+import static java.lang.System.getProperty;
+import static java.lang.management.ManagementFactory.getRuntimeMXBean;
+
+import javax.inject.Inject;
+
+import io.leitstand.commons.db.DatabaseService;
+import io.leitstand.commons.model.Service;
+
+/**
+ * Manages the leases stored in the <code>job.job_scheduler_lease</code> table.
+ * <p>
+ * Leases are used to coordinate multiple job scheduler nodes. 
+ * A lease is owned by a single node until the node releases the lease or the lease expires.
+ */
+@Service
+public class LeaseService {
+    
+    static final String NODE_ID = "leitstand.jobs.node";
+    
+    /**
+     * Returns the ID of this node.
+     * The node ID can be configured by the <code>leitstand.jobs.node</code> system property
+     * and defaults to the JVM name.
+     * @return the ID of this node.
+     */
+    public static String nodeId() {
+        return getProperty(NODE_ID, getRuntimeMXBean().getName());
+    }
+
+    @Inject
+    @Jobs
+    private DatabaseService db;
+    
+    /**
+     * Acquires or renews the given lease.
+     * The lease is granted if no lease exists, the existing lease has expired or the node already owns the lease.
+     * @param name the lease name
+     * @param node the node ID
+     * @param leaseSeconds the lease duration in seconds
+     * @return <code>true</code> if the node owns the lease, <code>false</code> otherwise.
+     */
+    public boolean acquireLease(String name, String node, long leaseSeconds) {
+        String sql = "INSERT INTO job.job_scheduler_lease AS l (name, owner, tsexpire) "+
+                     "VALUES (?, ?, NOW() + ? * INTERVAL '1 second') "+
+                     "ON CONFLICT (name) DO UPDATE "+
+                     "SET owner = EXCLUDED.owner, tsexpire = EXCLUDED.tsexpire "+
+                     "WHERE l.owner = EXCLUDED.owner "+
+                     "OR l.tsexpire < NOW()";
+        return db.executeUpdate(prepare(sql, name, node, leaseSeconds)) > 0;
+    }
+    
+    /**
+     * Releases the given lease if owned by the given node.
+     * @param name the lease name
+     * @param node the node ID
+     */
+    public void releaseLease(String name, String node) {
+        String sql = "DELETE FROM job.job_scheduler_lease "+
+                     "WHERE name = ? "+
+                     "AND owner = ?";
+        db.executeUpdate(prepare(sql, name, node));
+    }
+    
+    /**
+     * Raises the given signal to notify the owner of the corresponding lease.
+     * A signal is stored as an expired lease owned by the signalling node.
+     * Raising a signal that has not been consumed yet has no further effect.
+     * @param name the signal name
+     * @param node the ID of the signalling node
+     */
+    public void raiseSignal(String name, String node) {
+        String sql = "INSERT INTO job.job_scheduler_lease (name, owner, tsexpire) "+
+                     "VALUES (?, ?, NOW()) "+
+                     "ON CONFLICT (name) DO NOTHING";
+        db.executeUpdate(prepare(sql, name, node));
+    }
+    
+    /**
+     * Consumes the given signal.
+     * The signal is looked up by a read-only query first, 
+     * so that polling for a signal that has not been raised does not run a <code>DELETE</code> statement.
+     * @param name the signal name
+     * @return <code>true</code> if the signal has been raised since it has been consumed last, <code>false</code> otherwise.
+     */
+    public boolean consumeSignal(String name) {
+        String sql = "SELECT EXISTS (SELECT 1 "+
+                                    "FROM job.job_scheduler_lease "+
+                                    "WHERE name = ?)";
+        boolean raised = db.getSingleResult(prepare(sql, name), 
+                                            rs -> rs.getBoolean(1));
+        if(!raised) {
+            return false;
+        }
+        sql = "DELETE FROM job.job_scheduler_lease "+
+              "WHERE name = ?";
+        return db.executeUpdate(prepare(sql, name)) > 0;
+    }
+    
+    /**
+     * Returns the number of unexpired leases whose name starts with the given prefix.
+     * @param prefix the lease name prefix
+     * @return the number of unexpired leases.
+     */
+    public int countLeases(String prefix) {
+        String sql = "SELECT count(*) "+
+                     "FROM job.job_scheduler_lease "+
+                     "WHERE name LIKE ? "+
+                     "AND tsexpire >= NOW()";
+        return db.getSingleResult(prepare(sql, prefix+"%"), 
+                                  rs -> rs.getInt(1));
+    }
+    
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.jobs.model;
+
+import static java.lang.Boolean.getBoolean;
+import static java.lang.String.format;
+import static java.util.logging.Logger.getLogger;
+
+import java.util.List;
+import java.util.logging.Logger;
+
+import javax.enterprise.context.ApplicationScoped;
+
+/**
+ * Default {@link JobEventPublisher} that writes the job events to the <code>io.leitstand.jobs.events</code> logger.
+ * <p>
+ * The publisher is disabled by default and is enabled by setting the <code>leitstand.jobs.events.log</code> system property to <code>true</code>.
+ * It allows forwarding the job events by a log shipper until a message queue publisher is deployed.
+ */
+@ApplicationScoped
+public class LoggingJobEventPublisher implements JobEventPublisher {
+
+    private static final Logger EVENTS = getLogger("io.leitstand.jobs.events");
+    
+    static final String EVENTS_LOG = "leitstand.jobs.events.log";
+    
+    @Override
+    public boolean isEnabled() {
+        return getBoolean(EVENTS_LOG);
+    }
+    
+    @Override
+    public void publish(List<JobEvent> events) {
+        for(JobEvent event : events) {
+            EVENTS.info(() -> describe(event));
+        }
+    }
+    
+    static String describe(JobEvent event) {
+        if(event instanceof TaskStateChangedEvent) {
+            TaskStateChangedEvent taskEvent = (TaskStateChangedEvent) event;
+            return format("job=%s task=%s task_name=%s task_state=%s", 
+                                 taskEvent.getJobId(),
+                                 taskEvent.getTaskId(),
+                                 taskEvent.getTaskName(),
+                                 taskEvent.getTaskState());
+        }
+        JobStateChangedEvent jobEvent = (JobStateChangedEvent) event;
+        return format("job=%s job_state=%s", 
+                             jobEvent.getJobId(),
+                             jobEvent.getJobState());
+    }
+    
+}
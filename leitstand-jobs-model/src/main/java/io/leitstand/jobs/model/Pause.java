@@ -1,5 +1,6 @@
 package io.leitstand.jobs.model;
 
+import static java.lang.Math.max;
 import static java.lang.Math.min;
 
 import java.util.concurrent.TimeUnit;
@@ -8,20 +9,50 @@ public class Pause {
     
     private final long maxWaitTimeMillis;
     private long waitTimeMillis;
+    private boolean signalled;
 
     public Pause(long max, TimeUnit unit) {
-        this.waitTimeMillis = 1000;
         this.maxWaitTimeMillis = unit.toMillis(max);
+        this.waitTimeMillis = min(1000, maxWaitTimeMillis);
     }
     
+    /**
+     * Sleeps until the current wait time has elapsed or the pause is interrupted by a wakeup signal.
+     * Doubles the wait time for the next sleep, limited by the configured maximum wait time.
+     * @throws InterruptedException if the sleeping thread gets interrupted.
+     */
     public void sleep() throws InterruptedException {
-        Thread.sleep(waitTimeMillis);
+        sleep(Long.MAX_VALUE);
+    }
+    
+    /**
+     * Sleeps until the current wait time or the given timeout has elapsed, whichever is shorter, 
+     * or the pause is interrupted by a wakeup signal.
+     * Doubles the wait time for the next sleep, limited by the configured maximum wait time.
+     * @param timeoutMillis the maximum time to sleep in milliseconds
+     * @throws InterruptedException if the sleeping thread gets interrupted.
+     */
+    public synchronized void sleep(long timeoutMillis) throws InterruptedException {
+        if(!signalled) {
+            wait(max(1, min(waitTimeMillis, timeoutMillis)));
+        }
+        signalled = false;
         waitTimeMillis = min(2*waitTimeMillis,maxWaitTimeMillis);
     }
     
-    public void reset() {
-        waitTimeMillis = 1000;
+    public synchronized void reset() {
+        waitTimeMillis = min(1000, maxWaitTimeMillis);
     }
     
+    /**
+     * Wakes up the sleeping thread immediately. 
+     * The next sleep returns immediately if no thread is currently sleeping, 
+     * so that a signal sent while the event loop is busy is not lost.
+     */
+    public synchronized void wakeup() {
+        signalled = true;
+        waitTimeMillis = min(1000, maxWaitTimeMillis);
+        notifyAll();
+    }
     
 }
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.jobs.model;
+
+import static java.lang.Math.max;
+import static java.util.Collections.unmodifiableSet;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.LinkedHashMap;
+
+import io.leitstand.jobs.service.TaskId;
+import io.leitstand.jobs.service.TaskType;
+
+/**
+ * Limits the number of concurrently executed tasks per task type.
+ * <p>
+ * A bulkhead isolates a task type from all other task types. 
+ * Slow tasks of a partitioned task type cannot occupy more task handlers than the partition limit,
+ * hence they cannot starve tasks of other task types.
+ * Task types without a declared partition share the remaining task handlers.
+ * The partitions are declared by the {@link TaskProcessors} along with the task processor registrations.
+ */
+public class TaskBulkheads {
+
+    /**
+     * Creates bulkheads for the given partitions.
+     * @param limits the maximum number of concurrently executed tasks per task type.
+     * @return the task bulkheads.
+     */
+    public static TaskBulkheads bulkheads(Map<TaskType,Integer> limits) {
+        return new TaskBulkheads(limits);
+    }
+    
+    /**
+     * Creates bulkheads without any partitions.
+     * @return the task bulkheads.
+     */
+    public static TaskBulkheads noBulkheads() {
+        return new TaskBulkheads(new HashMap<>());
+    }
+    
+    private final Map<TaskType,Integer> limits;
+    private final Map<TaskType,Integer> inFlight;
+    private final Map<TaskId,TaskType> tasks;
+    
+    protected TaskBulkheads(Map<TaskType,Integer> limits) {
+        this.limits = new LinkedHashMap<>(limits);
+        this.inFlight = new HashMap<>();
+        this.tasks = new HashMap<>();
+    }
+    
+    /**
+     * Returns all partitioned task types.
+     * @return all partitioned task types.
+     */
+    public Set<TaskType> getTaskTypes(){
+        return unmodifiableSet(limits.keySet());
+    }
+    
+    /**
+     * Returns the number of tasks of the given task type that can be executed immediately.
+     * @param taskType the task type
+     * @return the free capacity of the task type partition.
+     */
+    public synchronized int available(TaskType taskType) {
+        Integer limit = limits.get(taskType);
+        if(limit == null) {
+            return 0;
+        }
+        return max(0, limit - getInFlight(taskType));
+    }
+    
+    /**
+     * Records a claimed task of a partitioned task type.
+     * Tasks of task types without a partition are ignored.
+     * @param taskType the task type
+     * @param taskId the claimed task
+     */
+    public synchronized void acquire(TaskType taskType, TaskId taskId) {
+        if(!limits.containsKey(taskType)) {
+            return;
+        }
+        tasks.put(taskId, taskType);
+        inFlight.merge(taskType, 1, Integer::sum);
+    }
+
+    /**
+     * Releases the partition capacity occupied by the given task.
+     * Tasks of task types without a partition are ignored.
+     * @param taskId the executed task
+     */
+    public synchronized void release(TaskId taskId) {
+        TaskType taskType = tasks.remove(taskId);
+        if(taskType != null) {
+            inFlight.computeIfPresent(taskType, (type,count) -> count > 1 ? count-1 : null);
+        }
+    }
+    
+    /**
+     * Returns the number of tasks of the given type being executed.
+     * @param taskType the task type
+     * @return the number of tasks of the given type being executed.
+     */
+    public synchronized int getInFlight(TaskType taskType) {
+        return inFlight.getOrDefault(taskType, 0);
+    }
+    
+}
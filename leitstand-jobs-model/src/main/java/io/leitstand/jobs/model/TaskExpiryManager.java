@@ -15,23 +15,123 @@
  */
 package io.leitstand.jobs.model;
 
-import static io.leitstand.jobs.model.Job_Task.markExpiredTasks;
+import static io.leitstand.commons.messages.Message.Severity.ERROR;
+import static io.leitstand.commons.db.DatabaseService.prepare;
+import static io.leitstand.jobs.model.Job_Task.findTasksByIds;
+import static io.leitstand.jobs.model.TaskStateChangedEvent.taskStateChanged;
+import static io.leitstand.jobs.service.JobTaskMessage.newJobTaskMessage;
+import static io.leitstand.jobs.service.ReasonCode.JOB0301E_TASK_TIMEOUT;
+import static io.leitstand.jobs.service.State.TIMEOUT;
+import static io.leitstand.jobs.service.TaskId.taskId;
+import static java.lang.String.format;
+import static java.util.logging.Logger.getLogger;
 
+import java.sql.Timestamp;
 import java.util.Date;
+import java.util.List;
+import java.util.logging.Logger;
 
+import javax.enterprise.event.Event;
 import javax.inject.Inject;
 
+import io.leitstand.commons.db.DatabaseService;
 import io.leitstand.commons.model.Repository;
 import io.leitstand.commons.model.Service;
+import io.leitstand.jobs.service.TaskId;
 
+/**
+ * Times out active tasks whose outcome has not been reported in time.
+ * <p>
+ * The task scheduler sets the expiry date of a task when it claims the task for execution.
+ * The expiry date is stored in the <code>tsexpire</code> column, which is covered by the partial 
+ * <code>job_task_expiry_ix</code> index on active tasks.
+ * The job event loop looks up the expired tasks through this index periodically. 
+ * A single statement moves the expired tasks, which are still active and not locked by another transaction, 
+ * to the <code>TIMEOUT</code> state. 
+ * Hence, a task is timed out only once and a task outcome persisted concurrently is not overwritten.
+ * Next, the timeout is recorded in the task journal of each timed out task,
+ * unless the retry policy of the task schedules another attempt.
+ */
 @Service
 public class TaskExpiryManager {
 	
+	private static final Logger LOG = getLogger(TaskExpiryManager.class.getName());
+	
+	static final int MAX_EXPIRED_TASKS = 100;
+	
+	@Inject
+	@Jobs
+	private DatabaseService db;
+	
 	@Inject
 	@Jobs
 	private Repository repository;
 	
-	public void taskTimedout(Date expired) {
-		repository.execute(markExpiredTasks(expired));
+	@Inject
+	private TaskProcessorDiscoveryService processors;
+	
+	@Inject
+	private Event<JobEvent> jobEvents;
+	
+	protected TaskExpiryManager() {
+		// CDI
+	}
+	
+	TaskExpiryManager(DatabaseService db,
+	                  Repository repository, 
+	                  TaskProcessorDiscoveryService processors,
+	                  Event<JobEvent> jobEvents){
+		this.db = db;
+		this.repository = repository;
+		this.processors = processors;
+		this.jobEvents = jobEvents;
+	}
+	
+	/**
+	 * Times out all active tasks that expired before the given date.
+	 * No more than {@value #MAX_EXPIRED_TASKS} tasks are timed out per call.
+	 * @param expiryDate the expiry date
+	 * @return the number of timed out tasks.
+	 */
+	public int taskTimedout(Date expiryDate) {
+		String sql = "UPDATE job.job_task "+
+		             "SET state='TIMEOUT' "+
+		             "WHERE id IN ("+
+		               "SELECT id "+
+		               "FROM job.job_task "+
+		               "WHERE state='ACTIVE' "+
+		               "AND tsexpire < ? "+
+		               "ORDER BY tsexpire "+
+		               "LIMIT ? "+
+		               "FOR UPDATE SKIP LOCKED"+
+		             ") "+
+		             "AND state='ACTIVE' "+
+		             "RETURNING uuid";
+		List<TaskId> expired = db.executeQuery(prepare(sql, new Timestamp(expiryDate.getTime()), MAX_EXPIRED_TASKS), 
+		                                       rs -> taskId(rs.getString(1)));
+		if(expired.isEmpty()) {
+		    return 0;
+		}
+		
+		List<Job_Task> tasks = repository.execute(findTasksByIds(expired));
+		for(Job_Task task : tasks) {
+			String message = JOB0301E_TASK_TIMEOUT.getMessage(task.getJobId(),
+			                                                  task.getJobName(),
+			                                                  task.getTaskId(),
+			                                                  task.getTaskName(),
+			                                                  task.getDateExpiry());
+			task.addMessage(newJobTaskMessage()
+			                .withSeverity(ERROR)
+			                .withReason(JOB0301E_TASK_TIMEOUT)
+			                .withMessage(message));
+			if(!processors.getRetryPolicy(task).scheduleRetry(db, task, JOB0301E_TASK_TIMEOUT.getReasonCode())) {
+			    task.setTaskState(TIMEOUT);
+			}
+			jobEvents.fire(taskStateChanged(task));
+			LOG.info(() -> format("%s: %s", 
+			                      JOB0301E_TASK_TIMEOUT.getReasonCode(), 
+			                      message));
+		}
+		return tasks.size();
 	}
 }
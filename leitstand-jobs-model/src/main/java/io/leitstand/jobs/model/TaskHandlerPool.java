@@ -0,0 +1,147 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.jobs.model;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/**
+ * Limits the number of tasks being executed concurrently.
+ * <p>
+ * A fixed pool has a static limit. 
+ * An adaptive pool adjusts the limit by an additive-increase/multiplicative-decrease (AIMD) algorithm:
+ * The limit grows by one handler per limit-sized window of successful task executions 
+ * within the latency threshold and shrinks by 10% when a task execution fails or exceeds the latency threshold.
+ * The limit shrinks at most once per window of the task executions that were in flight when the limit was last decreased,
+ * because these executions were started under the previous limit and their failures do not reflect the decreased limit.
+ */
+public class TaskHandlerPool {
+    
+    private static final double BACKOFF_RATIO = 0.9;
+
+    /**
+     * Creates a pool with a fixed limit.
+     * @param limit the maximum number of concurrent task executions.
+     * @return a fixed-size task handler pool.
+     */
+    public static TaskHandlerPool fixedPool(int limit) {
+        return new TaskHandlerPool(false, limit, limit, limit, 0);
+    }
+    
+    /**
+     * Creates a pool with an adaptive limit.
+     * @param initialLimit the initial limit
+     * @param minLimit the minimum limit
+     * @param maxLimit the maximum limit
+     * @param latencyThresholdMillis the maximum task execution latency that is considered healthy.
+     * @return an adaptive task handler pool.
+     */
+    public static TaskHandlerPool adaptivePool(int initialLimit, 
+                                               int minLimit, 
+                                               int maxLimit, 
+                                               long latencyThresholdMillis) {
+        return new TaskHandlerPool(true, initialLimit, minLimit, maxLimit, latencyThresholdMillis);
+    }
+    
+    private final boolean adaptive;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdMillis;
+    private double limit;
+    private int inFlight;
+    private int decreaseWindow;
+    
+    protected TaskHandlerPool(boolean adaptive,
+                              int initialLimit, 
+                              int minLimit, 
+                              int maxLimit, 
+                              long latencyThresholdMillis) {
+        this.adaptive = adaptive;
+        this.minLimit = max(1, minLimit);
+        this.maxLimit = max(this.minLimit, maxLimit);
+        this.limit = min(this.maxLimit, max(this.minLimit, initialLimit));
+        this.latencyThresholdMillis = latencyThresholdMillis;
+    }
+    
+    /**
+     * Returns whether this pool adapts its limit to the observed task execution latency and error rate.
+     * @return <code>true</code> if this pool is adaptive, <code>false</code> otherwise.
+     */
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+    
+    /**
+     * Returns the number of available task handlers.
+     * @return the number of available task handlers.
+     */
+    public synchronized int available() {
+        return max(0, getLimit() - inFlight);
+    }
+    
+    /**
+     * Occupies a task handler.
+     */
+    public synchronized void acquire() {
+        inFlight++;
+    }
+    
+    /**
+     * Releases a task handler and adapts the limit of an adaptive pool.
+     * @param latencyMillis the task execution latency in milliseconds.
+     * @param failed <code>true</code> if the task execution failed.
+     */
+    public synchronized void release(long latencyMillis, boolean failed) {
+        inFlight = max(0, inFlight-1);
+        if(!adaptive) {
+            return;
+        }
+        boolean decreased = decreaseWindow > 0;
+        if(decreased) {
+            decreaseWindow--;
+        }
+        if(failed || latencyMillis > latencyThresholdMillis) {
+            if(!decreased) {
+                limit = max(minLimit, limit * BACKOFF_RATIO);
+                // Ignore the outcomes of the executions still in flight for the next decrease.
+                decreaseWindow = inFlight;
+            }
+            return;
+        }
+        // Only grow the limit if the pool is utilized.
+        // Otherwise the limit would grow without being verified by the observed latency.
+        if(2 * inFlight >= getLimit()) {
+            limit = min(maxLimit, limit + 1/limit);
+        }
+    }
+    
+    /**
+     * Returns the current limit.
+     * @return the current limit.
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+    
+    /**
+     * Returns the number of occupied task handlers.
+     * @return the number of occupied task handlers.
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+    
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.jobs.model;
+
+import static io.leitstand.jobs.model.Job_Task.findTaskById;
+import static java.lang.String.format;
+import static java.util.logging.Logger.getLogger;
+
+import java.util.logging.Logger;
+
+import javax.inject.Inject;
+
+import io.leitstand.commons.model.Repository;
+import io.leitstand.commons.model.Service;
+import io.leitstand.jobs.service.TaskId;
+
+/**
+ * Persists the outcome of tasks executed by an {@link AsyncTaskProcessor} 
+ * and of batched tasks whose outcomes could not be persisted by a single transaction.
+ */
+@Service
+public class TaskOutcomeService {
+    
+    private static final Logger LOG = getLogger(TaskOutcomeService.class.getName());
+
+    @Inject
+    @Jobs
+    private Repository repository;
+    
+    @Inject
+    private TaskProcessingService service;
+    
+    /**
+     * Persists the outcome of the given task.
+     * @param taskId the task ID
+     * @param result the task result or <code>null</code> if the task processor failed.
+     * @param error the task processor error or <code>null</code> if the task processor succeeded.
+     */
+    public void completeTask(TaskId taskId, TaskResult result, Throwable error) {
+        Job_Task task = repository.execute(findTaskById(taskId));
+        if(task == null) {
+            LOG.fine(() -> format("Discard outcome of removed task %s.",taskId));
+            return;
+        }
+        service.completeTask(task, result, error);
+    }
+    
+    /**
+     * Persists the outcome of the given task executed as detached entity.
+     * The changes the task processor made to the executed task are copied onto the persistent task.
+     * @param executed the task passed to the task processor
+     * @param result the task result or <code>null</code> if the task processor failed.
+     * @param error the task processor error or <code>null</code> if the task processor succeeded.
+     */
+    public void completeTask(Job_Task executed, TaskResult result, Throwable error) {
+        Job_Task task = repository.execute(findTaskById(executed.getTaskId()));
+        if(task == null) {
+            LOG.fine(() -> format("Discard outcome of removed task %s.",executed.getTaskId()));
+            return;
+        }
+        if(task.isActive()) {
+            task.copyProcessorChanges(executed);
+        }
+        service.completeTask(task, result, error);
+    }
+    
+}
@@ -16,20 +16,32 @@
 package io.leitstand.jobs.model;
 
 import static io.leitstand.commons.messages.Message.Severity.ERROR;
+import static io.leitstand.jobs.model.Job_Task.releaseSuccessors;
+import static io.leitstand.jobs.model.TaskResult.completed;
+import static io.leitstand.jobs.model.TaskStateChangedEvent.taskStateChanged;
 import static io.leitstand.jobs.service.JobTaskMessage.newJobTaskMessage;
 import static io.leitstand.jobs.service.ReasonCode.JOB0300E_TASK_PROCESSOR_CALL_FAILED;
 import static io.leitstand.jobs.service.State.COMPLETED;
 import static io.leitstand.jobs.service.State.CONFIRM;
 import static io.leitstand.jobs.service.State.FAILED;
+import static io.leitstand.jobs.service.State.READY;
 import static java.lang.String.format;
+import static java.util.concurrent.CompletableFuture.completedFuture;
 import static java.util.logging.Level.FINE;
 import static java.util.logging.Logger.getLogger;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import java.util.logging.Logger;
 
 import javax.enterprise.context.Dependent;
+import javax.enterprise.event.Event;
 import javax.inject.Inject;
 
+import io.leitstand.commons.db.DatabaseService;
+import io.leitstand.commons.model.Repository;
+import io.leitstand.jobs.service.JobTaskMessage;
 import io.leitstand.jobs.service.State;
 
 @Dependent
@@ -38,14 +50,37 @@ public class TaskProcessingService  {
     private static final Logger LOG = getLogger(TaskProcessingService.class.getName());
     
 	private TaskProcessorDiscoveryService processors;
+	
+	private Repository repository;
+	
+	private DatabaseService db;
+	
+	private Event<TasksReadyEvent> tasksReady;
+	
+	private Event<JobEvent> jobEvents;
 
 	
 	@Inject
-	public TaskProcessingService(TaskProcessorDiscoveryService processors) {
+	public TaskProcessingService(TaskProcessorDiscoveryService processors,
+	                             @Jobs Repository repository,
+	                             @Jobs DatabaseService db,
+	                             Event<TasksReadyEvent> tasksReady,
+	                             Event<JobEvent> jobEvents) {
 		this.processors = processors;
+		this.repository = repository;
+		this.db = db;
+		this.tasksReady = tasksReady;
+		this.jobEvents = jobEvents;
 	}
 	
-	public void executeTask(Job_Task task){
+	/**
+	 * Executes the given task.
+	 * @param task the task to execute
+	 * @return the pending outcome of an {@link AsyncTaskProcessor} 
+	 *         or <code>null</code> if the task has been processed synchronously.
+	 */
+	public CompletionStage<TaskResult> executeTask(Job_Task task){
+		startTask(task);
 		// Load the task processor for the specified task...
 		TaskProcessor processor = processors.findElementTaskProcessor(task);
 
@@ -58,36 +93,15 @@ public class TaskProcessingService  {
                                   task.getJobId(), 
                                   task.getJobApplication()));
             try {
-				TaskResult result = processor.execute(task);
-				task.setTaskState(result.getTaskState());
-				if(task.isCanary() && result.getTaskState() == COMPLETED) {
-				    task.setTaskState(CONFIRM);
+                if(processor instanceof AsyncTaskProcessor) {
+                    // The task remains active until the task processor completes the returned stage.
+                    return ((AsyncTaskProcessor)processor).executeAsync(task);
+                }
+				if(applyResult(processor, task, processor.execute(task))) {
+				    releaseSuccessorsOf(task);
 				}
-				task.addMessages(result.getMessages());
-	            LOG.fine(() -> format("Task processor %s returned %s for %s task (%s) of %s job (%s) in %s." , 
-                        processor.getClass().getName(),
-                        result.getTaskState(),
-                        task.getTaskName(), 
-                        task.getTaskId(), 
-                        task.getJobName(), 
-                        task.getJobId(), 
-                        task.getJobApplication()));
             } catch (Exception e) {
-            	task.setTaskState(FAILED);
-            	String message =format("Task processor %s reported an unexpected error for %s task (%s) of %s job (%s) in %s: %s" , 
-                        processor.getClass().getName(),
-                        task.getTaskName(), 
-                        task.getTaskId(), 
-                        task.getJobName(), 
-                        task.getJobId(), 
-                        task.getJobApplication(),
-                        e.getMessage());
-            	LOG.info(() -> format("%s: %s",JOB0300E_TASK_PROCESSOR_CALL_FAILED.getReasonCode(),message));
-                LOG.log(FINE,message,e);
-            	task.addMessage(newJobTaskMessage()
-            					.withSeverity(ERROR)
-            					.withReason(JOB0300E_TASK_PROCESSOR_CALL_FAILED)
-            					.withMessage(message));
+                reportFailure(processor, task, e);
             }
 		
 		} else {
@@ -102,9 +116,215 @@ public class TaskProcessingService  {
                                   task.getJobName(), 
                                   task.getJobId(), 
                                   task.getJobApplication()));
-		    task.setTaskState(COMPLETED);
+		    setTaskState(task, COMPLETED);
 		}
-		
+		return null;
+	}
+	
+	/**
+	 * Records that the given task has been claimed for execution.
+	 * @param task the claimed task
+	 */
+	public void startTask(Job_Task task) {
+	    if(task.isActive()) {
+	        // The claim has set the expiry date of the task already.
+	        jobEvents.fire(taskStateChanged(task));
+	    }
+	}
+	
+	/**
+	 * Invokes the task processor of the given task without modifying the task.
+	 * The outcome is persisted by {@link #completeTask(Job_Task, TaskResult, Throwable)}.
+	 * A task without task processor is completed.
+	 * @param task the task to execute
+	 * @return the outcome of the task processor.
+	 */
+	public CompletionStage<TaskResult> invokeTaskProcessor(Job_Task task) {
+	    TaskProcessor processor = processors.findElementTaskProcessor(task);
+	    if(processor == null) {
+	        return completedFuture(completed());
+	    }
+	    try {
+	        if(processor instanceof AsyncTaskProcessor) {
+	            return ((AsyncTaskProcessor)processor).executeAsync(task);
+	        }
+	        return completedFuture(processor.execute(task));
+	    } catch (Exception e) {
+	        CompletableFuture<TaskResult> failure = new CompletableFuture<>();
+	        failure.completeExceptionally(e);
+	        return failure;
+	    }
+	}
+	
+	/**
+	 * Persists the outcome of a task processor.
+	 * The outcome is discarded if the task is not active anymore.
+	 * @param task the executed task
+	 * @param result the task result or <code>null</code> if the task processor failed.
+	 * @param error the task processor error or <code>null</code> if the task processor succeeded.
+	 */
+	public void completeTask(Job_Task task, TaskResult result, Throwable error) {
+	    if(applyOutcome(task, result, error)) {
+	        releaseSuccessorsOf(task);
+	    }
+	}
+	
+	/**
+	 * Applies the outcome of a task processor without releasing the successors of the task.
+	 * The outcome is discarded if the task is not active anymore.
+	 * @param task the executed task
+	 * @param result the task result or <code>null</code> if the task processor failed.
+	 * @param error the task processor error or <code>null</code> if the task processor succeeded.
+	 * @return <code>true</code> if the task has been completed and its successors must be released 
+	 *         by {@link #releaseSuccessorsOf(Job_Task, Repository)}, <code>false</code> otherwise.
+	 */
+	boolean applyOutcome(Job_Task task, TaskResult result, Throwable error) {
+	    if(!task.isActive()) {
+	        LOG.fine(() -> format("Discard outcome of %s task (%s) of %s job (%s) in %s because the task is in %s state.",
+	                              task.getTaskName(),
+	                              task.getTaskId(),
+	                              task.getJobName(),
+	                              task.getJobId(),
+	                              task.getJobApplication(),
+	                              task.getTaskState()));
+	        return false;
+	    }
+	    TaskProcessor processor = processors.findElementTaskProcessor(task);
+	    if(processor == null) {
+	        // Fork or join task
+	        return updateTaskState(task, COMPLETED);
+	    }
+	    if(error instanceof CompletionException && error.getCause() != null) {
+	        reportFailure(processor, task, error.getCause());
+	        return false;
+	    }
+	    if(error != null) {
+	        reportFailure(processor, task, error);
+	        return false;
+	    }
+	    return applyResult(processor, task, result);
+	}
+	
+	// Returns true if the task has been completed and its successors must be released.
+	private boolean applyResult(TaskProcessor processor, Job_Task task, TaskResult result) {
+		task.addMessages(result.getMessages());
+		boolean completed = false;
+		if(task.isCanary() && result.getTaskState() == COMPLETED) {
+		    changeTaskState(task, CONFIRM);
+		} else if(result.getTaskState() != FAILED || !retry(task, failureReason(result))) {
+		    completed = updateTaskState(task, result.getTaskState());
+		}
+        LOG.fine(() -> format("Task processor %s returned %s for %s task (%s) of %s job (%s) in %s." , 
+                              processor.getClass().getName(),
+                              result.getTaskState(),
+                              task.getTaskName(), 
+                              task.getTaskId(), 
+                              task.getJobName(), 
+                              task.getJobId(), 
+                              task.getJobApplication()));
+        return completed;
+	}
+	
+	// Returns the reason code of the latest error reported by the task processor or null if no error has been reported.
+	private static String failureReason(TaskResult result) {
+	    String reason = null;
+	    for(JobTaskMessage message : result.getMessages()) {
+	        if(message.getSeverity() == ERROR) {
+	            reason = message.getReason();
+	        }
+	    }
+	    return reason;
+	}
+	
+	private void reportFailure(TaskProcessor processor, Job_Task task, Throwable e) {
+    	String message =format("Task processor %s reported an unexpected error for %s task (%s) of %s job (%s) in %s: %s" , 
+                               processor.getClass().getName(),
+                               task.getTaskName(), 
+                               task.getTaskId(), 
+                               task.getJobName(), 
+                               task.getJobId(), 
+                               task.getJobApplication(),
+                               e.getMessage());
+    	LOG.info(() -> format("%s: %s",JOB0300E_TASK_PROCESSOR_CALL_FAILED.getReasonCode(),message));
+        LOG.log(FINE,message,e);
+    	task.addMessage(newJobTaskMessage()
+    					.withSeverity(ERROR)
+    					.withReason(JOB0300E_TASK_PROCESSOR_CALL_FAILED)
+    					.withMessage(message));
+    	if(!retry(task, JOB0300E_TASK_PROCESSOR_CALL_FAILED.getReasonCode())) {
+    	    changeTaskState(task, FAILED);
+    	}
+	}
+	
+	/**
+	 * Schedules the next attempt of a failed task if permitted by the retry policy of the task.
+	 * @param task the failed task
+	 * @param reasonCode the reason code of the failure or <code>null</code> if the reason is unknown
+	 * @return <code>true</code> if a retry has been scheduled, <code>false</code> if the task has failed.
+	 */
+	private boolean retry(Job_Task task, String reasonCode) {
+	    if(processors.getRetryPolicy(task).scheduleRetry(db, task, reasonCode)) {
+	        LOG.fine(() -> format("Retry %s task (%s) of %s job (%s) not before %s. Failed attempts: %d",
+	                              task.getTaskName(),
+	                              task.getTaskId(),
+	                              task.getJobName(),
+	                              task.getJobId(),
+	                              task.getDateNotBefore(),
+	                              task.getAttempts()));
+	        jobEvents.fire(taskStateChanged(task));
+	        return true;
+	    }
+	    return false;
+	}
+	
+	private void setTaskState(Job_Task task, State state) {
+	    if(updateTaskState(task, state)) {
+	        releaseSuccessorsOf(task);
+	    }
+	}
+	
+	// Returns true if the task has been completed and its successors must be released.
+	private boolean updateTaskState(Job_Task task, State state) {
+	    boolean completed = state == COMPLETED && !task.isSucceeded();
+	    changeTaskState(task, state);
+	    return completed;
+	}
+	
+	private void changeTaskState(Job_Task task, State state) {
+	    State previous = task.getTaskState();
+	    task.setTaskState(state);
+	    if(previous != state) {
+	        jobEvents.fire(taskStateChanged(task));
+	    }
+	}
+	
+	private void releaseSuccessorsOf(Job_Task task) {
+	    releaseSuccessorsOf(task, repository);
+	}
+	
+	/**
+	 * Releases the successors of the given completed task by the given repository.
+	 * @param task the completed task
+	 * @param repository the repository that has loaded the task
+	 */
+	void releaseSuccessorsOf(Job_Task task, Repository repository) {
+	    // Release all successors waiting for this task to complete
+	    // and wake up the task event loop once the transaction is committed.
+	    int tasks = repository.execute(releaseSuccessors(task));
+	    if(tasks > 0) {
+	        tasksReady.fire(new TasksReadyEvent(tasks));
+	        // The successors are released by a bulk update.
+	        // A waiting successor was released if all its predecessors are completed.
+	        for(Job_Task_Transition transition : task.getSuccessors()) {
+	            Job_Task successor = transition.getTo();
+	            if(successor.isWaiting() && successor.isEligibleForExecution()) {
+	                jobEvents.fire(new TaskStateChangedEvent(successor.getJobId(),
+	                                                         successor.getTaskId(),
+	                                                         successor.getTaskName(),
+	                                                         READY));
+	            }
+	        }
+	    }
 	}
 	
 	public void updateTask(Job_Task task, State state) {
@@ -115,19 +335,32 @@ public class TaskProcessingService  {
         Job job = task.getJob();
         
         if(task.isCanary() && task.isActive() && state == COMPLETED) {
-            task.setTaskState(CONFIRM);
-            job.setJobState(CONFIRM);
+            changeTaskState(task, CONFIRM);
+            changeJobState(job, CONFIRM);
             return;
         }
         
         if(state == COMPLETED && task.isSuspended()) {
             // Change job from CONFIRM to ACTIVE state
             // if no other tasks are in CONFIRM state
-            task.setTaskState(state);
+            changeTaskState(task, state);
+            State jobState = job.getJobState();
             job.confirmed();
-        } else {
-            task.setTaskState(state);
+            if(job.getJobState() != jobState) {
+                jobEvents.fire(new JobStateChangedEvent(job.getJobId(), job.getJobState()));
+            }
+            releaseSuccessorsOf(task);
+        } else if(state != FAILED || !retry(task, null)) {
+            setTaskState(task, state);
         }
 	}
+	
+	private void changeJobState(Job job, State state) {
+	    State previous = job.getJobState();
+	    job.setJobState(state);
+	    if(previous != state) {
+	        jobEvents.fire(new JobStateChangedEvent(job.getJobId(), state));
+	    }
+	}
 
 }
@@ -22,6 +22,13 @@ package io.leitstand.jobs.model;
  * By that, the job scheduler is fully extensible with respect to how to handle task.
  * An application must implement {@link ElementTaskProcessors} to expose all existing task processors.
  * </p>
+ * <p>
+ * A task processor reports the task state through the returned {@link TaskResult}.
+ * In addition, a task processor can add messages to the task and replace the task parameters.
+ * Tasks executed in a batch are passed to the task processor as detached entities.
+ * The scheduler copies the added messages and the parameters onto the task when it persists the task result.
+ * All other changes made to the task by a task processor are discarded.
+ * </p>
  */
 public interface TaskProcessor {
 	
@@ -15,41 +15,242 @@
  */
 package io.leitstand.jobs.model;
 
+import static io.leitstand.jobs.model.TaskRetryPolicy.NO_RETRY;
+import static io.leitstand.jobs.model.TaskTimeouts.taskTimeouts;
+import static java.lang.Long.getLong;
+import static java.lang.Math.max;
 import static java.lang.String.format;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static java.util.logging.Logger.getLogger;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.inject.Instance;
 import javax.inject.Inject;
 
+import io.leitstand.jobs.service.JobApplication;
+import io.leitstand.jobs.service.JobType;
+import io.leitstand.jobs.service.TaskType;
 
+/**
+ * Discovers the task processor of a task.
+ * <p>
+ * The task processor registries are read once and every resolved task processor is recorded in a dispatch table 
+ * keyed by job application, job type and task type. 
+ * Subsequent tasks of the same kind are dispatched with a single hash lookup.
+ * The dispatch table records the outcome of the registry scan, 
+ * which preserves the precedence of the registries as well as the job type and default task processor fallbacks.
+ * Tasks without a task processor are not recorded, so that a task processor registered later is discovered by the next lookup.
+ * The retry policies are resolved and recorded the same way.
+ * The task timeouts are read once as ordered rules, which are evaluated by the statement that claims a task.
+ * {@link #refresh()} discards the dispatch table when the task processor registrations have changed.
+ * It is triggered by a <code>DELETE</code> request to the <code>/jobs/_task_processors</code> resource.
+ */
 @ApplicationScoped
 public class TaskProcessorDiscoveryService {
     
     private static final Logger LOG = getLogger(TaskProcessorDiscoveryService.class.getName());
+    
+    static final String TASK_TIMEOUT_SECONDS = "leitstand.jobs.task.timeout_seconds";
 
-	@Inject
+    private static final class DispatchKey {
+        private final JobApplication jobApplication;
+        private final JobType jobType;
+        private final TaskType taskType;
+        
+        DispatchKey(JobApplication jobApplication, JobType jobType, TaskType taskType){
+            this.jobApplication = jobApplication;
+            this.jobType = jobType;
+            this.taskType = taskType;
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(jobApplication, jobType, taskType);
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if(o == this) {
+                return true;
+            }
+            if(o == null || o.getClass() != getClass()) {
+                return false;
+            }
+            DispatchKey key = (DispatchKey) o;
+            return Objects.equals(jobApplication, key.jobApplication) 
+                   && Objects.equals(jobType, key.jobType) 
+                   && Objects.equals(taskType, key.taskType);
+        }
+    }
+    
 	private Instance<TaskProcessors> processors;
+	private volatile List<TaskProcessors> registries;
+	private final Map<DispatchKey,TaskProcessor> dispatchTable = new ConcurrentHashMap<>();
+	private volatile TaskTimeouts timeouts;
+	private final Map<DispatchKey,TaskRetryPolicy> retryTable = new ConcurrentHashMap<>();
 	
+	protected TaskProcessorDiscoveryService() {
+	    // CDI
+	}
+	
+	@Inject
+	protected TaskProcessorDiscoveryService(Instance<TaskProcessors> processors) {
+	    this.processors = processors;
+	}
 
 	public TaskProcessor findElementTaskProcessor(Job_Task task) {
-		for(TaskProcessors tasks : processors) {
-			if(tasks.providesTaskProcessorsFor(task.getJobApplication(), 
-			                                   task.getJobType())) {
-				TaskProcessor processor = tasks.getTaskProcessor(task.getTaskType());
+	    DispatchKey key = new DispatchKey(task.getJobApplication(), 
+	                                      task.getJobType(), 
+	                                      task.getTaskType());
+	    TaskProcessor processor = dispatchTable.get(key);
+	    if(processor == null) {
+	        // Misses are not recorded to discover task processors registered later.
+	        processor = discoverTaskProcessor(key);
+	        if(processor != null) {
+	            dispatchTable.put(key, processor);
+	        }
+	    }
+	    return processor;
+	}
+	
+	private TaskProcessor discoverTaskProcessor(DispatchKey key) {
+		for(TaskProcessors tasks : getRegistries()) {
+			if(tasks.providesTaskProcessorsFor(key.jobApplication, 
+			                                   key.jobType)) {
+				TaskProcessor processor = tasks.getTaskProcessor(key.taskType);
 				if(processor != null) {
 				    LOG.fine(() -> format("Found %s task processor for %s task of %s job in %s",
 				                          processor.getClass().getName(),
-				                          task.getTaskType(),
-				                          task.getJobType(),
-				                          task.getJobApplication()));
+				                          key.taskType,
+				                          key.jobType,
+				                          key.jobApplication));
 				    return processor;
 				}
 			}
 		}
+		LOG.fine(() -> format("No task processor found for %s task of %s job in %s",
+		                      key.taskType,
+		                      key.jobType,
+		                      key.jobApplication));
 		return null;
 	}
 	
+	/**
+	 * Returns the task timeouts declared by all registries.
+	 * <p>
+	 * The timeout declared for the task type by the first registry providing task processors for the job applies.
+	 * Otherwise the default timeout of that registry applies. 
+	 * If no registry declares a timeout, the <code>leitstand.jobs.task.timeout_seconds</code> system property applies.
+	 * @return the task timeouts.
+	 */
+	public TaskTimeouts getTaskTimeouts() {
+	    TaskTimeouts snapshot = timeouts;
+	    if(snapshot == null) {
+	        snapshot = taskTimeouts(getRegistries(), 
+	                                SECONDS.toMillis(max(0L, getLong(TASK_TIMEOUT_SECONDS, 0L))));
+	        timeouts = snapshot;
+	    }
+	    return snapshot;
+	}
+	
+	/**
+	 * Returns the retry policy of the given task.
+	 * <p>
+	 * The retry policy declared for the task type by the first registry providing task processors for the job applies.
+	 * Otherwise the default retry policy of that registry applies.
+	 * @param task the task
+	 * @return the retry policy or {@link TaskRetryPolicy#NO_RETRY} if the task is never retried.
+	 */
+	public TaskRetryPolicy getRetryPolicy(Job_Task task) {
+	    DispatchKey key = new DispatchKey(task.getJobApplication(), 
+	                                      task.getJobType(), 
+	                                      task.getTaskType());
+	    return retryTable.computeIfAbsent(key, this::discoverRetryPolicy);
+	}
+	
+	private TaskRetryPolicy discoverRetryPolicy(DispatchKey key) {
+	    for(TaskProcessors tasks : getRegistries()) {
+	        if(tasks.providesTaskProcessorsFor(key.jobApplication, 
+	                                           key.jobType)) {
+	            TaskRetryPolicy policy = tasks.getRetryPolicy(key.taskType);
+	            if(policy != null) {
+	                return policy;
+	            }
+	        }
+	    }
+	    return NO_RETRY;
+	}
+	
+	/**
+	 * Discards the dispatch table and reads the task processor registries again on the next task processor lookup.
+	 */
+	public void refresh() {
+	    registries = null;
+	    dispatchTable.clear();
+	    timeouts = null;
+	    retryTable.clear();
+	}
+	
+	private List<TaskProcessors> getRegistries(){
+	    List<TaskProcessors> snapshot = registries;
+	    if(snapshot == null) {
+	        snapshot = new ArrayList<>();
+	        for(TaskProcessors tasks : processors) {
+	            snapshot.add(tasks);
+	        }
+	        registries = snapshot;
+	    }
+	    return snapshot;
+	}
+	
+	/**
+	 * Returns the concurrency limits per task type declared by all task processor registries.
+	 * The lowest limit applies if a task type is limited by multiple registries.
+	 * @return the concurrency limits per task type.
+	 */
+	public Map<TaskType,Integer> getConcurrencyLimits(){
+	    Map<TaskType,Integer> limits = new HashMap<>();
+	    for(TaskProcessors tasks : getRegistries()) {
+	        tasks.getConcurrencyLimits()
+	             .forEach((type,limit) -> limits.merge(type, limit, Math::min));
+	    }
+	    return limits;
+	}
+	
+	/**
+	 * Returns the rate limits declared by all task processor registries.
+	 * The lowest rate applies if multiple registries limit the same task type.
+	 * @return the rate limits per task type.
+	 */
+	public Map<TaskType,TaskRateLimit> getRateLimits(){
+	    Map<TaskType,TaskRateLimit> limits = new HashMap<>();
+	    for(TaskProcessors tasks : getRegistries()) {
+	        tasks.getRateLimits()
+	             .forEach((type,limit) -> limits.merge(type, limit, TaskRateLimit::lower));
+	    }
+	    return limits;
+	}
+	
+	/**
+	 * Returns all task types declared as I/O-bound by any task processor registry.
+	 * @return the I/O-bound task types.
+	 */
+	public Set<TaskType> getIoBoundTaskTypes(){
+	    Set<TaskType> taskTypes = new HashSet<>();
+	    for(TaskProcessors tasks : getRegistries()) {
+	        taskTypes.addAll(tasks.getIoBoundTaskTypes());
+	    }
+	    return taskTypes;
+	}
+	
 }
@@ -17,9 +17,14 @@ package io.leitstand.jobs.model;
 
 import static io.leitstand.commons.model.ObjectUtil.optional;
 import static java.lang.String.format;
+import static java.util.Collections.unmodifiableMap;
+import static java.util.Collections.unmodifiableSet;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 import java.util.logging.Logger;
 
@@ -40,6 +45,13 @@ public class TaskProcessors {
 	private JobType jobType;
 	private TaskProcessor defaultProcessor;
 	private Map<TaskType,TaskProcessor> processors;
+	private Map<TaskType,Integer> concurrencyLimits;
+	private Map<TaskType,TaskRateLimit> rateLimits;
+	private Set<TaskType> ioBoundTaskTypes;
+	private Map<TaskType,Long> timeouts;
+	private Long defaultTimeout;
+	private Map<TaskType,TaskRetryPolicy> retryPolicies;
+	private TaskRetryPolicy defaultRetryPolicy;
 	
 	protected TaskProcessors() {
 		// CDI
@@ -48,6 +60,11 @@ public class TaskProcessors {
 	protected TaskProcessors(JobApplication jobApplication) {
 		this.jobApplication = jobApplication;
 		this.processors = new HashMap<>();
+		this.concurrencyLimits = new HashMap<>();
+		this.rateLimits = new HashMap<>();
+		this.ioBoundTaskTypes = new HashSet<>();
+		this.timeouts = new HashMap<>();
+		this.retryPolicies = new HashMap<>();
 	}
 	
 	public TaskProcessors jobType(JobType jobType) {
@@ -70,6 +87,114 @@ public class TaskProcessors {
 		return this;
 	}
 
+	/**
+	 * Declares a bulkhead for the given task type.
+	 * No more than the specified number of tasks of this type are executed concurrently,
+	 * which prevents slow tasks from occupying all task handlers.
+	 * @param taskType the task type
+	 * @param limit the maximum number of concurrently executed tasks of the given type.
+	 * @return this task processor registry.
+	 */
+	public TaskProcessors concurrencyLimit(TaskType taskType, int limit) {
+	    concurrencyLimits.put(taskType, limit);
+	    LOG.fine(() -> format("Limit concurrent execution of %s tasks to %d tasks",
+	                          taskType,
+	                          limit));
+	    return this;
+	}
+	
+	/**
+	 * Declares a rate limit for the given task type.
+	 * Tasks of this type are released for execution no faster than the given rate across all job scheduler nodes,
+	 * which protects shared infrastructure from being overloaded by large rollouts.
+	 * @param taskType the task type
+	 * @param limit the rate limit
+	 * @return this task processor registry.
+	 */
+	public TaskProcessors rateLimit(TaskType taskType, TaskRateLimit limit) {
+	    rateLimits.put(taskType, limit);
+	    LOG.fine(() -> format("Limit release of %s tasks to %s",
+	                          taskType,
+	                          limit));
+	    return this;
+	}
+	
+	/**
+	 * Declares the task processor of the given task type as I/O-bound.
+	 * I/O-bound task processors mostly wait for remote systems and 
+	 * are executed by the I/O task executor if configured.
+	 * @param taskType the task type
+	 * @return this task processor registry.
+	 */
+	public TaskProcessors ioBound(TaskType taskType) {
+	    ioBoundTaskTypes.add(taskType);
+	    LOG.fine(() -> format("Declare %s task processor as I/O-bound",
+	                          taskType));
+	    return this;
+	}
+	
+	/**
+	 * Declares the timeout of the given task type.
+	 * An active task of this type times out if its outcome has not been reported within the given time.
+	 * @param taskType the task type
+	 * @param timeout the timeout
+	 * @param unit the timeout unit
+	 * @return this task processor registry.
+	 */
+	public TaskProcessors timeout(TaskType taskType, long timeout, TimeUnit unit) {
+	    timeouts.put(taskType, unit.toMillis(timeout));
+	    LOG.fine(() -> format("Declare a timeout of %d %s for %s tasks",
+	                          timeout,
+	                          unit,
+	                          taskType));
+	    return this;
+	}
+	
+	/**
+	 * Declares the timeout of all task types without a task type specific timeout.
+	 * @param timeout the timeout
+	 * @param unit the timeout unit
+	 * @return this task processor registry.
+	 */
+	public TaskProcessors defaultTimeout(long timeout, TimeUnit unit) {
+	    this.defaultTimeout = unit.toMillis(timeout);
+	    LOG.fine(() -> format("Declare a default task timeout of %d %s for %s jobs in %s applications",
+	                          timeout,
+	                          unit,
+	                          optional(jobType, JobType::getValue, "*"),
+	                          jobApplication));
+	    return this;
+	}
+	
+	/**
+	 * Declares the retry policy of the given task type.
+	 * A failed or timed out task of this type is retried as declared by the policy.
+	 * @param taskType the task type
+	 * @param policy the retry policy
+	 * @return this task processor registry.
+	 */
+	public TaskProcessors retry(TaskType taskType, TaskRetryPolicy policy) {
+	    retryPolicies.put(taskType, policy);
+	    LOG.fine(() -> format("Retry failed %s tasks up to %d times",
+	                          taskType,
+	                          policy.getMaxAttempts()-1));
+	    return this;
+	}
+	
+	/**
+	 * Declares the retry policy of all task types without a task type specific retry policy.
+	 * @param policy the retry policy
+	 * @return this task processor registry.
+	 */
+	public TaskProcessors defaultRetry(TaskRetryPolicy policy) {
+	    this.defaultRetryPolicy = policy;
+	    LOG.fine(() -> format("Retry failed tasks of %s jobs in %s applications up to %d times",
+	                          optional(jobType, JobType::getValue, "*"),
+	                          jobApplication,
+	                          policy.getMaxAttempts()-1));
+	    return this;
+	}
+	
 	public TaskProcessors defaultProcessor(TaskProcessor taskProcessor) {
 		this.defaultProcessor = taskProcessor;
         LOG.fine(() -> format("Register %s task processor as default task processor for %s jobs in %s applications",
@@ -93,5 +218,87 @@ public class TaskProcessors {
 		}
 		return defaultProcessor;
 	}
+	
+	/**
+	 * Returns the declared concurrency limits per task type.
+	 * @return the declared concurrency limits per task type.
+	 */
+	public Map<TaskType,Integer> getConcurrencyLimits(){
+	    return unmodifiableMap(concurrencyLimits);
+	}
+	
+	/**
+	 * Returns the declared rate limits per task type.
+	 * @return the declared rate limits per task type.
+	 */
+	public Map<TaskType,TaskRateLimit> getRateLimits(){
+	    return unmodifiableMap(rateLimits);
+	}
+	
+	/**
+	 * Returns the task types with I/O-bound task processors.
+	 * @return the task types with I/O-bound task processors.
+	 */
+	public Set<TaskType> getIoBoundTaskTypes(){
+	    return unmodifiableSet(ioBoundTaskTypes);
+	}
+	
+	/**
+	 * Returns the job application of this registry.
+	 * @return the job application.
+	 */
+	public JobApplication getJobApplication() {
+	    return jobApplication;
+	}
+	
+	/**
+	 * Returns the job type of this registry.
+	 * @return the job type or <code>null</code> if this registry provides task processors for all job types.
+	 */
+	public JobType getJobType() {
+	    return jobType;
+	}
+	
+	/**
+	 * Returns the declared timeouts per task type.
+	 * @return the declared timeouts in milliseconds per task type.
+	 */
+	public Map<TaskType,Long> getTimeouts(){
+	    return unmodifiableMap(timeouts);
+	}
+	
+	/**
+	 * Returns the declared default timeout.
+	 * @return the default timeout in milliseconds or <code>null</code> if no default timeout has been declared.
+	 */
+	public Long getDefaultTimeout() {
+	    return defaultTimeout;
+	}
+	
+	/**
+	 * Returns the timeout of the given task type.
+	 * @param taskType the task type
+	 * @return the timeout in milliseconds or <code>null</code> if no timeout has been declared for the task type.
+	 */
+	public Long getTimeout(TaskType taskType) {
+	    Long timeout = timeouts.get(taskType);
+	    if(timeout != null) {
+	        return timeout;
+	    }
+	    return defaultTimeout;
+	}
+	
+	/**
+	 * Returns the retry policy of the given task type.
+	 * @param taskType the task type
+	 * @return the retry policy or <code>null</code> if no retry policy has been declared for the task type.
+	 */
+	public TaskRetryPolicy getRetryPolicy(TaskType taskType) {
+	    TaskRetryPolicy policy = retryPolicies.get(taskType);
+	    if(policy != null) {
+	        return policy;
+	    }
+	    return defaultRetryPolicy;
+	}
 
 }
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.jobs.model;
+
+import static java.lang.Math.max;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the rate at which tasks are released for execution.
+ * <p>
+ * A rate limit is a token bucket implemented by the <em>generic cell rate algorithm</em> (GCRA).
+ * Tasks are released at the emission interval, i.e. the period divided by the number of tasks per period.
+ * Up to <code>burst</code> tasks can be released at once if no task has been released for a while.
+ * The state of a bucket is the earliest date when the next task can be released. 
+ * Hence a single timestamp per bucket suffices to enforce the rate limit across all job scheduler nodes.
+ */
+public class TaskRateLimit {
+    
+    /**
+     * Creates a rate limit without bursts.
+     * @param tasks the number of tasks released per period
+     * @param period the period
+     * @param unit the period unit
+     * @return the task rate limit.
+     */
+    public static TaskRateLimit rateLimit(int tasks, long period, TimeUnit unit) {
+        return new TaskRateLimit(tasks, unit.toMillis(period), 1);
+    }
+    
+    private final int tasks;
+    private final long periodMillis;
+    private final int burst;
+    private final long intervalMillis;
+    private final long toleranceMillis;
+    
+    private TaskRateLimit(int tasks, long periodMillis, int burst) {
+        this.tasks = max(1, tasks);
+        this.periodMillis = max(1, periodMillis);
+        this.burst = max(1, burst);
+        this.intervalMillis = max(1, this.periodMillis / this.tasks);
+        this.toleranceMillis = (this.burst - 1) * intervalMillis;
+    }
+    
+    /**
+     * Returns a rate limit that releases up to the given number of tasks at once.
+     * @param burst the maximum burst size
+     * @return the task rate limit.
+     */
+    public TaskRateLimit withBurst(int burst) {
+        return new TaskRateLimit(tasks, periodMillis, burst);
+    }
+    
+    /**
+     * Returns the number of tasks released per period.
+     * @return the number of tasks released per period.
+     */
+    public int getTasks() {
+        return tasks;
+    }
+    
+    /**
+     * Returns the period in milliseconds.
+     * @return the period in milliseconds.
+     */
+    public long getPeriodMillis() {
+        return periodMillis;
+    }
+    
+    /**
+     * Returns the maximum number of tasks released at once.
+     * @return the maximum burst size.
+     */
+    public int getBurst() {
+        return burst;
+    }
+    
+    /**
+     * Returns the interval between two released tasks in milliseconds.
+     * @return the emission interval in milliseconds.
+     */
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+    
+    /**
+     * Returns how many milliseconds a task can be released ahead of its emission interval to form a burst.
+     * @return the burst tolerance in milliseconds.
+     */
+    public long getToleranceMillis() {
+        return toleranceMillis;
+    }
+    
+    /**
+     * Returns the release date of a bucket that has not released any task yet.
+     * A new bucket permits a full burst.
+     * @param now the current time in milliseconds
+     * @return the release date of a new bucket in milliseconds.
+     */
+    long newBucket(long now) {
+        return now - toleranceMillis;
+    }
+    
+    /**
+     * Returns the release date of a bucket after a task has been released.
+     * @param release the current release date of the bucket in milliseconds
+     * @param now the current time in milliseconds
+     * @return the next release date of the bucket in milliseconds.
+     */
+    long release(long release, long now) {
+        // The theoretical arrival time of the next task is the release date plus the burst tolerance.
+        long arrival = max(release + toleranceMillis, now) + intervalMillis;
+        return arrival - toleranceMillis;
+    }
+    
+    /**
+     * Returns the lower of this and the given rate limit.
+     * @param limit the rate limit to compare with
+     * @return the rate limit with the longer emission interval.
+     */
+    TaskRateLimit lower(TaskRateLimit limit) {
+        if(limit.intervalMillis > intervalMillis) {
+            return limit;
+        }
+        return this;
+    }
+    
+    @Override
+    public String toString() {
+        return tasks+"/"+periodMillis+"ms (burst "+burst+")";
+    }
+    
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.jobs.model;
+
+import static java.lang.Math.max;
+import static java.util.Collections.unmodifiableSet;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import io.leitstand.inventory.service.ElementGroupId;
+import io.leitstand.jobs.service.JobId;
+import io.leitstand.jobs.service.TaskType;
+
+/**
+ * Limits the rate at which tasks are released for execution per task type, per element group and per job.
+ * <p>
+ * Each limited task type, each element group and each job has its own token bucket.
+ * A task is released only if all buckets of the task permit the release.
+ * The buckets are stored in the <code>job.job_task_rate_limit</code> table and hence shared by all job scheduler nodes.
+ * The task type limits are declared by the {@link TaskProcessors}.
+ * The element group and job limits are configured by system properties.
+ */
+public class TaskRateLimits {
+
+    static final String TASK_TYPE_BUCKET = "type:";
+    static final String ELEMENT_GROUP_BUCKET = "group:";
+    static final String JOB_BUCKET = "job:";
+    
+    /**
+     * Creates task rate limits.
+     * @param taskTypeLimits the rate limits per task type
+     * @param groupLimit the rate limit per element group or <code>null</code> if the element group rate is not limited.
+     * @param jobLimit the rate limit per job or <code>null</code> if the job rate is not limited.
+     * @return the task rate limits.
+     */
+    public static TaskRateLimits rateLimits(Map<TaskType,TaskRateLimit> taskTypeLimits,
+                                            TaskRateLimit groupLimit,
+                                            TaskRateLimit jobLimit) {
+        return new TaskRateLimits(taskTypeLimits, groupLimit, jobLimit);
+    }
+    
+    /**
+     * Creates task rate limits that do not limit any task.
+     * @return the task rate limits.
+     */
+    public static TaskRateLimits noRateLimits() {
+        return new TaskRateLimits(new HashMap<>(), null, null);
+    }
+    
+    private final Map<TaskType,TaskRateLimit> taskTypeLimits;
+    private final TaskRateLimit groupLimit;
+    private final TaskRateLimit jobLimit;
+    private volatile boolean throttled;
+    
+    protected TaskRateLimits(Map<TaskType,TaskRateLimit> taskTypeLimits,
+                             TaskRateLimit groupLimit,
+                             TaskRateLimit jobLimit) {
+        this.taskTypeLimits = new HashMap<>(taskTypeLimits);
+        this.groupLimit = groupLimit;
+        this.jobLimit = jobLimit;
+    }
+    
+    /**
+     * Returns whether any rate limit is configured.
+     * @return <code>true</code> if tasks are rate limited, <code>false</code> otherwise.
+     */
+    public boolean isEnabled() {
+        return !taskTypeLimits.isEmpty() || groupLimit != null || jobLimit != null;
+    }
+    
+    /**
+     * Returns all rate limited task types.
+     * @return all rate limited task types.
+     */
+    public Set<TaskType> getTaskTypes(){
+        return unmodifiableSet(taskTypeLimits.keySet());
+    }
+    
+    /**
+     * Returns whether the element group rate is limited.
+     * @return <code>true</code> if the element group rate is limited, <code>false</code> otherwise.
+     */
+    public boolean isElementGroupLimited() {
+        return groupLimit != null;
+    }
+    
+    /**
+     * Returns whether the job rate is limited.
+     * @return <code>true</code> if the job rate is limited, <code>false</code> otherwise.
+     */
+    public boolean isJobLimited() {
+        return jobLimit != null;
+    }
+    
+    /**
+     * Returns the buckets of a task.
+     * @param taskType the task type
+     * @param jobId the job the task belongs to
+     * @param groupId the element group of the job or <code>null</code> if the job is not bound to an element group.
+     * @return the rate limits of the task by bucket name.
+     */
+    Map<String,TaskRateLimit> getBuckets(TaskType taskType, JobId jobId, ElementGroupId groupId){
+        Map<String,TaskRateLimit> buckets = new LinkedHashMap<>();
+        TaskRateLimit taskTypeLimit = taskType != null ? taskTypeLimits.get(taskType) : null;
+        if(taskTypeLimit != null) {
+            buckets.put(TASK_TYPE_BUCKET+taskType.getValue(), taskTypeLimit);
+        }
+        if(groupLimit != null && groupId != null) {
+            buckets.put(ELEMENT_GROUP_BUCKET+groupId.getValue(), groupLimit);
+        }
+        if(jobLimit != null) {
+            buckets.put(JOB_BUCKET+jobId.getValue(), jobLimit);
+        }
+        return buckets;
+    }
+    
+    /**
+     * Returns how long an idle bucket must be retained before it can be removed without losing state.
+     * An idle bucket older than this period permits a full burst, just like a new bucket.
+     * @return the retention period of idle buckets in milliseconds.
+     */
+    long getMaxToleranceMillis() {
+        long tolerance = 0;
+        for(TaskRateLimit limit : taskTypeLimits.values()) {
+            tolerance = max(tolerance, limit.getToleranceMillis());
+        }
+        if(groupLimit != null) {
+            tolerance = max(tolerance, groupLimit.getToleranceMillis());
+        }
+        if(jobLimit != null) {
+            tolerance = max(tolerance, jobLimit.getToleranceMillis());
+        }
+        return tolerance;
+    }
+    
+    /**
+     * Returns whether the latest claim found exhausted buckets.
+     * Tasks of exhausted buckets become eligible for execution once the buckets are refilled.
+     * @return <code>true</code> if tasks are held back by rate limits, <code>false</code> otherwise.
+     */
+    public boolean isThrottled() {
+        return throttled;
+    }
+    
+    void setThrottled(boolean throttled) {
+        this.throttled = throttled;
+    }
+    
+    @Override
+    public String toString() {
+        return "task types: "+taskTypeLimits+", element group: "+groupLimit+", job: "+jobLimit;
+    }
+    
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.jobs.model;
+
+import static io.leitstand.commons.db.DatabaseService.prepare;
+import static io.leitstand.commons.model.BuilderUtil.assertNotInvalidated;
+import static io.leitstand.jobs.service.JobTaskMessage.newJobTaskMessage;
+import static io.leitstand.jobs.service.ReasonCode.JOB0302W_TASK_RETRY_SCHEDULED;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.util.Arrays.stream;
+import static java.util.Collections.unmodifiableSet;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.toSet;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import io.leitstand.commons.Reason;
+import io.leitstand.commons.db.DatabaseService;
+
+/**
+ * Declares how often and when a failed or timed out task is retried.
+ * <p>
+ * A task is retried until it has been executed <code>maxAttempts</code> times.
+ * The delay before the next attempt grows exponentially from the initial backoff, limited by the maximum backoff.
+ * Half of the delay is randomized (<em>equal jitter</em>) so that tasks that failed at the same time are not retried at the same time.
+ * If retryable reasons are declared, a task is only retried if it failed for one of these reasons.
+ * A task that failed for an unknown reason, for example a failure reported through the task state resource, is not retried then.
+ */
+public class TaskRetryPolicy {
+    
+    /**
+     * A policy that never retries a task.
+     */
+    public static final TaskRetryPolicy NO_RETRY = newTaskRetryPolicy().withMaxAttempts(1).build();
+
+    /**
+     * Returns a builder for an immutable task retry policy.
+     * @return a builder for an immutable task retry policy.
+     */
+    public static Builder newTaskRetryPolicy() {
+        return new Builder();
+    }
+    
+    /**
+     * Builder for an immutable task retry policy.
+     */
+    public static class Builder {
+        
+        private TaskRetryPolicy policy = new TaskRetryPolicy();
+        
+        /**
+         * Sets the maximum number of attempts to execute a task, including the first attempt.
+         * @param maxAttempts the maximum number of attempts
+         * @return a reference to this builder to continue object creation
+         */
+        public Builder withMaxAttempts(int maxAttempts) {
+            assertNotInvalidated(getClass(), policy);
+            policy.maxAttempts = max(1, maxAttempts);
+            return this;
+        }
+        
+        /**
+         * Sets the delay before the first retry.
+         * @param backoff the initial backoff
+         * @param unit the backoff unit
+         * @return a reference to this builder to continue object creation
+         */
+        public Builder withInitialBackoff(long backoff, TimeUnit unit) {
+            assertNotInvalidated(getClass(), policy);
+            policy.initialBackoffMillis = max(0, unit.toMillis(backoff));
+            return this;
+        }
+        
+        /**
+         * Sets the maximum delay between two attempts.
+         * @param backoff the maximum backoff
+         * @param unit the backoff unit
+         * @return a reference to this builder to continue object creation
+         */
+        public Builder withMaxBackoff(long backoff, TimeUnit unit) {
+            assertNotInvalidated(getClass(), policy);
+            policy.maxBackoffMillis = max(0, unit.toMillis(backoff));
+            return this;
+        }
+        
+        /**
+         * Sets the reasons for which a task is retried. 
+         * A task is retried for any reason if no reasons are set.
+         * @param reasons the retryable reasons
+         * @return a reference to this builder to continue object creation
+         */
+        public Builder withRetryableReasons(Reason... reasons) {
+            assertNotInvalidated(getClass(), policy);
+            policy.retryableReasons = stream(reasons)
+                                      .map(Reason::getReasonCode)
+                                      .collect(toSet());
+            return this;
+        }
+        
+        /**
+         * Sets the reason codes for which a task is retried. 
+         * A task is retried for any reason if no reason codes are set.
+         * @param reasonCodes the retryable reason codes
+         * @return a reference to this builder to continue object creation
+         */
+        public Builder withRetryableReasons(String... reasonCodes) {
+            assertNotInvalidated(getClass(), policy);
+            policy.retryableReasons = stream(reasonCodes).collect(toSet());
+            return this;
+        }
+        
+        /**
+         * Returns an immutable task retry policy.
+         * @return an immutable task retry policy.
+         */
+        public TaskRetryPolicy build() {
+            try {
+                assertNotInvalidated(getClass(), policy);
+                return policy;
+            } finally {
+                this.policy = null;
+            }
+        }
+    }
+    
+    private int maxAttempts = 1;
+    private long initialBackoffMillis = SECONDS.toMillis(10);
+    private long maxBackoffMillis = MINUTES.toMillis(10);
+    private Set<String> retryableReasons = new HashSet<>();
+    
+    /**
+     * Returns the maximum number of attempts to execute a task.
+     * @return the maximum number of attempts.
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+    
+    /**
+     * Returns the delay before the first retry in milliseconds.
+     * @return the initial backoff in milliseconds.
+     */
+    public long getInitialBackoffMillis() {
+        return initialBackoffMillis;
+    }
+    
+    /**
+     * Returns the maximum delay between two attempts in milliseconds.
+     * @return the maximum backoff in milliseconds.
+     */
+    public long getMaxBackoffMillis() {
+        return maxBackoffMillis;
+    }
+    
+    /**
+     * Returns the reason codes for which a task is retried.
+     * @return the retryable reason codes or an empty set if a task is retried for any reason.
+     */
+    public Set<String> getRetryableReasons() {
+        return unmodifiableSet(retryableReasons);
+    }
+    
+    /**
+     * Returns whether a task that failed for the given reason in the given attempt is retried.
+     * @param attempt the failed attempt, starting with 1 for the first execution
+     * @param reasonCode the reason code of the failure or <code>null</code> if the reason is unknown
+     * @return <code>true</code> if the task is retried, <code>false</code> otherwise.
+     */
+    public boolean isRetryable(int attempt, String reasonCode) {
+        if(attempt >= maxAttempts) {
+            return false;
+        }
+        return retryableReasons.isEmpty() || retryableReasons.contains(reasonCode);
+    }
+    
+    /**
+     * Returns the delay before the next attempt after the given failed attempt.
+     * @param attempt the failed attempt, starting with 1 for the first execution
+     * @return the delay in milliseconds.
+     */
+    public long getBackoffMillis(int attempt) {
+        // Double the backoff per attempt and stop doubling once the maximum is reached.
+        long backoff = initialBackoffMillis;
+        for(int i = 1; i < attempt && backoff < maxBackoffMillis; i++) {
+            backoff *= 2;
+        }
+        backoff = min(backoff, maxBackoffMillis);
+        long half = backoff / 2;
+        return backoff - half + ThreadLocalRandom.current().nextLong(half + 1);
+    }
+    
+    /**
+     * Schedules the next attempt of a failed or timed out task if this policy permits a retry.
+     * The task becomes eligible for execution again after the backoff has elapsed and the retry is recorded in the task journal.
+     * The earliest execution date is computed by the database clock, which is shared by all nodes and used to select eligible tasks.
+     * @param db the jobs database
+     * @param task the failed task
+     * @param reasonCode the reason code of the failure or <code>null</code> if the reason is unknown
+     * @return <code>true</code> if a retry has been scheduled, <code>false</code> if the task is not retried.
+     */
+    boolean scheduleRetry(DatabaseService db, Job_Task task, String reasonCode) {
+        int attempt = task.getAttempts() + 1;
+        if(!isRetryable(attempt, reasonCode)) {
+            return false;
+        }
+        Date notBefore = db.getSingleResult(prepare("SELECT NOW() + ? * INTERVAL '1 millisecond'", 
+                                                    getBackoffMillis(attempt)), 
+                                            rs -> rs.getTimestamp(1));
+        task.retry(notBefore);
+        task.addMessage(newJobTaskMessage()
+                        .withReason(JOB0302W_TASK_RETRY_SCHEDULED)
+                        .withMessage(JOB0302W_TASK_RETRY_SCHEDULED.getMessage(task.getJobId(),
+                                                                              task.getJobName(),
+                                                                              task.getTaskId(),
+                                                                              task.getTaskName(),
+                                                                              attempt + 1,
+                                                                              maxAttempts,
+                                                                              notBefore)));
+        return true;
+    }
+    
+}
@@ -1,17 +1,46 @@
 package io.leitstand.jobs.model;
 
 import static io.leitstand.commons.db.DatabaseService.prepare;
+import static io.leitstand.jobs.model.ExecutableTask.executableTask;
 import static io.leitstand.jobs.model.Job_Task.findTaskById;
+import static io.leitstand.jobs.model.Job_Task.findTasksByIds;
+import static io.leitstand.jobs.model.TaskBulkheads.noBulkheads;
+import static io.leitstand.jobs.model.TaskRateLimits.ELEMENT_GROUP_BUCKET;
+import static io.leitstand.jobs.model.TaskRateLimits.JOB_BUCKET;
+import static io.leitstand.jobs.model.TaskRateLimits.TASK_TYPE_BUCKET;
+import static io.leitstand.jobs.model.TaskRateLimits.noRateLimits;
+import static io.leitstand.jobs.model.TaskShards.noShards;
 import static io.leitstand.jobs.service.TaskId.taskId;
+import static io.leitstand.jobs.service.TaskType.taskType;
+import static java.lang.Math.min;
+import static java.util.Collections.emptyList;
 
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 
+import javax.annotation.Resource;
+import javax.enterprise.concurrent.ManagedExecutorService;
 import javax.inject.Inject;
 
 import io.leitstand.commons.db.DatabaseService;
 import io.leitstand.commons.model.Repository;
 import io.leitstand.commons.model.Service;
+import io.leitstand.inventory.service.ElementGroupId;
+import io.leitstand.jobs.service.JobId;
+import io.leitstand.jobs.service.State;
 import io.leitstand.jobs.service.TaskId;
+import io.leitstand.jobs.service.TaskType;
 
 @Service
 public class TaskSchedulerService {
@@ -25,29 +54,475 @@ public class TaskSchedulerService {
     @Jobs
     private Repository repository;
     
+    @Inject
+    @JobsBatch
+    private Repository batchRepository;
+    
     @Inject
     private TaskProcessingService service;
     
+    @Inject
+    private TaskOutcomeService outcomes;
+    
+    @Inject
+    private TaskProcessorDiscoveryService processors;
+    
+    @Resource
+    private ManagedExecutorService wm;
+    
 
-    public List<TaskId> fetchExecutableTasks(int limit){
-        String sql = "UPDATE job.job_task "+
-                     "SET state='ACTIVE' "+
-                     "WHERE id IN ( "+
-                       "SELECT id "+
-                       "FROM job.job_task "+
-                       "WHERE state='READY' "+
+    public List<ExecutableTask> fetchExecutableTasks(int limit){
+        return fetchExecutableTasks(limit, 
+                                    noBulkheads(),
+                                    noShards(),
+                                    noRateLimits());
+    }
+    
+    /**
+     * Claims tasks eligible for execution.
+     * <p>
+     * Tasks of a partitioned task type are claimed according to the free capacity of the partition.
+     * The caller records the claimed tasks in the bulkheads once the claim has been committed,
+     * such that a rolled back claim does not occupy partition capacity.
+     * Tasks of all other task types are claimed until the overall limit is reached.
+     * If sharding is enabled, only tasks of the shards owned by this node are claimed.
+     * A retried task is not claimed before its retry date has been reached.
+     * If rate limits are configured, a task is only claimed if all its token buckets permit the release.
+     * The claim sets the expiry date of a task according to the task timeouts.
+     * @param limit the maximum number of tasks to be claimed.
+     * @param bulkheads the task type partitions
+     * @param shards the task shards owned by this node
+     * @param rateLimits the task rate limits
+     * @return the claimed tasks.
+     */
+    public List<ExecutableTask> fetchExecutableTasks(int limit, 
+                                                     TaskBulkheads bulkheads,
+                                                     TaskShards shards,
+                                                     TaskRateLimits rateLimits){
+        Set<Integer> ownedShards = shards.getOwnedShards();
+        if(shards.isEnabled() && ownedShards.isEmpty()) {
+            return emptyList();
+        }
+        
+        List<ExecutableTask> tasks = new ArrayList<>(limit);
+        for(TaskType taskType : bulkheads.getTaskTypes()) {
+            int capacity = min(limit - tasks.size(), 
+                               bulkheads.available(taskType));
+            if(capacity > 0) {
+                List<Object> args = new ArrayList<>();
+                StringBuilder filter = new StringBuilder("AND t.type=? ");
+                args.add(taskType.getValue());
+                appendShardFilter(filter, args, shards.getShardCount(), ownedShards);
+                tasks.addAll(claimTasks(filter, args, capacity, rateLimits));
+            }
+        }
+        
+        int capacity = limit - tasks.size();
+        if(capacity > 0) {
+            List<Object> args = new ArrayList<>();
+            StringBuilder filter = new StringBuilder();
+            Set<TaskType> partitionedTypes = bulkheads.getTaskTypes();
+            if(!partitionedTypes.isEmpty()) {
+                filter.append("AND (t.type IS NULL OR t.type NOT IN (");
+                appendPlaceholders(filter, partitionedTypes.size());
+                filter.append(")) ");
+                partitionedTypes.forEach(taskType -> args.add(taskType.getValue()));
+            }
+            appendShardFilter(filter, args, shards.getShardCount(), ownedShards);
+            tasks.addAll(claimTasks(filter, args, capacity, rateLimits));
+        }
+        if(rateLimits.isEnabled()) {
+            rateLimits.setThrottled(countThrottledBuckets() > 0);
+        }
+        return tasks;
+    }
+    
+    private static void appendShardFilter(StringBuilder filter, 
+                                          List<Object> args, 
+                                          int shardCount, 
+                                          Set<Integer> ownedShards) {
+        if(shardCount == 0) {
+            return;
+        }
+        filter.append("AND t.job_id % ? IN (");
+        appendPlaceholders(filter, ownedShards.size());
+        filter.append(") ");
+        args.add(shardCount);
+        args.addAll(ownedShards);
+    }
+    
+    private static void appendPlaceholders(StringBuilder filter, int count) {
+        for(int i=0; i < count; i++) {
+            if(i > 0) {
+                filter.append(",");
+            }
+            filter.append("?");
+        }
+    }
+    
+    private List<ExecutableTask> claimTasks(CharSequence filter, 
+                                            List<Object> args, 
+                                            int limit,
+                                            TaskRateLimits rateLimits) {
+        if(rateLimits.isEnabled()) {
+            return claimRateLimitedTasks(filter, args, limit, rateLimits);
+        }
+        List<Object> params = new ArrayList<>();
+        String sql = "UPDATE job.job_task t "+
+                     "SET state='ACTIVE', tsexpire="+expiry(params)+" "+
+                     "FROM job.job j "+
+                     "WHERE t.job_id = j.id "+
+                     "AND t.id IN ( "+
+                       "SELECT t.id "+
+                       "FROM job.job_task t "+
+                       "WHERE t.state='READY' "+
+                       "AND (t.tsnotbefore IS NULL OR t.tsnotbefore <= NOW()) "+
+                       filter +
                        "FOR UPDATE SKIP LOCKED "+
                        "LIMIT ?"+
                      ") "+
-                     "RETURNING uuid";
-                     
-        return db.executeQuery(prepare(sql,limit), 
-                               rs -> taskId(rs.getString(1)));
+                     "RETURNING t.uuid, t.type";
+        
+        params.addAll(args);
+        params.add(limit);
+        return db.executeQuery(prepare(sql,params), 
+                               rs -> executableTask(taskId(rs.getString(1)),
+                                                    taskType(rs.getString(2))));
+    }
+    
+    private static final class Candidate {
+        private final long id;
+        private final ExecutableTask task;
+        private final Map<String,TaskRateLimit> buckets;
+        private final long now;
+        
+        Candidate(long id, ExecutableTask task, Map<String,TaskRateLimit> buckets, Timestamp now){
+            this.id = id;
+            this.task = task;
+            this.buckets = buckets;
+            this.now = now.getTime();
+        }
+    }
+    
+    /**
+     * Claims the tasks permitted by the rate limits.
+     * <p>
+     * The candidates are locked first. Tasks of exhausted buckets are not considered as candidates.
+     * Next, the buckets of all candidates are locked in name order to serialize concurrent claims of different nodes.
+     * The candidates are released in task order as long as their buckets permit the release. 
+     * Finally, the bucket states are updated and the released tasks are claimed.
+     * All other candidates remain eligible for execution and are unlocked when the transaction commits.
+     */
+    private List<ExecutableTask> claimRateLimitedTasks(CharSequence filter, 
+                                                       List<Object> args, 
+                                                       int limit,
+                                                       TaskRateLimits rateLimits) {
+        StringBuilder buckets = new StringBuilder();
+        if(!rateLimits.getTaskTypes().isEmpty()) {
+            buckets.append(",'"+TASK_TYPE_BUCKET+"'||t.type");
+        }
+        if(rateLimits.isElementGroupLimited()) {
+            buckets.append(",'"+ELEMENT_GROUP_BUCKET+"'||j.elementgroup_uuid");
+        }
+        if(rateLimits.isJobLimited()) {
+            buckets.append(",'"+JOB_BUCKET+"'||j.uuid");
+        }
+        String sql = "SELECT t.id, t.uuid, t.type, j.uuid, j.elementgroup_uuid, NOW() "+
+                     "FROM job.job_task t "+
+                     "JOIN job.job j "+
+                     "ON t.job_id = j.id "+
+                     "WHERE t.state='READY' "+
+                     "AND (t.tsnotbefore IS NULL OR t.tsnotbefore <= NOW()) "+
+                     filter +
+                     "AND NOT EXISTS ("+
+                       "SELECT 1 "+
+                       "FROM job.job_task_rate_limit r "+
+                       "WHERE r.tsrelease > NOW() "+
+                       "AND r.name IN ("+buckets.substring(1)+")"+
+                     ") "+
+                     "ORDER BY t.id "+
+                     "LIMIT ? "+
+                     "FOR UPDATE OF t SKIP LOCKED";
+        List<Object> params = new ArrayList<>(args);
+        params.add(limit);
+        List<Candidate> candidates = db.executeQuery(prepare(sql, params), 
+                                                     rs -> {
+                                                         TaskType taskType = taskType(rs.getString(3));
+                                                         return new Candidate(rs.getLong(1),
+                                                                              executableTask(taskId(rs.getString(2)), 
+                                                                                             taskType),
+                                                                              rateLimits.getBuckets(taskType,
+                                                                                                    JobId.valueOf(rs.getString(4)),
+                                                                                                    ElementGroupId.valueOf(rs.getString(5))),
+                                                                              rs.getTimestamp(6));
+                                                     });
+        if(candidates.isEmpty()) {
+            return emptyList();
+        }
+        
+        // Lock all buckets in name order to avoid deadlocks between concurrent claims.
+        // The database time is used to not depend on the clocks of the job scheduler nodes.
+        Map<String,TaskRateLimit> limits = new TreeMap<>();
+        candidates.forEach(candidate -> limits.putAll(candidate.buckets));
+        long time = candidates.get(0).now;
+        Map<String,Long> releases = lockBuckets(limits, time);
+        
+        Map<String,Long> modified = new LinkedHashMap<>();
+        List<Object> claimed = new ArrayList<>(candidates.size());
+        List<ExecutableTask> tasks = new ArrayList<>(candidates.size());
+        for(Candidate candidate : candidates) {
+            if(candidate.buckets.keySet().stream().allMatch(bucket -> releases.get(bucket) <= time)) {
+                candidate.buckets.forEach((bucket,rate) -> {
+                    long release = rate.release(releases.get(bucket), time);
+                    releases.put(bucket, release);
+                    modified.put(bucket, release);
+                });
+                claimed.add(candidate.id);
+                tasks.add(candidate.task);
+            }
+        }
+        
+        if(!modified.isEmpty()) {
+            updateBuckets(modified);
+        }
+        if(!claimed.isEmpty()) {
+            List<Object> claimParams = new ArrayList<>();
+            StringBuilder ids = new StringBuilder();
+            appendPlaceholders(ids, claimed.size());
+            String claim = "UPDATE job.job_task t "+
+                           "SET state='ACTIVE', tsexpire="+expiry(claimParams)+" "+
+                           "FROM job.job j "+
+                           "WHERE t.job_id = j.id "+
+                           "AND t.id IN ("+ids+")";
+            claimParams.addAll(claimed);
+            db.executeUpdate(prepare(claim, claimParams));
+        }
+        return tasks;
+    }
+    
+    /**
+     * Returns the expression that computes the expiry date of a claimed task <code>t</code> of job <code>j</code>.
+     * The expression evaluates the timeout rules in order and yields <code>NULL</code> if the task never times out.
+     * @param params the statement parameters to which the parameters of the expression are added
+     * @return the expiry date expression
+     */
+    private String expiry(List<Object> params) {
+        TaskTimeouts timeouts = processors.getTaskTimeouts();
+        if(!timeouts.isEnabled()) {
+            return "NULL";
+        }
+        StringBuilder sql = new StringBuilder("NOW() + CASE ");
+        for(TaskTimeouts.Rule rule : timeouts.getRules()) {
+            sql.append("WHEN j.application=? ");
+            params.add(rule.getJobApplication().getValue());
+            if(rule.getJobType() != null) {
+                sql.append("AND j.type=? ");
+                params.add(rule.getJobType().getValue());
+            }
+            if(rule.getTaskType() != null) {
+                sql.append("AND t.type=? ");
+                params.add(rule.getTaskType().getValue());
+            }
+            sql.append("THEN ")
+               .append(interval(rule.getTimeout()))
+               .append(" ");
+        }
+        return sql.append("ELSE ")
+                  .append(interval(timeouts.getDefaultTimeout()))
+                  .append(" END")
+                  .toString();
     }
     
-    public void executeTask(TaskId taskId) {
+    private static String interval(long timeout) {
+        if(timeout == 0) {
+            return "NULL";
+        }
+        return timeout+" * INTERVAL '1 millisecond'";
+    }
+    
+    private Map<String,Long> lockBuckets(Map<String,TaskRateLimit> limits, long now) {
+        if(limits.isEmpty()) {
+            return new HashMap<>();
+        }
+        // Create missing buckets. A new bucket permits a full burst.
+        StringBuilder values = new StringBuilder();
+        List<Object> args = new ArrayList<>();
+        limits.forEach((bucket,limit) -> {
+            values.append(values.length() > 0 ? "," : "")
+                  .append("(?,?)");
+            args.add(bucket);
+            args.add(new Timestamp(limit.newBucket(now)));
+        });
+        db.executeUpdate(prepare("INSERT INTO job.job_task_rate_limit (name, tsrelease) "+
+                                 "VALUES "+values+" "+
+                                 "ON CONFLICT (name) DO NOTHING", 
+                                 args));
+        
+        StringBuilder names = new StringBuilder();
+        appendPlaceholders(names, limits.size());
+        String sql = "SELECT name, tsrelease "+
+                     "FROM job.job_task_rate_limit "+
+                     "WHERE name IN ("+names+") "+
+                     "ORDER BY name "+
+                     "FOR UPDATE";
+        List<Object> buckets = new ArrayList<>(limits.keySet());
+        Map<String,Long> releases = new HashMap<>();
+        db.executeQuery(prepare(sql, buckets), 
+                        rs -> releases.put(rs.getString(1), 
+                                           rs.getTimestamp(2).getTime()));
+        // A bucket removed concurrently is treated like a new bucket.
+        limits.forEach((bucket,limit) -> releases.putIfAbsent(bucket, limit.newBucket(now)));
+        return releases;
+    }
+    
+    private void updateBuckets(Map<String,Long> releases) {
+        StringBuilder values = new StringBuilder();
+        List<Object> args = new ArrayList<>();
+        releases.forEach((bucket,release) -> {
+            values.append(values.length() > 0 ? "," : "")
+                  .append("(?,CAST(? AS TIMESTAMP))");
+            args.add(bucket);
+            args.add(new Timestamp(release));
+        });
+        db.executeUpdate(prepare("UPDATE job.job_task_rate_limit r "+
+                                 "SET tsrelease = b.tsrelease "+
+                                 "FROM (VALUES "+values+") AS b(name, tsrelease) "+
+                                 "WHERE r.name = b.name", 
+                                 args));
+    }
+    
+    private int countThrottledBuckets() {
+        String sql = "SELECT count(*) "+
+                     "FROM job.job_task_rate_limit "+
+                     "WHERE tsrelease > NOW()";
+        return db.getSingleResult(prepare(sql), 
+                                  rs -> rs.getInt(1));
+    }
+    
+    /**
+     * Removes idle token buckets.
+     * An idle bucket permits a full burst once the burst tolerance has elapsed since its release date.
+     * Removing such a bucket does not change the rate limit, because a new bucket also permits a full burst.
+     * @param rateLimits the task rate limits
+     * @return the number of removed buckets.
+     */
+    public int removeIdleBuckets(TaskRateLimits rateLimits) {
+        String sql = "DELETE FROM job.job_task_rate_limit "+
+                     "WHERE tsrelease < NOW() - ? * INTERVAL '1 millisecond'";
+        return db.executeUpdate(prepare(sql, rateLimits.getMaxToleranceMillis()));
+    }
+    
+    /**
+     * Returns the time until the earliest scheduled retry of a ready task is due, computed by the database clock.
+     * @return the time in milliseconds until the next retry is due or <code>null</code> if no retry is pending.
+     */
+    public Long getNextRetryDelayMillis() {
+        String sql = "SELECT ceil(extract(EPOCH FROM min(tsnotbefore) - NOW()) * 1000) "+
+                     "FROM job.job_task "+
+                     "WHERE state='READY' "+
+                     "AND tsnotbefore > NOW()";
+        return db.getSingleResult(prepare(sql), 
+                                  rs -> {
+                                      long delay = rs.getLong(1);
+                                      return rs.wasNull() ? null : delay;
+                                  });
+    }
+    
+    /**
+     * Returns the number of tasks eligible for execution.
+     * @return the number of tasks eligible for execution.
+     */
+    public int countExecutableTasks() {
+        String sql = "SELECT count(*) "+
+                     "FROM job.job_task "+
+                     "WHERE state='READY' "+
+                     "AND (tsnotbefore IS NULL OR tsnotbefore <= NOW())";
+        return db.getSingleResult(prepare(sql), 
+                                  rs -> rs.getInt(1));
+    }
+    
+    /**
+     * Executes the given task.
+     * Tasks executed by an {@link AsyncTaskProcessor} remain active until the task processor completes the task.
+     * The outcome is persisted in a new transaction.
+     * @param taskId the task ID
+     * @return the task state after the task processor has been invoked.
+     */
+    public State executeTask(TaskId taskId) {
         Job_Task task = repository.execute(findTaskById(taskId));
-        service.executeTask(task);
+        return execute(task);
+    }
+    
+    /**
+     * Loads the given tasks to execute them as a batch.
+     * <p>
+     * All tasks are loaded along with their jobs and journals by a single query.
+     * The task processors are invoked outside of this transaction on the returned tasks. 
+     * The outcomes are persisted by {@link #completeTasks(Map)}.
+     * @param taskIds the task IDs
+     * @return the claimed tasks.
+     */
+    public List<Job_Task> startTasks(List<TaskId> taskIds) {
+        List<Job_Task> tasks = repository.execute(findTasksByIds(taskIds));
+        tasks.forEach(service::startTask);
+        return tasks;
+    }
+    
+    /**
+     * Persists the outcomes of a batch of tasks in a single transaction.
+     * <p>
+     * The tasks are reloaded by the batch writing persistence unit 
+     * and the changes the task processors made to the executed tasks are copied onto the reloaded tasks.
+     * The successors of the completed tasks are released by the same persistence unit 
+     * after the outcomes of all tasks have been applied.
+     * Hence, the first bulk update sends all task state changes and journal entries by batched statements.
+     * @param executed the tasks passed to the task processors
+     * @param outcomes the completed outcomes of the task processors
+     */
+    public void completeTasks(Collection<Job_Task> executed, 
+                              Map<TaskId,? extends CompletionStage<TaskResult>> outcomes) {
+        Map<TaskId,Job_Task> processed = new HashMap<>();
+        for(Job_Task task : executed) {
+            processed.put(task.getTaskId(), task);
+        }
+        List<Job_Task> completed = new ArrayList<>();
+        for(Job_Task task : batchRepository.execute(findTasksByIds(outcomes.keySet()))) {
+            Job_Task processedTask = processed.get(task.getTaskId());
+            if(processedTask != null && task.isActive()) {
+                task.copyProcessorChanges(processedTask);
+            }
+            CompletableFuture<TaskResult> outcome = outcomes.get(task.getTaskId()).toCompletableFuture();
+            boolean release;
+            try {
+                release = service.applyOutcome(task, outcome.join(), null);
+            } catch (CompletionException | CancellationException e) {
+                release = service.applyOutcome(task, null, e);
+            }
+            if(release) {
+                completed.add(task);
+            }
+        }
+        for(Job_Task task : completed) {
+            service.releaseSuccessorsOf(task, batchRepository);
+        }
+    }
+    
+    private State execute(Job_Task task) {
+        CompletionStage<TaskResult> outcome = service.executeTask(task);
+        if(outcome != null) {
+            awaitOutcome(task.getTaskId(), outcome);
+        }
+        return task.getTaskState();
+    }
+    
+    /**
+     * Persists the outcome of an asynchronously executed task when the task processor completes the task.
+     * @param taskId the task ID
+     * @param outcome the pending task outcome
+     */
+    public void awaitOutcome(TaskId taskId, CompletionStage<TaskResult> outcome) {
+        outcome.whenCompleteAsync((result,error) -> outcomes.completeTask(taskId, result, error), 
+                                  wm);
     }
     
     
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.jobs.model;
+
+import static java.lang.Math.abs;
+import static java.lang.Math.max;
+import static java.util.Collections.emptySet;
+import static java.util.Collections.unmodifiableSet;
+
+import java.util.Iterator;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The task shards owned by this node.
+ * <p>
+ * Tasks are partitioned into shards by their job. 
+ * A task belongs to the shard <code>job_id % shardCount</code>, i.e. all tasks of a job belong to the same shard.
+ * A node claims only tasks of the shards it owns. 
+ * Shard ownership is leased and rebalanced whenever nodes join or leave.
+ */
+public class TaskShards {
+    
+    static final String NODE_LEASE_PREFIX = "task_node:";
+    static final String SHARD_LEASE_PREFIX = "task_shard:";
+    
+    /**
+     * Returns disabled task shards. 
+     * A node without sharding claims tasks of all jobs.
+     * @return disabled task shards.
+     */
+    public static TaskShards noShards() {
+        return new TaskShards(0);
+    }
+    
+    /**
+     * Creates task shards.
+     * @param shardCount the total number of shards.
+     * @return the task shards owned by this node, which are initially empty.
+     */
+    public static TaskShards shards(int shardCount) {
+        return new TaskShards(shardCount);
+    }
+    
+    private final int shardCount;
+    private Set<Integer> ownedShards;
+    
+    protected TaskShards(int shardCount) {
+        this.shardCount = shardCount;
+        this.ownedShards = emptySet();
+    }
+    
+    /**
+     * Returns whether sharding is enabled.
+     * @return <code>true</code> if sharding is enabled, <code>false</code> otherwise.
+     */
+    public boolean isEnabled() {
+        return shardCount > 0;
+    }
+    
+    /**
+     * Returns the total number of shards.
+     * @return the total number of shards.
+     */
+    public int getShardCount() {
+        return shardCount;
+    }
+    
+    /**
+     * Returns the shards owned by this node.
+     * @return the shards owned by this node.
+     */
+    public synchronized Set<Integer> getOwnedShards(){
+        return ownedShards;
+    }
+    
+    /**
+     * Rebalances the shards owned by this node.
+     * <p>
+     * Renews the leases of all owned shards, 
+     * releases the shards exceeding the fair share of this node 
+     * and leases free shards until the fair share is reached.
+     * @param leases the lease service
+     * @param node the ID of this node
+     * @param leaseSeconds the lease duration in seconds
+     */
+    public void rebalance(LeaseService leases, String node, long leaseSeconds) {
+        // Announce this node to compute the fair share of each node.
+        leases.acquireLease(NODE_LEASE_PREFIX+node, node, leaseSeconds);
+        int nodes = max(1, leases.countLeases(NODE_LEASE_PREFIX));
+        int fairShare = (shardCount + nodes - 1) / nodes;
+        
+        TreeSet<Integer> shards = new TreeSet<>();
+        for(Integer shard : getOwnedShards()) {
+            if(leases.acquireLease(SHARD_LEASE_PREFIX+shard, node, leaseSeconds)) {
+                shards.add(shard);
+            }
+        }
+        
+        // Release surplus shards to let joining nodes take them over.
+        Iterator<Integer> surplus = shards.descendingIterator();
+        while(shards.size() > fairShare && surplus.hasNext()) {
+            leases.releaseLease(SHARD_LEASE_PREFIX+surplus.next(), node);
+            surplus.remove();
+        }
+        
+        // Lease free shards. Start at a node specific offset to reduce contention among the nodes.
+        int offset = abs(node.hashCode() % shardCount);
+        for(int i=0; i < shardCount && shards.size() < fairShare; i++) {
+            int shard = (offset + i) % shardCount;
+            if(!shards.contains(shard) && leases.acquireLease(SHARD_LEASE_PREFIX+shard, node, leaseSeconds)) {
+                shards.add(shard);
+            }
+        }
+        
+        synchronized(this) {
+            ownedShards = unmodifiableSet(shards);
+        }
+    }
+    
+    /**
+     * Releases all shards owned by this node.
+     * @param leases the lease service
+     * @param node the ID of this node
+     */
+    public void releaseAll(LeaseService leases, String node) {
+        for(Integer shard : getOwnedShards()) {
+            leases.releaseLease(SHARD_LEASE_PREFIX+shard, node);
+        }
+        leases.releaseLease(NODE_LEASE_PREFIX+node, node);
+        synchronized(this) {
+            ownedShards = emptySet();
+        }
+    }
+    
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.jobs.model;
+
+import io.leitstand.jobs.service.JobId;
+import io.leitstand.jobs.service.State;
+import io.leitstand.jobs.service.TaskId;
+import io.leitstand.jobs.service.TaskName;
+
+/**
+ * Signals that a job task has changed its state.
+ */
+public class TaskStateChangedEvent extends JobEvent {
+
+    private final TaskId taskId;
+    private final TaskName taskName;
+    private final State taskState;
+    
+    public TaskStateChangedEvent(JobId jobId, 
+                                 TaskId taskId, 
+                                 TaskName taskName, 
+                                 State taskState) {
+        super(jobId);
+        this.taskId = taskId;
+        this.taskName = taskName;
+        this.taskState = taskState;
+    }
+    
+    /**
+     * Creates an event for the current state of the given task.
+     * @param task the task
+     * @return the task state changed event.
+     */
+    public static TaskStateChangedEvent taskStateChanged(Job_Task task) {
+        return new TaskStateChangedEvent(task.getJobId(),
+                                         task.getTaskId(),
+                                         task.getTaskName(),
+                                         task.getTaskState());
+    }
+    
+    /**
+     * Returns the ID of the task.
+     * @return the ID of the task.
+     */
+    public TaskId getTaskId() {
+        return taskId;
+    }
+    
+    /**
+     * Returns the name of the task.
+     * @return the name of the task.
+     */
+    public TaskName getTaskName() {
+        return taskName;
+    }
+    
+    /**
+     * Returns the new task state.
+     * @return the new task state.
+     */
+    public State getTaskState() {
+        return taskState;
+    }
+    
+}
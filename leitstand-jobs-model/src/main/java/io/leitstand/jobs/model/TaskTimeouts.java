@@ -0,0 +1,192 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.jobs.model;
+
+import static java.lang.Math.max;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.unmodifiableList;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import io.leitstand.jobs.service.JobApplication;
+import io.leitstand.jobs.service.JobType;
+import io.leitstand.jobs.service.TaskType;
+
+/**
+ * The timeouts of active tasks declared by the {@link TaskProcessors}.
+ * <p>
+ * The timeouts are kept as ordered rules.
+ * Each registry contributes a rule per declared task type timeout followed by a rule for its default timeout.
+ * The first rule matching the job application, job type and task type of a task applies, 
+ * which gives precedence to the first registry that declares a timeout for the task.
+ * The default timeout applies if no rule matches.
+ * The {@link TaskSchedulerService} evaluates the rules in the statement that claims a task 
+ * and sets the expiry date of the task along with the <code>ACTIVE</code> state.
+ */
+public class TaskTimeouts {
+    
+    /**
+     * A timeout rule.
+     */
+    static final class Rule {
+        private final JobApplication jobApplication;
+        private final JobType jobType;
+        private final TaskType taskType;
+        private final long timeout;
+        
+        Rule(JobApplication jobApplication, JobType jobType, TaskType taskType, long timeout){
+            this.jobApplication = jobApplication;
+            this.jobType = jobType;
+            this.taskType = taskType;
+            this.timeout = max(0L, timeout);
+        }
+        
+        JobApplication getJobApplication() {
+            return jobApplication;
+        }
+        
+        /**
+         * Returns the job type.
+         * @return the job type or <code>null</code> if the rule applies to all job types.
+         */
+        JobType getJobType() {
+            return jobType;
+        }
+        
+        /**
+         * Returns the task type.
+         * @return the task type or <code>null</code> if the rule applies to all task types.
+         */
+        TaskType getTaskType() {
+            return taskType;
+        }
+        
+        /**
+         * Returns the timeout in milliseconds.
+         * @return the timeout in milliseconds or <code>0</code> if the task never times out.
+         */
+        long getTimeout() {
+            return timeout;
+        }
+        
+        boolean matches(JobApplication jobApplication, JobType jobType, TaskType taskType) {
+            return this.jobApplication.equals(jobApplication)
+                   && (this.jobType == null || this.jobType.equals(jobType))
+                   && (this.taskType == null || this.taskType.equals(taskType));
+        }
+    }
+    
+    /**
+     * Creates the task timeouts declared by the given registries.
+     * @param registries the task processor registries in order of precedence
+     * @param defaultTimeout the timeout in milliseconds of all tasks without declared timeout, 
+     *                       <code>0</code> if these tasks never time out.
+     * @return the task timeouts.
+     */
+    public static TaskTimeouts taskTimeouts(List<TaskProcessors> registries, long defaultTimeout) {
+        List<Rule> rules = new ArrayList<>();
+        for(TaskProcessors registry : registries) {
+            for(Map.Entry<TaskType,Long> timeout : registry.getTimeouts().entrySet()) {
+                rules.add(new Rule(registry.getJobApplication(),
+                                   registry.getJobType(),
+                                   timeout.getKey(),
+                                   timeout.getValue()));
+            }
+            if(registry.getDefaultTimeout() != null) {
+                rules.add(new Rule(registry.getJobApplication(),
+                                   registry.getJobType(),
+                                   null,
+                                   registry.getDefaultTimeout()));
+            }
+        }
+        return new TaskTimeouts(rules, defaultTimeout);
+    }
+    
+    /**
+     * Creates task timeouts that let no task time out.
+     * @return the task timeouts.
+     */
+    public static TaskTimeouts noTimeouts() {
+        return new TaskTimeouts(emptyList(), 0);
+    }
+    
+    private final List<Rule> rules;
+    private final long defaultTimeout;
+    
+    protected TaskTimeouts(List<Rule> rules, long defaultTimeout) {
+        this.rules = unmodifiableList(rules);
+        this.defaultTimeout = max(0L, defaultTimeout);
+    }
+    
+    List<Rule> getRules(){
+        return rules;
+    }
+    
+    /**
+     * Returns the timeout of all tasks not matched by any rule.
+     * @return the timeout in milliseconds or <code>0</code> if these tasks never time out.
+     */
+    public long getDefaultTimeout() {
+        return defaultTimeout;
+    }
+    
+    /**
+     * Returns whether any task can time out.
+     * @return <code>true</code> if at least one timeout is declared, <code>false</code> otherwise.
+     */
+    public boolean isEnabled() {
+        return defaultTimeout > 0 || rules.stream().anyMatch(rule -> rule.getTimeout() > 0);
+    }
+    
+    /**
+     * Returns the timeout of a task.
+     * @param jobApplication the job application
+     * @param jobType the job type
+     * @param taskType the task type
+     * @return the timeout in milliseconds or <code>0</code> if the task never times out.
+     */
+    public long getTimeout(JobApplication jobApplication, JobType jobType, TaskType taskType) {
+        for(Rule rule : rules) {
+            if(rule.matches(jobApplication, jobType, taskType)) {
+                return rule.getTimeout();
+            }
+        }
+        return defaultTimeout;
+    }
+    
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder("[");
+        for(Rule rule : rules) {
+            s.append(rule.getJobApplication())
+             .append("/")
+             .append(Objects.toString(rule.getJobType(),"*"))
+             .append("/")
+             .append(Objects.toString(rule.getTaskType(),"*"))
+             .append("=")
+             .append(rule.getTimeout())
+             .append("ms, ");
+        }
+        return s.append("default=")
+                .append(defaultTimeout)
+                .append("ms]")
+                .toString();
+    }
+    
+}
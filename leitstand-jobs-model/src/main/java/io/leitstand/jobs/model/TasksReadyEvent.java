@@ -0,0 +1,40 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.jobs.model;
+
+/**
+ * Signals that tasks have been marked eligible for execution.
+ * <p>
+ * The {@link JobTaskEventLoop} observes this event after the transaction has been committed 
+ * and wakes up immediately to execute the ready tasks.
+ */
+public class TasksReadyEvent {
+
+    private final int count;
+    
+    public TasksReadyEvent(int count) {
+        this.count = count;
+    }
+    
+    /**
+     * Returns the number of tasks marked eligible for execution.
+     * @return the number of tasks marked eligible for execution.
+     */
+    public int getCount() {
+        return count;
+    }
+    
+}
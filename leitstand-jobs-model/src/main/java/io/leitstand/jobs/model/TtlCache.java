@@ -0,0 +1,150 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.jobs.model;
+
+import static java.lang.Math.max;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiPredicate;
+import java.util.function.LongSupplier;
+
+/**
+ * A size-bounded cache with time-to-live (TTL) expiry.
+ * <p>
+ * The cache evicts the least recently used entry when the size limit is exceeded.
+ * Expired entries are evicted on access.
+ * The cache counts the evicted entries.
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class TtlCache<K,V> {
+    
+    private static class Entry<V> {
+        private final V value;
+        private final long expiry;
+        
+        Entry(V value, long expiry){
+            this.value = value;
+            this.expiry = expiry;
+        }
+    }
+    
+    private final int maxSize;
+    private final long ttlMillis;
+    private final LongSupplier clock;
+    private final LinkedHashMap<K,Entry<V>> entries;
+    private long evictions;
+    
+    /**
+     * Creates a cache.
+     * @param maxSize the maximum number of cached entries
+     * @param ttlMillis the time-to-live of an entry in milliseconds
+     */
+    public TtlCache(int maxSize, long ttlMillis) {
+        this(maxSize, ttlMillis, System::currentTimeMillis);
+    }
+
+    protected TtlCache(int maxSize, long ttlMillis, LongSupplier clock) {
+        this.maxSize = max(1, maxSize);
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+        // Access order to evict the least recently used entry first.
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+    
+    /**
+     * Returns the cached value.
+     * @param key the key
+     * @return the cached value or <code>null</code> if no unexpired value is cached.
+     */
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if(entry == null) {
+            return null;
+        }
+        if(entry.expiry < clock.getAsLong()) {
+            entries.remove(key);
+            evictions++;
+            return null;
+        }
+        return entry.value;
+    }
+    
+    /**
+     * Caches a value.
+     * @param key the key
+     * @param value the value
+     */
+    public synchronized void put(K key, V value) {
+        entries.put(key, new Entry<>(value, clock.getAsLong() + ttlMillis));
+        Iterator<Map.Entry<K,Entry<V>>> eldest = entries.entrySet().iterator();
+        while(entries.size() > maxSize && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+            evictions++;
+        }
+    }
+    
+    /**
+     * Removes a value from the cache.
+     * @param key the key
+     */
+    public synchronized void invalidate(K key) {
+        entries.remove(key);
+    }
+    
+    /**
+     * Removes all values matching the given predicate from the cache.
+     * @param filter the predicate selecting the entries to be removed by their key and value
+     */
+    public synchronized void invalidateIf(BiPredicate<? super K,? super V> filter) {
+        entries.entrySet().removeIf(entry -> filter.test(entry.getKey(), entry.getValue().value));
+    }
+    
+    /**
+     * Removes all values from the cache.
+     */
+    public synchronized void invalidateAll() {
+        entries.clear();
+    }
+    
+    /**
+     * Returns the number of cached entries including expired entries that have not been evicted yet.
+     * @return the number of cached entries.
+     */
+    public synchronized int getSize() {
+        return entries.size();
+    }
+    
+    /**
+     * Returns the maximum number of cached entries.
+     * @return the maximum number of cached entries.
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+    
+    /**
+     * Returns the number of evicted entries.
+     * @return the number of evicted entries.
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+    
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.jobs.rs;
+
+import static io.leitstand.jobs.rs.Scopes.JOB;
+import static io.leitstand.jobs.rs.Scopes.JOB_READ;
+import static javax.json.Json.createObjectBuilder;
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON_TYPE;
+import static javax.ws.rs.core.MediaType.SERVER_SENT_EVENTS;
+
+import javax.inject.Inject;
+import javax.json.JsonObject;
+import javax.validation.Valid;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.sse.OutboundSseEvent;
+import javax.ws.rs.sse.Sse;
+import javax.ws.rs.sse.SseEventSink;
+
+import io.leitstand.commons.rs.Resource;
+import io.leitstand.jobs.model.JobEvent;
+import io.leitstand.jobs.model.JobEventBus;
+import io.leitstand.jobs.model.JobEventSubscriber;
+import io.leitstand.jobs.model.JobStateChangedEvent;
+import io.leitstand.jobs.model.TaskStateChangedEvent;
+import io.leitstand.jobs.service.JobId;
+import io.leitstand.jobs.service.JobService;
+import io.leitstand.security.auth.Scopes;
+
+/**
+ * Streams the state changes of a job and its tasks as server-sent events.
+ * <p>
+ * A <code>task</code> event is sent when a task changes its state and
+ * a <code>job</code> event is sent when the job changes its state.
+ * Each event carries a JSON object with the new state.
+ * The stream includes the state changes made by all nodes.
+ * The stream remains open until the client disconnects.
+ * A keep-alive comment is sent periodically to detect disconnected clients.
+ */
+@Resource
+@Path("/jobs")
+@Scopes({JOB, JOB_READ})
+public class JobEventStreamResource {
+
+    @Inject
+    private JobService service;
+    
+    @Inject
+    private JobEventBus bus;
+    
+    @GET
+    @Path("/{job_id}/events")
+    @Produces(SERVER_SENT_EVENTS)
+    public void streamJobEvents(@Valid @PathParam("job_id") JobId jobId,
+                                @Context SseEventSink sink,
+                                @Context Sse sse) {
+        // Fails if the job does not exist.
+        service.getJobSettings(jobId);
+        bus.subscribe(jobId, new JobEventSubscriber() {
+            @Override
+            public void accept(JobEvent event) {
+                if(sink.isClosed()) {
+                    // The bus unsubscribes failed subscribers.
+                    throw new IllegalStateException("Event stream of job "+jobId+" closed");
+                }
+                send(toSseEvent(sse, event));
+            }
+            
+            @Override
+            public void keepAlive() {
+                send(sse.newEventBuilder()
+                        .comment("keep-alive")
+                        .build());
+            }
+            
+            @Override
+            public boolean isClosed() {
+                return sink.isClosed();
+            }
+            
+            private void send(OutboundSseEvent event) {
+                sink.send(event)
+                    .whenComplete((result,error) -> {
+                        if(error != null) {
+                            bus.unsubscribe(jobId, this);
+                            sink.close();
+                        }
+                    });
+            }
+        });
+    }
+    
+    private static OutboundSseEvent toSseEvent(Sse sse, JobEvent event) {
+        if(event instanceof TaskStateChangedEvent) {
+            TaskStateChangedEvent taskEvent = (TaskStateChangedEvent) event;
+            JsonObject data = createObjectBuilder()
+                              .add("job_id", taskEvent.getJobId().getValue())
+                              .add("task_id", taskEvent.getTaskId().getValue())
+                              .add("task_name", taskEvent.getTaskName().getValue())
+                              .add("task_state", taskEvent.getTaskState().name())
+                              .build();
+            return sse.newEventBuilder()
+                      .name("task")
+                      .mediaType(APPLICATION_JSON_TYPE)
+                      .data(JsonObject.class, data)
+                      .build();
+        }
+        JobStateChangedEvent jobEvent = (JobStateChangedEvent) event;
+        JsonObject data = createObjectBuilder()
+                          .add("job_id", jobEvent.getJobId().getValue())
+                          .add("job_state", jobEvent.getJobState().name())
+                          .build();
+        return sse.newEventBuilder()
+                  .name("job")
+                  .mediaType(APPLICATION_JSON_TYPE)
+                  .data(JsonObject.class, data)
+                  .build();
+    }
+    
+}
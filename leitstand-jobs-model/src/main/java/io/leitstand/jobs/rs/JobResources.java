@@ -46,6 +46,10 @@ public class JobResources implements ApiResourceProvider {
 					 JobEventLoopResource.class,
 					 JobTaskResource.class,
 					 JobTaskEventLoopResource.class,
+					 InventoryCacheResource.class,
+					 JobEventStreamResource.class,
+					 JobEventDispatcherResource.class,
+					 TaskProcessorResource.class,
 					 ElementGroupJobResource.class,
 					 JobApplicationAdapter.class,
 					 JobIdAdapter.class,
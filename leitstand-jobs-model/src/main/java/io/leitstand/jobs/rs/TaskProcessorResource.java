@@ -0,0 +1,42 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.jobs.rs;
+
+import static io.leitstand.jobs.rs.Scopes.ADM;
+import static io.leitstand.jobs.rs.Scopes.ADM_JOB;
+
+import javax.inject.Inject;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.Path;
+
+import io.leitstand.commons.rs.Resource;
+import io.leitstand.jobs.model.TaskProcessorDiscoveryService;
+import io.leitstand.security.auth.Scopes;
+
+@Resource
+@Path("/jobs")
+@Scopes({ADM, ADM_JOB})
+public class TaskProcessorResource {
+
+    @Inject
+    private TaskProcessorDiscoveryService processors;
+    
+    @DELETE
+    @Path("/_task_processors")
+    public void refreshTaskProcessors() {
+        processors.refresh();
+    }
+}
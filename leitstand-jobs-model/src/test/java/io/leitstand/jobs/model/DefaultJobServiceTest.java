@@ -19,6 +19,7 @@ import static io.leitstand.jobs.service.JobId.randomJobId;
 import static io.leitstand.jobs.service.JobName.jobName;
 import static io.leitstand.jobs.service.JobSchedule.newJobSchedule;
 import static io.leitstand.jobs.service.JobSettings.newJobSettings;
+import static io.leitstand.jobs.service.ReasonCode.JOB0100E_JOB_NOT_FOUND;
 import static io.leitstand.jobs.service.ReasonCode.JOB0101I_JOB_SETTINGS_UPDATED;
 import static io.leitstand.jobs.service.ReasonCode.JOB0102E_JOB_SETTINGS_IMMUTABLE;
 import static io.leitstand.jobs.service.ReasonCode.JOB0103I_JOB_CONFIRMED;
@@ -40,15 +41,19 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isA;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 import java.util.Date;
 
+import javax.enterprise.event.Event;
+
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -60,6 +65,7 @@ import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import io.leitstand.commons.ConflictException;
+import io.leitstand.commons.EntityNotFoundException;
 import io.leitstand.commons.db.DatabaseService;
 import io.leitstand.commons.messages.Message;
 import io.leitstand.commons.messages.Messages;
@@ -108,6 +114,12 @@ public class DefaultJobServiceTest {
 	@Mock
 	private UserContext userContext;
 	
+	@Mock
+	private Event<JobReadyEvent> jobReady;
+	
+	@Mock
+	private Event<JobEvent> jobEvents;
+	
 	@InjectMocks
 	private DefaultJobService service = new DefaultJobService();
 	
@@ -119,6 +131,14 @@ public class DefaultJobServiceTest {
 		when(userContext.getUserName()).thenReturn(AUTHENTICATED_USER);
 	}
 	
+	@Test
+	public void cannot_read_progress_of_unknown_job() {
+		exception.expect(EntityNotFoundException.class);
+		exception.expect(reason(JOB0100E_JOB_NOT_FOUND));
+		
+		service.getJobProgress(JOB_ID);
+	}
+	
 	@Test
 	public void store_job_creates_new_job_if_no_job_with_specified_id_exists() {
 		JobSubmission submission = mock(JobSubmission.class);
@@ -137,6 +157,8 @@ public class DefaultJobServiceTest {
 		
 	    service.commitJob(JOB_ID);
 	    verify(job).setJobState(State.READY);
+	    verify(jobReady).fire(any(JobReadyEvent.class));
+	    verify(jobEvents).fire(isA(JobStateChangedEvent.class));
 	    assertEquals(JOB0107I_JOB_STORED.getReasonCode(),
 	                 messageCaptor.getValue().getReason());
 	}
@@ -313,6 +335,8 @@ public class DefaultJobServiceTest {
         verify(completed,never()).setTaskState(CANCELLED);
         verify(ready).setTaskState(CANCELLED);
         verify(active).setTaskState(CANCELLED);
+        verify(jobEvents).fire(isA(JobStateChangedEvent.class));
+        verify(jobEvents,times(2)).fire(isA(TaskStateChangedEvent.class));
         assertEquals(JOB0104I_JOB_CANCELLED.getReasonCode(),
                      messageCaptor.getValue().getReason());
         
@@ -17,16 +17,26 @@ package io.leitstand.jobs.model;
 
 import static io.leitstand.inventory.service.ElementGroupId.randomGroupId;
 import static io.leitstand.inventory.service.ElementId.randomElementId;
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
+import java.util.Map;
+
 import org.junit.Before;
 import org.junit.Test;
 
+import io.leitstand.commons.EntityNotFoundException;
+import io.leitstand.inventory.service.ElementGroupElements;
+import io.leitstand.inventory.service.ElementGroupElementsService;
 import io.leitstand.inventory.service.ElementGroupId;
 import io.leitstand.inventory.service.ElementGroupName;
 import io.leitstand.inventory.service.ElementGroupSettings;
@@ -40,7 +50,9 @@ import io.leitstand.inventory.service.ElementSettingsService;
 public class InventoryClientTest {
 
 	private ElementGroupSettingsService groups;
+	private ElementGroupElementsService groupElements;
 	private ElementSettingsService elements;
+	private InventoryCache cache;
 	private InventoryClient client;
 	
 	private ElementId elementId;
@@ -55,9 +67,10 @@ public class InventoryClientTest {
 	@Before
 	public void initClient() {
 		groups = mock(ElementGroupSettingsService.class);
+		groupElements = mock(ElementGroupElementsService.class);
 		elements = mock(ElementSettingsService.class);
-		client = new InventoryClient(groups,elements);
-		client.initCaches();
+		cache = new InventoryCache(100, 60000);
+		client = new InventoryClient(groups,groupElements,elements,cache);
 		
 		elementId = randomElementId();
 		elementName = new ElementName("unit-test-element");
@@ -163,4 +176,146 @@ public class InventoryClientTest {
 		verifyNoMoreInteractions(groups);
 	}
 	
+	@Test
+	public void share_cache_among_clients() {
+		ElementSettings a = client.getElementSettings(elementId);
+		ElementSettings b = new InventoryClient(groups,groupElements,elements,cache).getElementSettings(elementId);
+		assertSame(a, b);
+		verify(elements).getElementSettings(elementId);
+	}
+	
+	@Test
+	public void reload_invalidated_element() {
+		client.getElementSettings(elementId);
+		cache.invalidateElement(elementId);
+		client.getElementSettings(elementName);
+		verify(elements).getElementSettings(elementName);
+	}
+	
+	@Test
+	public void resolve_distinct_elements_once() {
+		Map<ElementId,ElementSettings> settings = client.getElements(asList(elementId, elementId, null));
+		assertEquals(1, settings.size());
+		assertSame(element, settings.get(elementId));
+		verify(elements).getElementSettings(elementId);
+		verifyNoMoreInteractions(elements);
+	}
+	
+	@Test
+	public void load_cache_misses_only() {
+		ElementId unknown = randomElementId();
+		client.getElementSettings(elementId);
+		Map<ElementId,ElementSettings> settings = client.getElements(asList(elementId, unknown));
+		assertSame(element, settings.get(elementId));
+		assertNull(settings.get(unknown));
+		assertTrue(settings.containsKey(unknown));
+		verify(elements).getElementSettings(elementId);
+		verify(elements).getElementSettings(unknown);
+		verifyNoMoreInteractions(elements);
+	}
+	
+	@Test
+	public void load_elements_of_job_group_at_once() {
+		ElementSettings other = mock(ElementSettings.class);
+		ElementId otherId = randomElementId();
+		when(other.getElementId()).thenReturn(otherId);
+		ElementGroupElements members = mock(ElementGroupElements.class);
+		when(members.getElements()).thenReturn(asList(element, other));
+		when(groupElements.getGroupElements(groupId)).thenReturn(members);
+		
+		Map<ElementId,ElementSettings> settings = client.getElements(groupId, asList(elementId, otherId));
+		assertSame(element, settings.get(elementId));
+		assertSame(other, settings.get(otherId));
+		verifyZeroInteractions(elements);
+	}
+	
+	@Test
+	public void load_elements_outside_of_job_group_one_by_one() {
+		ElementId unknown = randomElementId();
+		ElementGroupElements members = mock(ElementGroupElements.class);
+		when(members.getElements()).thenReturn(asList(element));
+		when(groupElements.getGroupElements(groupId)).thenReturn(members);
+		
+		Map<ElementId,ElementSettings> settings = client.getElements(groupId, asList(elementId, unknown));
+		assertSame(element, settings.get(elementId));
+		assertNull(settings.get(unknown));
+		verify(elements).getElementSettings(unknown);
+		verifyNoMoreInteractions(elements);
+	}
+	
+	@Test
+	public void load_elements_one_by_one_when_job_group_does_not_exist() {
+		ElementId other = randomElementId();
+		when(groupElements.getGroupElements(groupId)).thenThrow(mock(EntityNotFoundException.class));
+		
+		Map<ElementId,ElementSettings> settings = client.getElements(groupId, asList(elementId, other));
+		assertSame(element, settings.get(elementId));
+		verify(elements).getElementSettings(elementId);
+		verify(elements).getElementSettings(other);
+	}
+	
+	@Test
+	public void remember_unknown_element_name() {
+		ElementName unknown = new ElementName("unknown-element");
+		assertNull(client.getElementSettings(unknown));
+		assertNull(client.getElementSettings(unknown));
+		verify(elements).getElementSettings(unknown);
+		assertEquals(1, cache.getStatistics().getUnknowns());
+	}
+	
+	@Test
+	public void remember_unknown_group_name() {
+		ElementGroupName unknown = new ElementGroupName("unknown-group");
+		assertNull(client.getGroupSettings(groupType, unknown));
+		assertNull(client.getGroupSettings(groupType, unknown));
+		verify(groups).getGroupSettings(groupType, unknown);
+	}
+	
+	@Test
+	public void forget_unknown_element_when_element_gets_cached() {
+		cache.putUnknownElement(elementName);
+		assertNull(client.getElementSettings(elementName));
+		cache.putElement(element);
+		assertSame(element, client.getElementSettings(elementName));
+	}
+	
+	@Test
+	public void forget_unknown_element_name_when_element_gets_invalidated() {
+		ElementName unknown = new ElementName("unknown-element");
+		assertNull(client.getElementSettings(unknown));
+		cache.invalidateElement(elementId);
+		assertNull(client.getElementSettings(unknown));
+		verify(elements,times(2)).getElementSettings(unknown);
+	}
+	
+	@Test
+	public void forget_unknown_group_name_when_group_gets_invalidated() {
+		ElementGroupName unknown = new ElementGroupName("unknown-group");
+		assertNull(client.getGroupSettings(groupType, unknown));
+		cache.invalidateGroup(groupId);
+		assertNull(client.getGroupSettings(groupType, unknown));
+		verify(groups,times(2)).getGroupSettings(groupType, unknown);
+	}
+	
+	@Test
+	public void reload_invalidated_group_by_name() {
+		client.getGroupSettings(groupId);
+		cache.invalidateGroup(groupId);
+		client.getGroupSettings(groupType, groupName);
+		verify(groups).getGroupSettings(groupType, groupName);
+	}
+	
+	@Test
+	public void report_cache_hits_and_misses() {
+		client.getElementSettings(elementId);
+		client.getElementSettings(elementId);
+		client.getGroupSettings(groupType, groupName);
+		
+		InventoryCacheStatistics stats = cache.getStatistics();
+		assertEquals(1, stats.getHits());
+		assertEquals(2, stats.getMisses());
+		assertEquals(1, stats.getElements());
+		assertEquals(1, stats.getGroups());
+	}
+	
 }
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.jobs.model;
+
+import static io.leitstand.jobs.service.JobApplication.jobApplication;
+import static io.leitstand.jobs.service.JobId.randomJobId;
+import static io.leitstand.jobs.service.JobName.jobName;
+import static io.leitstand.jobs.service.JobType.jobType;
+import static io.leitstand.jobs.service.State.ACTIVE;
+import static io.leitstand.jobs.service.State.COMPLETED;
+import static io.leitstand.jobs.service.State.READY;
+import static io.leitstand.jobs.service.State.WAITING;
+import static io.leitstand.jobs.service.TaskId.randomTaskId;
+import static io.leitstand.jobs.service.TaskName.taskName;
+import static io.leitstand.jobs.service.TaskType.taskType;
+import static io.leitstand.security.auth.UserName.userName;
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class JobDagTest {
+
+    private Job job;
+    private Job_Task start;
+    private Job_Task left;
+    private Job_Task right;
+    private Job_Task join;
+    
+    @Before
+    public void initJob() {
+        /* <start>
+         *   /  \
+         * <left> <right>
+         *   \  /
+         *  <join> */
+        job = new Job(jobApplication("app"),
+                      jobType("type"),
+                      randomJobId(),
+                      jobName("name"),
+                      userName("owner"));
+        start = new Job_Task(1L, job, taskType("noop"), randomTaskId(), taskName("start"));
+        left  = new Job_Task(2L, job, taskType("noop"), randomTaskId(), taskName("left"));
+        right = new Job_Task(3L, job, taskType("noop"), randomTaskId(), taskName("right"));
+        join  = new Job_Task(4L, job, taskType("noop"), randomTaskId(), taskName("join"));
+        start.addSuccessor(left);
+        start.addSuccessor(right);
+        left.addSuccessor(join);
+        right.addSuccessor(join);
+        
+        start.setTaskState(COMPLETED);
+        left.setTaskState(COMPLETED);
+        right.setTaskState(ACTIVE);
+        join.setTaskState(WAITING);
+        job.setStart(start);
+    }
+    
+    @Test
+    public void number_tasks_in_depth_first_order() {
+        JobDag dag = JobDag.snapshot(job);
+        assertEquals(4, dag.getSize());
+        assertSame(start, dag.getTask(0));
+        assertSame(left, dag.getTask(1));
+        assertSame(join, dag.getTask(2));
+        assertSame(right, dag.getTask(3));
+        assertArrayEquals(new int[] {1,3}, dag.getSuccessors(0));
+        assertArrayEquals(new int[] {1,3}, dag.getPredecessors(2));
+    }
+    
+    @Test
+    public void count_tasks_per_state() {
+        JobDag dag = JobDag.snapshot(job);
+        assertEquals(2, dag.getTaskCount(COMPLETED));
+        assertEquals(1, dag.getTaskCount(ACTIVE));
+        assertEquals(1, dag.getTaskCount(WAITING));
+        assertEquals(0, dag.getTaskCount(READY));
+        assertEquals(2, dag.getTaskCounts()[COMPLETED.ordinal()]);
+    }
+    
+    @Test
+    public void visit_tasks_and_transitions_in_job_graph_order() {
+        List<String> visits = new LinkedList<>();
+        JobDag.snapshot(job).accept(new JobGraphVisitor() {
+            @Override
+            public void visitNode(Job_Task task) {
+                visits.add(task.getTaskName().getValue());
+            }
+            @Override
+            public void visitEdge(Job_Task_Transition transition) {
+                visits.add(transition.getFrom().getTaskName().getValue()+"->"+transition.getTo().getTaskName().getValue());
+            }
+        });
+        assertEquals(asList("start",
+                            "left",
+                            "join",
+                            "left->join",
+                            "start->left",
+                            "right",
+                            "right->join",
+                            "start->right"),
+                     visits);
+    }
+    
+}
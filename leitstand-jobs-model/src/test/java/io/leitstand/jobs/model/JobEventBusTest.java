@@ -0,0 +1,151 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.jobs.model;
+
+import static io.leitstand.jobs.service.JobId.randomJobId;
+import static io.leitstand.jobs.model.JobEventBus.SUBSCRIPTION_SECONDS;
+import static io.leitstand.jobs.service.State.ACTIVE;
+import static io.leitstand.jobs.service.State.COMPLETED;
+import static org.junit.Assert.assertEquals;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptySet;
+import static java.util.Collections.singleton;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.leitstand.jobs.model.JobEventOutbox.Entry;
+import io.leitstand.jobs.service.JobId;
+
+public class JobEventBusTest {
+    
+    private JobEventStream stream;
+    private JobEventBus bus;
+    private JobId jobId;
+    private JobEventSubscriber subscriber;
+    
+    @Before
+    public void initBus() {
+        stream = mock(JobEventStream.class);
+        bus = new JobEventBus(stream, new JobEventStreamBuffer());
+        jobId = randomJobId();
+        subscriber = mock(JobEventSubscriber.class);
+    }
+    
+    @Test
+    public void forward_event_to_subscribers_of_the_job() {
+        bus.subscribe(jobId, subscriber);
+        JobEvent event = new JobStateChangedEvent(jobId, ACTIVE);
+        bus.publish(event);
+        verify(subscriber).accept(event);
+    }
+    
+    @Test
+    public void do_not_forward_events_of_other_jobs() {
+        bus.subscribe(jobId, subscriber);
+        bus.publish(new JobStateChangedEvent(randomJobId(), ACTIVE));
+        verifyZeroInteractions(subscriber);
+    }
+    
+    @Test
+    public void unsubscribe_subscriber() {
+        bus.subscribe(jobId, subscriber);
+        bus.unsubscribe(jobId, subscriber);
+        bus.publish(new JobStateChangedEvent(jobId, ACTIVE));
+        verifyZeroInteractions(subscriber);
+        assertEquals(0, bus.getSubscriberCount(jobId));
+    }
+    
+    @Test
+    public void unsubscribe_failed_subscriber() {
+        doThrow(new IllegalStateException()).when(subscriber).accept(any(JobEvent.class));
+        bus.subscribe(jobId, subscriber);
+        bus.publish(new JobStateChangedEvent(jobId, ACTIVE));
+        assertEquals(0, bus.getSubscriberCount(jobId));
+    }
+    
+    @Test
+    public void store_all_events_of_a_transaction_at_once() {
+        JobEvent first = new JobStateChangedEvent(jobId, ACTIVE);
+        JobEvent second = new JobStateChangedEvent(jobId, COMPLETED);
+        bus.onJobEvent(first);
+        bus.onJobEvent(second);
+        verify(stream,never()).storeEvents(anyListOf(JobEvent.class));
+        
+        bus.onJobEventCompleting(first);
+        bus.onJobEventCompleting(second);
+        verify(stream,times(1)).storeEvents(asList(first,second));
+    }
+    
+    @Test
+    public void renew_subscription_before_subscribing() {
+        bus.subscribe(jobId, subscriber);
+        verify(stream).renewSubscriptions(eq(singleton(jobId)), anyString(), eq(SUBSCRIPTION_SECONDS));
+    }
+    
+    @Test
+    public void renew_subscriptions_of_subscribed_jobs() {
+        bus.subscribe(jobId, subscriber);
+        bus.renewSubscriptions();
+        verify(subscriber).keepAlive();
+        verify(stream,times(2)).renewSubscriptions(eq(singleton(jobId)), anyString(), eq(SUBSCRIPTION_SECONDS));
+    }
+    
+    @Test
+    public void unsubscribe_closed_subscriber() {
+        when(subscriber.isClosed()).thenReturn(true);
+        bus.subscribe(jobId, subscriber);
+        bus.renewSubscriptions();
+        verify(subscriber,never()).keepAlive();
+        assertEquals(0, bus.getSubscriberCount(jobId));
+        verify(stream).renewSubscriptions(eq(emptySet()), anyString(), eq(SUBSCRIPTION_SECONDS));
+    }
+    
+    @Test
+    public void forward_stream_events_of_subscribed_jobs_only_once() {
+        bus.subscribe(jobId, subscriber);
+        JobEvent event = new JobStateChangedEvent(jobId, ACTIVE);
+        List<Entry> events = asList(new Entry(1, new Date(), event));
+        when(stream.fetchEvents(anyCollectionOf(JobId.class), anyLong())).thenReturn(events);
+        
+        assertEquals(1, bus.relayEvents());
+        assertEquals(0, bus.relayEvents());
+        verify(subscriber).accept(event);
+    }
+    
+    @Test
+    public void do_not_read_stream_without_subscribers() {
+        assertEquals(0, bus.relayEvents());
+        verify(stream,never()).fetchEvents(anyCollectionOf(JobId.class), anyLong());
+    }
+    
+}
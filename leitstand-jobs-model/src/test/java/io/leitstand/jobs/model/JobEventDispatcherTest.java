@@ -0,0 +1,175 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.jobs.model;
+
+import static io.leitstand.jobs.service.JobId.randomJobId;
+import static io.leitstand.jobs.service.State.ACTIVE;
+import static io.leitstand.jobs.service.State.READY;
+import static java.lang.System.currentTimeMillis;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.leitstand.jobs.model.JobEventOutbox.Entry;
+import io.leitstand.jobs.service.JobId;
+
+public class JobEventDispatcherTest {
+
+    private JobEventOutbox outbox;
+    private JobEventPublisher first;
+    private JobEventPublisher second;
+    private JobEventDispatcher dispatcher;
+    private JobId jobId;
+    
+    @Before
+    public void initDispatcher() {
+        outbox = mock(JobEventOutbox.class);
+        first = mock(JobEventPublisher.class);
+        second = mock(JobEventPublisher.class);
+        dispatcher = new JobEventDispatcher(outbox, asList(first,second), 2, 0);
+        jobId = randomJobId();
+    }
+    
+    @Test
+    public void store_events_in_outbox() {
+        JobEvent event = new JobStateChangedEvent(jobId, ACTIVE);
+        dispatcher.onJobEvent(event);
+        verify(outbox).storeEvent(event);
+    }
+    
+    @Test
+    public void do_not_store_events_without_publishers() {
+        dispatcher = new JobEventDispatcher(outbox, emptyList(), 2, 0);
+        dispatcher.onJobEvent(new JobStateChangedEvent(jobId, ACTIVE));
+        verify(outbox,never()).storeEvent(any(JobEvent.class));
+    }
+    
+    @Test
+    public void dispatch_batch_and_remove_dispatched_events_from_outbox() throws Exception {
+        JobEvent ready = new JobStateChangedEvent(jobId, READY);
+        JobEvent active = new JobStateChangedEvent(jobId, ACTIVE);
+        List<Entry> batch = asList(new Entry(1, new Date(), ready),
+                                   new Entry(2, new Date(), active));
+        when(outbox.fetchEvents(2)).thenReturn(batch);
+        
+        assertEquals(2, dispatcher.dispatchEvents());
+        verify(first).publish(asList(ready,active));
+        verify(second).publish(asList(ready,active));
+        verify(outbox).removeEvents(batch);
+        assertEquals(2, dispatcher.getDeliveredEventCount());
+    }
+    
+    @Test
+    public void do_nothing_when_outbox_is_empty() throws Exception {
+        when(outbox.fetchEvents(2)).thenReturn(emptyList());
+        
+        assertEquals(0, dispatcher.dispatchEvents());
+        verify(first,never()).publish(anyListOf(JobEvent.class));
+    }
+    
+    @Test
+    public void keep_events_in_outbox_when_publisher_fails() throws Exception {
+        doThrow(new IllegalStateException()).when(first).publish(anyListOf(JobEvent.class));
+        List<Entry> batch = asList(new Entry(1, new Date(), new JobStateChangedEvent(jobId, ACTIVE)));
+        when(outbox.fetchEvents(2)).thenReturn(batch);
+        
+        assertEquals(0, dispatcher.dispatchEvents());
+        verify(outbox,never()).removeEvents(batch);
+        assertEquals(0, dispatcher.getDeliveredEventCount());
+    }
+    
+    @Test
+    public void move_failing_event_to_dead_letters_when_all_attempts_are_exhausted() throws Exception {
+        dispatcher = new JobEventDispatcher(outbox, asList(first,second), 2, 0, 1);
+        JobEvent ready = new JobStateChangedEvent(jobId, READY);
+        JobEvent active = new JobStateChangedEvent(jobId, ACTIVE);
+        Entry failing = new Entry(1, new Date(), ready);
+        Entry passing = new Entry(2, new Date(), active);
+        when(outbox.fetchEvents(2)).thenReturn(asList(failing,passing));
+        doThrow(new IllegalStateException("unit-test")).when(first).publish(asList(ready,active));
+        doThrow(new IllegalStateException("unit-test")).when(first).publish(asList(ready));
+        
+        assertEquals(2, dispatcher.dispatchEvents());
+        verify(second).publish(asList(active));
+        verify(outbox).removeEvents(asList(passing));
+        verify(outbox).moveToDeadLetters(asList(failing), "unit-test");
+        assertEquals(1, dispatcher.getDeliveredEventCount());
+    }
+    
+    @Test
+    public void do_not_move_events_to_dead_letters_when_publishing_one_by_one_succeeds() throws Exception {
+        dispatcher = new JobEventDispatcher(outbox, asList(first,second), 2, 0, 1);
+        JobEvent ready = new JobStateChangedEvent(jobId, READY);
+        JobEvent active = new JobStateChangedEvent(jobId, ACTIVE);
+        List<Entry> batch = asList(new Entry(1, new Date(), ready),
+                                   new Entry(2, new Date(), active));
+        when(outbox.fetchEvents(2)).thenReturn(batch);
+        doThrow(new IllegalStateException("unit-test")).when(first).publish(asList(ready,active));
+        
+        assertEquals(2, dispatcher.dispatchEvents());
+        verify(outbox).removeEvents(batch);
+        verify(outbox,never()).moveToDeadLetters(anyListOf(Entry.class), any(String.class));
+        assertEquals(2, dispatcher.getDeliveredEventCount());
+    }
+    
+    @Test
+    public void back_off_from_failed_batch_without_blocking_the_dispatcher() throws Exception {
+        doThrow(new IllegalStateException()).when(first).publish(anyListOf(JobEvent.class));
+        List<Entry> batch = asList(new Entry(1, new Date(), new JobStateChangedEvent(jobId, ACTIVE)));
+        when(outbox.fetchEvents(2)).thenReturn(batch);
+        
+        long start = currentTimeMillis();
+        assertEquals(0, dispatcher.dispatchEvents());
+        assertEquals(0, dispatcher.dispatchEvents());
+        assertTrue(currentTimeMillis() - start < 1000);
+        verify(outbox,times(1)).fetchEvents(2);
+    }
+    
+    @Test
+    public void publish_events_one_by_one_only_to_publishers_that_rejected_the_batch() throws Exception {
+        dispatcher = new JobEventDispatcher(outbox, asList(first,second), 2, 0, 1);
+        JobEvent ready = new JobStateChangedEvent(jobId, READY);
+        JobEvent active = new JobStateChangedEvent(jobId, ACTIVE);
+        List<Entry> batch = asList(new Entry(1, new Date(), ready),
+                                   new Entry(2, new Date(), active));
+        when(outbox.fetchEvents(2)).thenReturn(batch);
+        doThrow(new IllegalStateException("unit-test")).when(second).publish(asList(ready,active));
+        
+        assertEquals(2, dispatcher.dispatchEvents());
+        verify(first).publish(asList(ready,active));
+        verify(first,never()).publish(asList(ready));
+        verify(first,never()).publish(asList(active));
+        verify(second).publish(asList(ready));
+        verify(second).publish(asList(active));
+        verify(outbox).removeEvents(batch);
+    }
+    
+}
@@ -1,15 +1,34 @@
 package io.leitstand.jobs.model;
 
+import static io.leitstand.jobs.model.JobEventLoop.LEADER_ELECTION;
+import static io.leitstand.jobs.model.JobEventLoop.LEASE;
+import static io.leitstand.jobs.model.JobEventLoop.WAKEUP;
+import static io.leitstand.jobs.service.JobId.randomJobId;
+import static java.lang.Boolean.TRUE;
+import static java.lang.System.clearProperty;
+import static java.lang.System.setProperty;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.Date;
+
 import javax.enterprise.concurrent.ManagedExecutorService;
 
 import org.junit.After;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
@@ -20,18 +39,28 @@ public class JobEventLoopTest {
     @Mock
     private Pause pause;
     
+    @Mock
+    private Pause signal;
+    
     @Mock
     private ManagedExecutorService wm;
     
     @Mock
     private JobScheduler scheduler;
     
+    @Mock
+    private LeaseService leases;
+    
+    @Mock
+    private TaskExpiryManager expiry;
+    
     @InjectMocks
     private JobEventLoop loop = new JobEventLoop();
     
     @After
     public void stopEventLoop() {
         loop.stopEventLoop();
+        clearProperty(LEADER_ELECTION);
     }
     
     @Test
@@ -73,4 +102,120 @@ public class JobEventLoopTest {
         verify(pause).reset();
     }
     
+    @Test
+    public void run_reconciliation_when_lease_is_acquired() throws InterruptedException {
+        setProperty(LEADER_ELECTION, "true");
+        when(leases.acquireLease(eq(LEASE), anyString(), anyLong())).thenReturn(TRUE);
+        when(scheduler.startScheduledJobs()).thenReturn(1);
+        loop.onStartup();
+        
+        loop.scheduleJobs();
+        verify(scheduler).reconcileJobStates();
+        assertTrue(loop.getStatus().getLeader());
+        assertNotNull(loop.getStatus().getNode());
+    }
+    
+    @Test
+    public void skip_reconciliation_when_lease_is_owned_by_other_node() throws InterruptedException {
+        setProperty(LEADER_ELECTION, "true");
+        loop.onStartup();
+        
+        loop.scheduleJobs();
+        verify(scheduler,never()).reconcileJobStates();
+        verify(scheduler,never()).markTasksEligibleForExecution();
+        verify(pause).sleep();
+        assertFalse(loop.getStatus().getLeader());
+    }
+    
+    @Test
+    public void leader_checks_for_wakeup_signal_while_idle() throws InterruptedException {
+        setProperty(LEADER_ELECTION, "true");
+        when(leases.acquireLease(eq(LEASE), anyString(), anyLong())).thenReturn(TRUE);
+        when(leases.consumeSignal(WAKEUP)).thenReturn(false, false, true);
+        loop.onStartup();
+        
+        loop.scheduleJobs();
+        verify(leases,times(3)).consumeSignal(WAKEUP);
+        verify(signal,times(2)).sleep();
+        verify(pause,never()).sleep();
+    }
+    
+    @Test
+    public void signal_leader_when_job_is_ready() throws InterruptedException {
+        setProperty(LEADER_ELECTION, "true");
+        loop.onStartup();
+        
+        loop.onJobReady(new JobReadyEvent(randomJobId()));
+        verify(leases).raiseSignal(eq(WAKEUP), anyString());
+        verify(pause,never()).wakeup();
+    }
+    
+    @Test
+    public void wakeup_event_loop_when_job_is_ready_without_leader_election() {
+        loop.onJobReady(new JobReadyEvent(randomJobId()));
+        verify(pause).wakeup();
+        verify(leases,never()).raiseSignal(anyString(), anyString());
+    }
+    
+    @Test
+    public void release_lease_on_shutdown() throws InterruptedException {
+        setProperty(LEADER_ELECTION, "true");
+        when(leases.acquireLease(eq(LEASE), anyString(), anyLong())).thenReturn(TRUE);
+        when(scheduler.startScheduledJobs()).thenReturn(1);
+        loop.onStartup();
+        loop.scheduleJobs();
+        
+        loop.onShutdown();
+        verify(leases).releaseLease(eq(LEASE), anyString());
+    }
+    
+    @Test
+    public void do_not_report_leadership_without_leader_election() {
+        loop.startEventLoop();
+        assertNull(loop.getStatus().getLeader());
+    }
+    
+    @Test
+    public void reconcile_job_states_before_releasing_tasks() throws InterruptedException {
+        loop.scheduleJobs();
+        InOrder order = inOrder(scheduler);
+        order.verify(scheduler).reconcileJobStates();
+        order.verify(scheduler).startScheduledJobs();
+        order.verify(scheduler).markTasksEligibleForExecution();
+    }
+    
+    @Test
+    public void compact_task_state_counts_before_reconciling_job_states() throws InterruptedException {
+        loop.scheduleJobs();
+        InOrder order = inOrder(scheduler);
+        order.verify(scheduler).compactTaskStateCounts();
+        order.verify(scheduler).reconcileJobStates();
+    }
+    
+    @Test
+    public void skip_compaction_when_lease_is_owned_by_other_node() throws InterruptedException {
+        setProperty(LEADER_ELECTION, "true");
+        loop.onStartup();
+        
+        loop.scheduleJobs();
+        verify(scheduler,never()).compactTaskStateCounts();
+    }
+    
+    @Test
+    public void time_out_expired_tasks_before_reconciling_job_states() throws InterruptedException {
+        loop.scheduleJobs();
+        InOrder order = inOrder(expiry, scheduler);
+        order.verify(expiry).taskTimedout(any(Date.class));
+        order.verify(scheduler).reconcileJobStates();
+    }
+    
+    @Test
+    public void dont_pause_loop_when_more_tasks_may_have_expired() throws InterruptedException {
+        when(expiry.taskTimedout(any(Date.class))).thenReturn(TaskExpiryManager.MAX_EXPIRED_TASKS);
+        
+        loop.scheduleJobs();
+        verify(pause,never()).sleep();
+        verify(pause).reset();
+    }
+    
 }
@@ -41,10 +41,11 @@ import static org.mockito.Mockito.when;
 
 import java.util.Date;
 
+import javax.enterprise.event.Event;
+
 import org.junit.Before;
 import org.junit.Test;
 
-import io.leitstand.commons.db.DatabaseService;
 import io.leitstand.commons.messages.Messages;
 import io.leitstand.commons.model.Repository;
 import io.leitstand.inventory.service.ElementName;
@@ -145,11 +146,13 @@ public class JobServiceIT extends JobsIT{
 		// Create job service and IT job definition.
 		jobs = new DefaultJobService(repository, 
 		                             new JobProvider(repository),
-									 mock(DatabaseService.class),
+									 getDatabase(),
 									 inventory,    
 									 new JobEditor(repository),
 									 mock(Messages.class),
-									 userContext);
+									 userContext,
+									 mock(Event.class),
+									 mock(Event.class));
 
 		start 	 = canaryTask(START,elementName("start"));
 	 	split 	 = task(SPLIT);
@@ -195,7 +198,11 @@ public class JobServiceIT extends JobsIT{
 		
 		this.tasks = new DefaultJobTaskService(repository, 
 		                                       new JobProvider(repository),
-		                                       new TaskProcessingService(discovery));
+		                                       new TaskProcessingService(discovery,
+		                                                                 repository,
+		                                                                 getDatabase(),
+		                                                                 mock(Event.class),
+		                                                                 mock(Event.class)));
 		
 	}
 	
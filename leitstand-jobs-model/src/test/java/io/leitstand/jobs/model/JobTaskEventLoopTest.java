@@ -1,23 +1,52 @@
 package io.leitstand.jobs.model;
 
+import static io.leitstand.jobs.model.ExecutableTask.executableTask;
+import static io.leitstand.jobs.model.JobTaskEventLoop.DEDICATED_EXECUTOR;
+import static io.leitstand.jobs.model.JobTaskEventLoop.MANAGED_EXECUTOR;
+import static io.leitstand.jobs.model.JobTaskEventLoop.VIRTUAL_THREAD_EXECUTOR;
+import static io.leitstand.jobs.model.JobTaskEventLoop.createIoTaskExecutor;
+import static io.leitstand.jobs.model.TaskResult.completed;
+import static io.leitstand.jobs.model.TaskResult.failed;
+import static io.leitstand.jobs.service.State.FAILED;
 import static io.leitstand.jobs.service.TaskId.randomTaskId;
+import static io.leitstand.jobs.service.TaskType.taskType;
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 
 import javax.enterprise.concurrent.ManagedExecutorService;
 
 import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.invocation.InvocationOnMock;
@@ -37,14 +66,39 @@ public class JobTaskEventLoopTest {
     private ManagedExecutorService wm;
     
     @Mock
-    private AtomicInteger workers = new AtomicInteger();
+    private TaskHandlerPool handlers;
+    
+    @Mock
+    private TaskBulkheads bulkheads;
+    
+    @Mock
+    private TaskShards shards;
+    
+    @Mock
+    private TaskRateLimits rateLimits;
     
     @Mock
     private TaskSchedulerService scheduler;
     
+    @Mock
+    private TaskProcessingService service;
+    
+    @Mock
+    private TaskOutcomeService taskOutcomes;
+    
     @InjectMocks
     private JobTaskEventLoop loop = new JobTaskEventLoop();
     
+    @Captor
+    private ArgumentCaptor<Map<TaskId,CompletableFuture<TaskResult>>> outcomes;
+    
+    private List<Job_Task> batch = new ArrayList<>();
+    
+    @Before
+    public void noPendingRetries() {
+        when(scheduler.getNextRetryDelayMillis()).thenReturn(null);
+    }
+    
     @After
     public void stopEventLoop() {
         loop.stopEventLoop();
@@ -72,25 +126,258 @@ public class JobTaskEventLoopTest {
     
     @Test
     public void pause_loop_when_no_tasks_are_eligible_for_execution() throws InterruptedException {
-        workers.set(1);
-        when(scheduler.fetchExecutableTasks(1)).thenReturn(emptyList());
+        when(handlers.available()).thenReturn(1);
+        when(scheduler.fetchExecutableTasks(1,bulkheads,shards,rateLimits)).thenReturn(emptyList());
         
         loop.scheduleTasks();
         verify(pause).sleep();
         verify(pause,never()).reset();
     }
     
+    @Test
+    public void wake_up_loop_when_earliest_retry_is_due() throws InterruptedException {
+        when(handlers.available()).thenReturn(1);
+        when(scheduler.fetchExecutableTasks(1,bulkheads,shards,rateLimits)).thenReturn(emptyList());
+        when(scheduler.getNextRetryDelayMillis()).thenReturn(250L);
+        
+        loop.scheduleTasks();
+        verify(pause).sleep(250L);
+        verify(pause,never()).sleep();
+    }
+    
+    @Test
+    public void poll_with_minimum_wait_time_while_tasks_are_throttled() throws InterruptedException {
+        when(handlers.available()).thenReturn(1);
+        when(scheduler.fetchExecutableTasks(1,bulkheads,shards,rateLimits)).thenReturn(emptyList());
+        when(rateLimits.isThrottled()).thenReturn(true);
+        
+        loop.scheduleTasks();
+        verify(pause).reset();
+        verify(pause).sleep();
+    }
+    
+    @Test
+    public void remove_idle_rate_limit_buckets() throws InterruptedException {
+        when(rateLimits.isEnabled()).thenReturn(true);
+        
+        loop.scheduleTasks();
+        loop.scheduleTasks();
+        verify(scheduler,times(1)).removeIdleBuckets(rateLimits);
+    }
+    
     @Test
     public void schedule_task_and_reset_pause() throws InterruptedException  {
         TaskId task = randomTaskId();
-        workers.set(1);
-        when(scheduler.fetchExecutableTasks(1)).thenReturn(asList(task));
+        when(handlers.available()).thenReturn(1);
+        when(scheduler.fetchExecutableTasks(1,bulkheads,shards,rateLimits)).thenReturn(asList(executableTask(task,taskType("test"))));
         executeRunnable().when(wm).execute(any(Runnable.class));
         
         loop.scheduleTasks();
         verify(pause).reset();
         verify(pause,never()).sleep();
         verify(scheduler).executeTask(task);
+        verify(handlers).acquire();
+        verify(handlers).release(anyLong(), eq(false));
+    }
+    
+    @Test
+    public void release_bulkhead_capacity_after_task_execution() throws InterruptedException  {
+        TaskId task = randomTaskId();
+        when(handlers.available()).thenReturn(1);
+        when(scheduler.fetchExecutableTasks(1,bulkheads,shards,rateLimits)).thenReturn(asList(executableTask(task,taskType("test"))));
+        executeRunnable().when(wm).execute(any(Runnable.class));
+        
+        loop.scheduleTasks();
+        verify(bulkheads).release(task);
+    }
+    
+    @Test
+    public void acquire_bulkhead_capacity_after_tasks_have_been_claimed() throws InterruptedException  {
+        TaskId task = randomTaskId();
+        when(handlers.available()).thenReturn(1);
+        when(scheduler.fetchExecutableTasks(1,bulkheads,shards,rateLimits)).thenReturn(asList(executableTask(task,taskType("test"))));
+        
+        loop.scheduleTasks();
+        InOrder order = inOrder(scheduler, bulkheads);
+        order.verify(scheduler).fetchExecutableTasks(1,bulkheads,shards,rateLimits);
+        order.verify(bulkheads).acquire(taskType("test"), task);
+    }
+    
+    @Test
+    public void report_failed_task_execution_to_handler_pool() throws InterruptedException  {
+        TaskId task = randomTaskId();
+        when(handlers.available()).thenReturn(1);
+        when(scheduler.fetchExecutableTasks(1,bulkheads,shards,rateLimits)).thenReturn(asList(executableTask(task,taskType("test"))));
+        when(scheduler.executeTask(task)).thenReturn(FAILED);
+        executeRunnable().when(wm).execute(any(Runnable.class));
+        
+        loop.scheduleTasks();
+        verify(handlers).release(anyLong(), eq(true));
+    }
+    
+    @Test
+    public void report_handler_pool_state_in_event_loop_status() {
+        when(handlers.getLimit()).thenReturn(10);
+        when(handlers.getInFlight()).thenReturn(3);
+        when(scheduler.countExecutableTasks()).thenReturn(7);
+        
+        loop.startEventLoop();
+        EventLoopStatus status = loop.getStatus();
+        assertEquals(Integer.valueOf(10),status.getHandlerLimit());
+        assertEquals(Integer.valueOf(3),status.getHandlersInFlight());
+        assertEquals(Integer.valueOf(7),status.getQueueDepth());
+    }
+    
+    @Test
+    public void run_io_bound_tasks_on_managed_executor_by_default() {
+        assertNull(createIoTaskExecutor(MANAGED_EXECUTOR));
+    }
+    
+    @Test
+    public void create_dedicated_io_task_executor() {
+        ExecutorService executor = createIoTaskExecutor(DEDICATED_EXECUTOR);
+        assertNotNull(executor);
+        executor.shutdown();
+    }
+    
+    @Test
+    public void create_virtual_thread_io_task_executor_or_fall_back_to_dedicated_executor() {
+        ExecutorService executor = createIoTaskExecutor(VIRTUAL_THREAD_EXECUTOR);
+        assertNotNull(executor);
+        executor.shutdown();
+    }
+    
+    @Test
+    public void wakeup_loop_when_tasks_are_ready() {
+        loop.onTasksReady(new TasksReadyEvent(1));
+        verify(pause).wakeup();
+    }
+
+    @Test
+    public void invoke_task_processors_of_batch_individually_and_persist_outcomes_in_one_transaction() throws InterruptedException {
+        Job_Task first = batchTask();
+        Job_Task second = batchTask();
+        when(service.invokeTaskProcessor(first)).thenReturn(completedFuture(completed()));
+        when(service.invokeTaskProcessor(second)).thenReturn(completedFuture(completed()));
+        
+        loop.scheduleTasks();
+        verify(service).invokeTaskProcessor(first);
+        verify(service).invokeTaskProcessor(second);
+        verify(scheduler,never()).executeTask(any(TaskId.class));
+        verify(scheduler).completeTasks(anyCollectionOf(Job_Task.class), outcomes.capture());
+        assertEquals(2,outcomes.getValue().size());
+        verify(handlers,times(2)).release(anyLong(), eq(false));
+        verify(bulkheads).release(first.getTaskId());
+        verify(bulkheads).release(second.getTaskId());
+        verify(pause).wakeup();
+    }
+    
+    @Test
+    public void dispatch_each_task_processor_of_batch_to_the_executor() throws InterruptedException {
+        Job_Task first = batchTask();
+        Job_Task second = batchTask();
+        when(service.invokeTaskProcessor(first)).thenReturn(completedFuture(completed()));
+        when(service.invokeTaskProcessor(second)).thenReturn(completedFuture(completed()));
+        
+        loop.scheduleTasks();
+        // One batch, two task processor invocations and one outcome transaction.
+        verify(wm,times(4)).execute(any(Runnable.class));
+    }
+    
+    @Test
+    public void report_failed_task_of_batch_to_handler_pool() throws InterruptedException {
+        Job_Task first = batchTask();
+        Job_Task second = batchTask();
+        when(service.invokeTaskProcessor(first)).thenReturn(completedFuture(completed()));
+        when(service.invokeTaskProcessor(second)).thenReturn(completedFuture(failed()));
+        
+        loop.scheduleTasks();
+        verify(handlers).release(anyLong(), eq(false));
+        verify(handlers).release(anyLong(), eq(true));
+    }
+    
+    @Test
+    public void persist_outcomes_individually_when_batch_transaction_fails() throws InterruptedException {
+        Job_Task first = batchTask();
+        Job_Task second = batchTask();
+        TaskResult result = completed();
+        when(service.invokeTaskProcessor(first)).thenReturn(completedFuture(result));
+        when(service.invokeTaskProcessor(second)).thenReturn(completedFuture(result));
+        doThrow(new IllegalStateException("unit-test")).when(scheduler).completeTasks(anyCollectionOf(Job_Task.class), anyMap());
+        
+        loop.scheduleTasks();
+        verify(taskOutcomes).completeTask(first, result, null);
+        verify(taskOutcomes).completeTask(second, result, null);
+        verify(handlers,times(2)).release(anyLong(), eq(false));
+    }
+    
+    @Test
+    public void execute_tasks_individually_when_batch_cannot_be_loaded() throws InterruptedException {
+        TaskId first = randomTaskId();
+        TaskId second = randomTaskId();
+        loop.batchSize = 2;
+        when(handlers.available()).thenReturn(2);
+        when(scheduler.fetchExecutableTasks(2,bulkheads,shards,rateLimits)).thenReturn(asList(executableTask(first,taskType("test")),
+                                                                                             executableTask(second,taskType("test"))));
+        when(scheduler.startTasks(asList(first,second))).thenThrow(new IllegalStateException("unit-test"));
+        executeRunnable().when(wm).execute(any(Runnable.class));
+        
+        loop.scheduleTasks();
+        verify(scheduler).executeTask(first);
+        verify(scheduler).executeTask(second);
+        verify(handlers,times(2)).release(anyLong(), eq(false));
+    }
+    
+    @Test
+    public void complete_asynchronous_task_of_batch_individually() throws InterruptedException {
+        Job_Task first = batchTask();
+        Job_Task second = batchTask();
+        CompletableFuture<TaskResult> pending = new CompletableFuture<>();
+        when(service.invokeTaskProcessor(first)).thenReturn(completedFuture(completed()));
+        when(service.invokeTaskProcessor(second)).thenReturn(pending);
+        
+        loop.scheduleTasks();
+        verify(scheduler).awaitOutcome(second.getTaskId(), pending);
+        verify(scheduler).completeTasks(anyCollectionOf(Job_Task.class), outcomes.capture());
+        assertEquals(1,outcomes.getValue().size());
+        assertTrue(outcomes.getValue().containsKey(first.getTaskId()));
+        verify(handlers,times(2)).release(anyLong(), eq(false));
+    }
+    
+    @Test
+    public void release_handler_of_removed_task_of_batch() throws InterruptedException {
+        Job_Task first = batchTask();
+        TaskId taskId = first.getTaskId();
+        TaskId removed = randomTaskId();
+        loop.batchSize = 2;
+        when(handlers.available()).thenReturn(2);
+        when(scheduler.fetchExecutableTasks(2,bulkheads,shards,rateLimits)).thenReturn(asList(executableTask(taskId,taskType("test")),
+                                                                                             executableTask(removed,taskType("test"))));
+        when(scheduler.startTasks(asList(taskId,removed))).thenReturn(asList(first));
+        when(service.invokeTaskProcessor(first)).thenReturn(completedFuture(completed()));
+        
+        loop.scheduleTasks();
+        verify(bulkheads).release(removed);
+        verify(handlers).release(0L, true);
+    }
+    
+    // Adds a task to a batch of claimed tasks executed by the next scheduleTasks invocation.
+    private Job_Task batchTask() {
+        Job_Task task = mock(Job_Task.class);
+        when(task.getTaskId()).thenReturn(randomTaskId());
+        batch.add(task);
+        List<TaskId> taskIds = new ArrayList<>();
+        List<ExecutableTask> tasks = new ArrayList<>();
+        for(Job_Task t : batch) {
+            taskIds.add(t.getTaskId());
+            tasks.add(executableTask(t.getTaskId(),taskType("test")));
+        }
+        loop.batchSize = batch.size();
+        when(handlers.available()).thenReturn(batch.size());
+        when(scheduler.fetchExecutableTasks(batch.size(),bulkheads,shards,rateLimits)).thenReturn(tasks);
+        when(scheduler.startTasks(taskIds)).thenReturn(new ArrayList<>(batch));
+        executeRunnable().when(wm).execute(any(Runnable.class));
+        return task;
     }
 
     private Stubber executeRunnable() {
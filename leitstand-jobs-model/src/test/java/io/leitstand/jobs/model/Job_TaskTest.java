@@ -1,13 +1,16 @@
 package io.leitstand.jobs.model;
 
 import static io.leitstand.inventory.service.ElementId.randomElementId;
+import static io.leitstand.jobs.service.JobTaskMessage.newJobTaskMessage;
 import static io.leitstand.jobs.service.State.ACTIVE;
 import static io.leitstand.jobs.service.State.COMPLETED;
+import static io.leitstand.jobs.service.State.FAILED;
 import static io.leitstand.jobs.service.State.READY;
 import static io.leitstand.jobs.service.State.WAITING;
 import static io.leitstand.jobs.service.TaskId.randomTaskId;
 import static io.leitstand.jobs.service.TaskName.taskName;
 import static io.leitstand.jobs.service.TaskType.taskType;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
@@ -72,6 +75,46 @@ public class Job_TaskTest {
         assertFalse(task.isEligibleForExecution());   
     }
     
+    @Test
+    public void adding_a_predecessor_increments_pending_predecessors() {
+        Job_Task predecessor = new Job_Task(job,
+                                            TASK_TYPE,
+                                            randomTaskId(),
+                                            TASK_NAME);
+        predecessor.addSuccessor(task);
+        assertEquals(1,task.getPendingPredecessors());
+    }
+    
+    @Test
+    public void removing_a_predecessor_decrements_pending_predecessors() {
+        Job_Task predecessor = new Job_Task(job,
+                                            TASK_TYPE,
+                                            randomTaskId(),
+                                            TASK_NAME);
+        predecessor.addSuccessor(task);
+        predecessor.removeSuccessor(task);
+        assertEquals(0,task.getPendingPredecessors());
+    }
+    
+    @Test
+    public void reset_pending_predecessors_ignores_completed_predecessors() {
+        Job_Task completed = new Job_Task(job,
+                                          TASK_TYPE,
+                                          randomTaskId(),
+                                          TASK_NAME);
+        completed.setTaskState(COMPLETED);
+        completed.addSuccessor(task);
+        Job_Task failed = new Job_Task(job,
+                                       TASK_TYPE,
+                                       randomTaskId(),
+                                       TASK_NAME);
+        failed.setTaskState(FAILED);
+        failed.addSuccessor(task);
+        
+        task.resetPendingPredecessors();
+        assertEquals(1,task.getPendingPredecessors());
+    }
+    
     @Test
     public void task_with_no_successor_is_not_declared_as_fork_task() {
         assertFalse(task.isForkTask());
@@ -104,5 +147,17 @@ public class Job_TaskTest {
         assertTrue(task.isElementTask());
     }
     
+    @Test
+    public void copy_messages_added_by_task_processor() {
+        task.addMessage(newJobTaskMessage().withMessage("loaded"));
+        Job_Task executed = new Job_Task(job, TASK_TYPE, TASK_ID, TASK_NAME);
+        executed.addMessage(newJobTaskMessage().withMessage("loaded"));
+        executed.addMessage(newJobTaskMessage().withMessage("processed"));
+        
+        task.copyProcessorChanges(executed);
+        
+        assertEquals(2, task.getMessages().size());
+        assertEquals("processed", task.getMessages().get(1).getMessage());
+    }
     
 }
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.jobs.model;
+
+import static io.leitstand.jobs.model.LoggingJobEventPublisher.EVENTS_LOG;
+import static io.leitstand.jobs.model.LoggingJobEventPublisher.describe;
+import static io.leitstand.jobs.service.JobId.jobId;
+import static io.leitstand.jobs.service.State.ACTIVE;
+import static io.leitstand.jobs.service.State.COMPLETED;
+import static io.leitstand.jobs.service.TaskId.taskId;
+import static io.leitstand.jobs.service.TaskName.taskName;
+import static java.lang.System.clearProperty;
+import static java.lang.System.setProperty;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class LoggingJobEventPublisherTest {
+    
+    private static final String JOB_ID = "7f4e2a36-2b1c-4bb4-9e4b-0d5b1f0a9c11";
+    private static final String TASK_ID = "3c1d9a52-58b7-4c4e-a0a6-7f2e9b6d1e20";
+    
+    @After
+    public void clearProperties() {
+        clearProperty(EVENTS_LOG);
+    }
+    
+    @Test
+    public void publisher_is_disabled_by_default() {
+        assertFalse(new LoggingJobEventPublisher().isEnabled());
+    }
+    
+    @Test
+    public void enable_publisher_by_system_property() {
+        setProperty(EVENTS_LOG, "true");
+        assertTrue(new LoggingJobEventPublisher().isEnabled());
+    }
+    
+    @Test
+    public void describe_job_state_change() {
+        assertEquals("job="+JOB_ID+" job_state=ACTIVE",
+                     describe(new JobStateChangedEvent(jobId(JOB_ID), ACTIVE)));
+    }
+    
+    @Test
+    public void describe_task_state_change() {
+        assertEquals("job="+JOB_ID+" task="+TASK_ID+" task_name=deploy task_state=COMPLETED",
+                     describe(new TaskStateChangedEvent(jobId(JOB_ID), 
+                                                        taskId(TASK_ID), 
+                                                        taskName("deploy"), 
+                                                        COMPLETED)));
+    }
+    
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.jobs.model;
+
+import static io.leitstand.jobs.service.JobApplication.jobApplication;
+import static io.leitstand.jobs.service.JobId.randomJobId;
+import static io.leitstand.jobs.service.JobName.jobName;
+import static io.leitstand.jobs.service.JobType.jobType;
+import static io.leitstand.jobs.service.State.COMPLETED;
+import static io.leitstand.jobs.service.State.READY;
+import static io.leitstand.jobs.service.State.WAITING;
+import static io.leitstand.jobs.service.TaskId.randomTaskId;
+import static io.leitstand.jobs.service.TaskName.taskName;
+import static io.leitstand.jobs.service.TaskType.taskType;
+import static io.leitstand.security.auth.UserName.userName;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Iterator;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Traverses a serial flow of 100,000 tasks to verify that all job graph traversals are stack-safe.
+ */
+public class LongSerialFlowTest {
+
+    private static final int TASKS = 100_000;
+    
+    private static Job job;
+    private static Job_Task last;
+    
+    @BeforeClass
+    public static void createSerialFlow() {
+        job = new Job(jobApplication("app"),
+                      jobType("rollout"),
+                      randomJobId(),
+                      jobName("serial rollout"),
+                      userName("owner"));
+        Job_Task start = new Job_Task(1L, job, taskType("noop"), randomTaskId(), taskName("start"));
+        start.setTaskState(COMPLETED);
+        job.setStart(start);
+        Job_Task prev = start;
+        for(long id = 2; id <= TASKS; id++) {
+            Job_Task task = new Job_Task(id, job, taskType("upgrade"), randomTaskId(), taskName("task-"+id));
+            task.setTaskState(id == 2 ? READY : WAITING);
+            prev.addSuccessor(task);
+            prev = task;
+        }
+        last = prev;
+    }
+    
+    @Test
+    public void order_tasks_of_long_serial_flow() {
+        Iterator<Job_Task> tasks = job.getOrderedTasks().iterator();
+        int count = 0;
+        Job_Task task = null;
+        while(tasks.hasNext()) {
+            task = tasks.next();
+            count++;
+        }
+        assertEquals(TASKS, count);
+        assertSame(last, task);
+    }
+    
+    @Test
+    public void snapshot_long_serial_flow() {
+        JobDag dag = JobDag.snapshot(job);
+        assertEquals(TASKS, dag.getSize());
+        assertEquals(1, dag.getTaskCount(COMPLETED));
+        assertEquals(1, dag.getTaskCount(READY));
+        assertEquals(TASKS-2, dag.getTaskCount(WAITING));
+        assertSame(last, dag.getTask(TASKS-1));
+    }
+    
+    @Test
+    public void visit_long_serial_flow() {
+        int[] visits = new int[2];
+        new JobGraph(job).accept(new JobGraphVisitor() {
+            @Override
+            public void visitNode(Job_Task task) {
+                visits[0]++;
+            }
+            @Override
+            public void visitEdge(Job_Task_Transition transition) {
+                visits[1]++;
+            }
+        });
+        assertEquals(TASKS, visits[0]);
+        assertEquals(TASKS-1, visits[1]);
+    }
+    
+}
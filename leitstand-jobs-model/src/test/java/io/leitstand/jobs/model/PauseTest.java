@@ -0,0 +1,59 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.jobs.model;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PauseTest {
+
+    @Test
+    public void signal_sent_before_sleep_is_not_lost() throws InterruptedException {
+        Pause pause = new Pause(30, SECONDS);
+        pause.wakeup();
+        long start = System.currentTimeMillis();
+        pause.sleep();
+        assertTrue(System.currentTimeMillis() - start < 1000);
+    }
+    
+    @Test
+    public void wakeup_interrupts_sleep() throws InterruptedException {
+        Pause pause = new Pause(30, SECONDS);
+        Thread waker = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            pause.wakeup();
+        });
+        long start = System.currentTimeMillis();
+        waker.start();
+        pause.sleep();
+        assertTrue(System.currentTimeMillis() - start < 1000);
+    }
+    
+    @Test
+    public void sleep_no_longer_than_timeout() throws InterruptedException {
+        Pause pause = new Pause(30, SECONDS);
+        long start = System.currentTimeMillis();
+        pause.sleep(10);
+        assertTrue(System.currentTimeMillis() - start < 1000);
+    }
+    
+}
@@ -34,11 +34,12 @@ import static org.mockito.Mockito.when;
 
 import java.util.List;
 
+import javax.enterprise.event.Event;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
-import io.leitstand.commons.db.DatabaseService;
 import io.leitstand.commons.messages.Messages;
 import io.leitstand.commons.model.Repository;
 import io.leitstand.jobs.service.JobApplication;
@@ -112,11 +113,13 @@ public class RunJobIT extends JobsIT{
 		// Create job service and IT job definition.
 		jobs = new DefaultJobService(repository, 
 		                             new JobProvider(repository),
-									 mock(DatabaseService.class),
+									 getDatabase(),
 									 mock(InventoryClient.class),
 									 new JobEditor(repository),
 									 mock(Messages.class),
-									 userContext);
+									 userContext,
+									 mock(Event.class),
+									 mock(Event.class));
 
 		jobId = randomJobId();
 		start 	 = task(START);
@@ -157,7 +160,11 @@ public class RunJobIT extends JobsIT{
 		when(discovery.findElementTaskProcessor(any(Job_Task.class))).thenReturn(processor);
 		tasks = new DefaultJobTaskService(repository,
                                           new JobProvider(repository),
-										  new TaskProcessingService(discovery));
+										  new TaskProcessingService(discovery,
+										                            repository,
+										                            getDatabase(),
+										                            mock(Event.class),
+										                            mock(Event.class)));
 		
 	}
 	
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.jobs.model;
+
+import static io.leitstand.jobs.model.TaskBulkheads.bulkheads;
+import static io.leitstand.jobs.model.TaskBulkheads.noBulkheads;
+import static io.leitstand.jobs.service.TaskId.randomTaskId;
+import static io.leitstand.jobs.service.TaskType.taskType;
+import static java.util.Collections.singletonMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import io.leitstand.jobs.service.TaskId;
+import io.leitstand.jobs.service.TaskType;
+
+public class TaskBulkheadsTest {
+    
+    private static final TaskType SLOW_TASK = taskType("slow");
+    private static final TaskType FAST_TASK = taskType("fast");
+
+    @Test
+    public void no_bulkheads_have_no_partitions() {
+        TaskBulkheads bulkheads = noBulkheads();
+        assertTrue(bulkheads.getTaskTypes().isEmpty());
+        assertEquals(0, bulkheads.available(SLOW_TASK));
+    }
+    
+    @Test
+    public void acquire_occupies_partition_capacity() {
+        TaskBulkheads bulkheads = bulkheads(singletonMap(SLOW_TASK, 2));
+        bulkheads.acquire(SLOW_TASK, randomTaskId());
+        assertEquals(1, bulkheads.available(SLOW_TASK));
+        assertEquals(1, bulkheads.getInFlight(SLOW_TASK));
+        bulkheads.acquire(SLOW_TASK, randomTaskId());
+        assertEquals(0, bulkheads.available(SLOW_TASK));
+    }
+    
+    @Test
+    public void release_frees_partition_capacity() {
+        TaskBulkheads bulkheads = bulkheads(singletonMap(SLOW_TASK, 1));
+        TaskId task = randomTaskId();
+        bulkheads.acquire(SLOW_TASK, task);
+        bulkheads.release(task);
+        assertEquals(1, bulkheads.available(SLOW_TASK));
+        assertEquals(0, bulkheads.getInFlight(SLOW_TASK));
+    }
+    
+    @Test
+    public void release_ignores_unpartitioned_tasks() {
+        TaskBulkheads bulkheads = bulkheads(singletonMap(SLOW_TASK, 1));
+        bulkheads.acquire(SLOW_TASK, randomTaskId());
+        bulkheads.release(randomTaskId());
+        assertEquals(0, bulkheads.available(SLOW_TASK));
+        assertEquals(0, bulkheads.available(FAST_TASK));
+    }
+    
+    @Test
+    public void acquire_ignores_unpartitioned_tasks() {
+        TaskBulkheads bulkheads = bulkheads(singletonMap(SLOW_TASK, 1));
+        bulkheads.acquire(FAST_TASK, randomTaskId());
+        assertEquals(1, bulkheads.available(SLOW_TASK));
+        assertEquals(0, bulkheads.getInFlight(FAST_TASK));
+    }
+    
+}
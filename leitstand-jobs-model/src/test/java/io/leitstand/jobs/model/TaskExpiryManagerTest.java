@@ -0,0 +1,125 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.jobs.model;
+
+import static io.leitstand.jobs.model.TaskRetryPolicy.NO_RETRY;
+import static io.leitstand.jobs.model.TaskRetryPolicy.newTaskRetryPolicy;
+import static io.leitstand.jobs.service.ReasonCode.JOB0301E_TASK_TIMEOUT;
+import static io.leitstand.jobs.service.State.TIMEOUT;
+import static io.leitstand.jobs.service.TaskId.randomTaskId;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.Date;
+
+import javax.enterprise.event.Event;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.leitstand.commons.db.DatabaseService;
+import io.leitstand.commons.db.ResultSetMapping;
+import io.leitstand.commons.db.StatementPreparator;
+import io.leitstand.commons.model.Query;
+import io.leitstand.commons.model.Repository;
+import io.leitstand.jobs.service.JobTaskMessage;
+import io.leitstand.jobs.service.TaskId;
+
+public class TaskExpiryManagerTest {
+
+    private DatabaseService db;
+    private Repository repository;
+    private TaskProcessorDiscoveryService processors;
+    private Event<JobEvent> jobEvents;
+    private TaskExpiryManager manager;
+    
+    @SuppressWarnings("unchecked")
+    @Before
+    public void initManager() {
+        db = mock(DatabaseService.class);
+        repository = mock(Repository.class);
+        processors = mock(TaskProcessorDiscoveryService.class);
+        jobEvents = mock(Event.class);
+        when(processors.getRetryPolicy(any(Job_Task.class))).thenReturn(NO_RETRY);
+        manager = new TaskExpiryManager(db, repository, processors, jobEvents);
+    }
+    
+    @SuppressWarnings("unchecked")
+    @Test
+    public void time_out_expired_tasks_and_record_timeout_in_task_journal() {
+        Job_Task task = expiredTask();
+        
+        assertEquals(1, manager.taskTimedout(new Date()));
+        verify(task).setTaskState(TIMEOUT);
+        verify(task).addMessage(any(JobTaskMessage.Builder.class));
+        verify(jobEvents).fire(isA(TaskStateChangedEvent.class));
+    }
+    
+    @SuppressWarnings("unchecked")
+    @Test
+    public void retry_expired_task_when_permitted_by_retry_policy() {
+        Job_Task task = expiredTask();
+        when(processors.getRetryPolicy(task)).thenReturn(newTaskRetryPolicy()
+                                                         .withMaxAttempts(2)
+                                                         .withRetryableReasons(JOB0301E_TASK_TIMEOUT)
+                                                         .build());
+        Date notBefore = new Date();
+        when(db.getSingleResult(any(StatementPreparator.class), any(ResultSetMapping.class))).thenReturn(notBefore);
+        
+        assertEquals(1, manager.taskTimedout(new Date()));
+        verify(task).retry(notBefore);
+        verify(task,never()).setTaskState(TIMEOUT);
+        verify(jobEvents).fire(isA(TaskStateChangedEvent.class));
+    }
+    
+    @SuppressWarnings("unchecked")
+    @Test
+    public void do_nothing_when_no_task_has_expired() {
+        when(db.executeQuery(any(StatementPreparator.class), any(ResultSetMapping.class))).thenReturn(emptyList());
+        
+        assertEquals(0, manager.taskTimedout(new Date()));
+        verifyZeroInteractions(repository,jobEvents);
+    }
+    
+    @SuppressWarnings("unchecked")
+    @Test
+    public void do_not_time_out_tasks_completed_or_timed_out_concurrently() {
+        // The guarded update returns no task if all expired tasks have been completed or are locked by another transaction.
+        when(db.executeQuery(any(StatementPreparator.class), any(ResultSetMapping.class))).thenReturn(emptyList());
+        
+        manager.taskTimedout(new Date());
+        verify(repository,never()).execute(any(Query.class));
+    }
+    
+    @SuppressWarnings("unchecked")
+    private Job_Task expiredTask() {
+        TaskId taskId = randomTaskId();
+        Job_Task task = mock(Job_Task.class);
+        when(task.getTaskId()).thenReturn(taskId);
+        when(db.executeQuery(any(StatementPreparator.class), any(ResultSetMapping.class))).thenReturn(asList(taskId));
+        when(repository.execute(any(Query.class))).thenReturn(asList(task));
+        return task;
+    }
+    
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.jobs.model;
+
+import static io.leitstand.jobs.model.TaskHandlerPool.adaptivePool;
+import static io.leitstand.jobs.model.TaskHandlerPool.fixedPool;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TaskHandlerPoolTest {
+
+    @Test
+    public void fixed_pool_does_not_adapt_limit() {
+        TaskHandlerPool pool = fixedPool(10);
+        pool.acquire();
+        pool.release(60000, true);
+        assertFalse(pool.isAdaptive());
+        assertEquals(10, pool.getLimit());
+        assertEquals(10, pool.available());
+    }
+    
+    @Test
+    public void acquire_occupies_handler() {
+        TaskHandlerPool pool = fixedPool(2);
+        pool.acquire();
+        assertEquals(1, pool.getInFlight());
+        assertEquals(1, pool.available());
+        pool.acquire();
+        assertEquals(0, pool.available());
+    }
+    
+    @Test
+    public void adaptive_pool_decreases_limit_on_failure() {
+        TaskHandlerPool pool = adaptivePool(10, 1, 100, 1000);
+        pool.acquire();
+        pool.release(10, true);
+        assertTrue(pool.isAdaptive());
+        assertEquals(9, pool.getLimit());
+    }
+    
+    @Test
+    public void adaptive_pool_with_equal_bounds_is_adaptive() {
+        TaskHandlerPool pool = adaptivePool(10, 10, 10, 1000);
+        assertTrue(pool.isAdaptive());
+    }
+    
+    @Test
+    public void adaptive_pool_decreases_limit_once_per_window() {
+        TaskHandlerPool pool = adaptivePool(10, 1, 100, 1000);
+        for(int i=0; i < 5; i++) {
+            pool.acquire();
+        }
+        // The first failure decreases the limit, the failures of the four executions in flight are ignored.
+        for(int i=0; i < 5; i++) {
+            pool.release(10, true);
+        }
+        assertEquals(9, pool.getLimit());
+        
+        pool.acquire();
+        pool.release(10, true);
+        assertEquals(8, pool.getLimit());
+    }
+    
+    @Test
+    public void adaptive_pool_decreases_limit_on_high_latency() {
+        TaskHandlerPool pool = adaptivePool(10, 1, 100, 1000);
+        pool.acquire();
+        pool.release(2000, false);
+        assertEquals(9, pool.getLimit());
+    }
+    
+    @Test
+    public void adaptive_pool_does_not_fall_below_min_limit() {
+        TaskHandlerPool pool = adaptivePool(2, 2, 100, 1000);
+        pool.acquire();
+        pool.release(10, true);
+        assertEquals(2, pool.getLimit());
+    }
+    
+    @Test
+    public void adaptive_pool_increases_limit_when_utilized() {
+        TaskHandlerPool pool = adaptivePool(4, 1, 100, 1000);
+        for(int i=0; i < 4; i++) {
+            pool.acquire();
+        }
+        for(int i=0; i < 5; i++) {
+            pool.acquire();
+            pool.release(10, false);
+        }
+        assertEquals(5, pool.getLimit());
+    }
+    
+    @Test
+    public void adaptive_pool_does_not_increase_limit_when_idle() {
+        TaskHandlerPool pool = adaptivePool(4, 1, 100, 1000);
+        for(int i=0; i < 10; i++) {
+            pool.acquire();
+            pool.release(10, false);
+        }
+        assertEquals(4, pool.getLimit());
+    }
+    
+}
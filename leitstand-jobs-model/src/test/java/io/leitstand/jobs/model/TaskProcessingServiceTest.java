@@ -18,8 +18,12 @@ package io.leitstand.jobs.model;
 import static io.leitstand.jobs.model.TaskResult.active;
 import static io.leitstand.jobs.model.TaskResult.completed;
 import static io.leitstand.jobs.model.TaskResult.failed;
+import static io.leitstand.jobs.model.TaskRetryPolicy.NO_RETRY;
+import static io.leitstand.jobs.model.TaskRetryPolicy.newTaskRetryPolicy;
 import static io.leitstand.jobs.service.JobId.randomJobId;
 import static io.leitstand.jobs.service.JobName.jobName;
+import static io.leitstand.jobs.service.ReasonCode.JOB0300E_TASK_PROCESSOR_CALL_FAILED;
+import static io.leitstand.jobs.service.ReasonCode.JOB0301E_TASK_TIMEOUT;
 import static io.leitstand.jobs.service.State.ACTIVE;
 import static io.leitstand.jobs.service.State.COMPLETED;
 import static io.leitstand.jobs.service.State.CONFIRM;
@@ -27,6 +31,10 @@ import static io.leitstand.jobs.service.State.FAILED;
 import static io.leitstand.jobs.service.TaskId.randomTaskId;
 import static java.lang.Boolean.TRUE;
 import static java.util.Arrays.asList;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
@@ -34,7 +42,11 @@ import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 import java.io.StringReader;
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
+import javax.enterprise.event.Event;
 import javax.json.Json;
 import javax.json.JsonObject;
 import javax.json.JsonReader;
@@ -42,6 +54,11 @@ import javax.json.JsonReader;
 import org.junit.Before;
 import org.junit.Test;
 
+import io.leitstand.commons.db.DatabaseService;
+import io.leitstand.commons.db.ResultSetMapping;
+import io.leitstand.commons.db.StatementPreparator;
+import io.leitstand.commons.model.Repository;
+import io.leitstand.commons.model.Update;
 import io.leitstand.jobs.service.State;
 
 public class TaskProcessingServiceTest {
@@ -58,12 +75,26 @@ public class TaskProcessingServiceTest {
 	private Job_Task task;
 	private Job job;
 	private TaskProcessor processor;
+	private Repository repository;
+	private DatabaseService db;
+	private Event<TasksReadyEvent> tasksReady;
 	
+	private Event<JobEvent> jobEvents;
 	
+	
+	@SuppressWarnings("unchecked")
 	@Before
 	public void initTestResources() {
 		processors = mock(TaskProcessorDiscoveryService.class);
-		service = new TaskProcessingService(processors);
+		repository = mock(Repository.class);
+		db = mock(DatabaseService.class);
+		tasksReady = mock(Event.class);
+		jobEvents = mock(Event.class);
+		service = new TaskProcessingService(processors,
+		                                    repository,
+		                                    db,
+		                                    tasksReady,
+		                                    jobEvents);
 		job = mock(Job.class);
 		when(job.getJobId()).thenReturn(randomJobId());
 		when(job.getJobName()).thenReturn(jobName("unit-job_name"));
@@ -72,6 +103,7 @@ public class TaskProcessingServiceTest {
 		when(task.getTaskId()).thenReturn(randomTaskId());
 		processor = mock(TaskProcessor.class);
 		when(processors.findElementTaskProcessor(task)).thenReturn(processor);
+		when(processors.getRetryPolicy(task)).thenReturn(NO_RETRY);
 	}
 	
 	@Test
@@ -85,6 +117,55 @@ public class TaskProcessingServiceTest {
 		verify(task).setTaskState(COMPLETED);
 	}	
 	
+	@Test
+	public void release_successors_when_processor_completes_task() {
+	    when(processor.execute(task)).thenReturn(completed());
+	    
+	    service.executeTask(task);
+	    
+	    verify(task).setTaskState(COMPLETED);
+	    verify(repository).execute(any(Update.class));
+	}
+	
+	@Test
+	public void fire_task_state_changed_event_when_processor_completes_task() {
+	    when(processor.execute(task)).thenReturn(completed());
+	    
+	    service.executeTask(task);
+	    
+	    verify(jobEvents).fire(any(TaskStateChangedEvent.class));
+	}
+	
+	@Test
+	public void wakeup_task_event_loop_when_successors_are_released() {
+	    when(processor.execute(task)).thenReturn(completed());
+	    when(repository.execute(any(Update.class))).thenReturn(1);
+	    
+	    service.executeTask(task);
+	    
+	    verify(tasksReady).fire(any(TasksReadyEvent.class));
+	}
+	
+	@Test
+	public void do_not_wakeup_task_event_loop_when_no_successor_is_released() {
+	    when(processor.execute(task)).thenReturn(completed());
+	    
+	    service.executeTask(task);
+	    
+	    verifyZeroInteractions(tasksReady);
+	}
+	
+	@Test
+	public void do_not_release_successors_of_completed_canary_task() {
+	    when(processor.execute(task)).thenReturn(completed());
+	    when(task.isCanary()).thenReturn(true);
+	    
+	    service.executeTask(task);
+	    
+	    verify(task).setTaskState(CONFIRM);
+	    verifyZeroInteractions(repository);
+	}
+	
 	@Test
     public void job_failed_when_processor_reports_error() {
         when(processor.execute(task)).thenReturn(failed());
@@ -93,6 +174,65 @@ public class TaskProcessingServiceTest {
         service.executeTask(task);
     
         verify(task).setTaskState(FAILED);
+        verifyZeroInteractions(repository);
+    }
+	
+    @SuppressWarnings("unchecked")
+    @Test
+    public void retry_failed_task_when_permitted_by_retry_policy() {
+        when(processor.execute(task)).thenReturn(failed());
+        when(processors.getRetryPolicy(task)).thenReturn(newTaskRetryPolicy()
+                                                         .withMaxAttempts(2)
+                                                         .build());
+        Date notBefore = new Date();
+        when(db.getSingleResult(any(StatementPreparator.class), any(ResultSetMapping.class))).thenReturn(notBefore);
+        
+        service.executeTask(task);
+        
+        verify(task).retry(notBefore);
+        verify(task,never()).setTaskState(FAILED);
+        verify(jobEvents).fire(any(TaskStateChangedEvent.class));
+    }
+    
+    @Test
+    public void retry_task_failed_by_task_processor_error_for_retryable_reason() {
+        when(processor.execute(task)).thenThrow(new IllegalStateException("unit-test"));
+        when(processors.getRetryPolicy(task)).thenReturn(newTaskRetryPolicy()
+                                                         .withMaxAttempts(2)
+                                                         .withRetryableReasons(JOB0300E_TASK_PROCESSOR_CALL_FAILED)
+                                                         .build());
+        
+        service.executeTask(task);
+        
+        verify(task).retry(any(Date.class));
+        verify(task,never()).setTaskState(FAILED);
+    }
+    
+    @Test
+    public void do_not_retry_task_failed_through_task_state_when_retries_are_restricted_to_certain_reasons() {
+        when(processors.getRetryPolicy(task)).thenReturn(newTaskRetryPolicy()
+                                                         .withMaxAttempts(2)
+                                                         .withRetryableReasons(JOB0301E_TASK_TIMEOUT)
+                                                         .build());
+        
+        service.updateTask(task, FAILED);
+        
+        verify(task,never()).retry(any(Date.class));
+        verify(task).setTaskState(FAILED);
+    }
+    
+    @Test
+    public void fail_task_when_all_attempts_are_exhausted() {
+        when(processor.execute(task)).thenReturn(failed());
+        when(task.getAttempts()).thenReturn(1);
+        when(processors.getRetryPolicy(task)).thenReturn(newTaskRetryPolicy()
+                                                         .withMaxAttempts(2)
+                                                         .build());
+        
+        service.executeTask(task);
+        
+        verify(task,never()).retry(any(Date.class));
+        verify(task).setTaskState(FAILED);
     }
 	
     @Test
@@ -104,6 +244,83 @@ public class TaskProcessingServiceTest {
         verify(task).setTaskState(ACTIVE);
     }
 	
+    @Test
+    public void return_pending_outcome_of_async_task_processor() {
+        AsyncTaskProcessor asyncProcessor = mock(AsyncTaskProcessor.class);
+        CompletableFuture<TaskResult> outcome = new CompletableFuture<>();
+        when(processors.findElementTaskProcessor(task)).thenReturn(asyncProcessor);
+        when(asyncProcessor.executeAsync(task)).thenReturn(outcome);
+        
+        assertSame(outcome,service.executeTask(task));
+        verify(task,never()).setTaskState(any(State.class));
+    }
+    
+    @Test
+    public void return_no_outcome_of_sync_task_processor() {
+        when(processor.execute(task)).thenReturn(completed());
+        
+        assertNull(service.executeTask(task));
+    }
+    
+    @Test
+    public void invoke_task_processor_without_modifying_task() {
+        TaskResult result = completed();
+        when(processor.execute(task)).thenReturn(result);
+        
+        assertSame(result,service.invokeTaskProcessor(task).toCompletableFuture().join());
+        verify(task,never()).setTaskState(any(State.class));
+        verifyZeroInteractions(repository,jobEvents);
+    }
+    
+    @Test
+    public void return_failed_outcome_when_task_processor_fails() {
+        IllegalStateException error = new IllegalStateException("unit-test");
+        when(processor.execute(task)).thenThrow(error);
+        
+        CompletableFuture<TaskResult> outcome = service.invokeTaskProcessor(task).toCompletableFuture();
+        assertTrue(outcome.isCompletedExceptionally());
+        verify(task,never()).setTaskState(any(State.class));
+    }
+    
+    @Test
+    public void complete_task_without_task_processor() {
+        when(processors.findElementTaskProcessor(task)).thenReturn(null);
+        when(task.isActive()).thenReturn(true);
+        
+        service.completeTask(task, service.invokeTaskProcessor(task).toCompletableFuture().join(), null);
+        
+        verify(task).setTaskState(COMPLETED);
+        verify(repository).execute(any(Update.class));
+    }
+    
+    @Test
+    public void complete_active_task_with_async_outcome() {
+        when(task.isActive()).thenReturn(true);
+        
+        service.completeTask(task, completed(), null);
+        
+        verify(task).setTaskState(COMPLETED);
+        verify(repository).execute(any(Update.class));
+    }
+    
+    @Test
+    public void fail_active_task_when_async_processor_fails() {
+        when(task.isActive()).thenReturn(true);
+        
+        service.completeTask(task, null, new CompletionException(new IllegalStateException("unit-test")));
+        
+        verify(task).setTaskState(FAILED);
+        verifyZeroInteractions(repository);
+    }
+    
+    @Test
+    public void discard_async_outcome_of_inactive_task() {
+        service.completeTask(task, completed(), null);
+        
+        verify(task,never()).setTaskState(any(State.class));
+        verifyZeroInteractions(repository);
+    }
+    
     @Test
     public void set_job_to_CONFIRM_state_when_canary_task_is_completed() {
         when(task.isCanary()).thenReturn(true);
@@ -171,6 +388,7 @@ public class TaskProcessingServiceTest {
        verify(task,never()).setCanary(false); // It remains a canary task
        verify(task).setTaskState(COMPLETED);
        verify(job).confirmed();
+       verify(repository).execute(any(Update.class));
        verifyZeroInteractions(processor);
    }
    
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.jobs.model;
+
+import static io.leitstand.jobs.model.TaskProcessors.application;
+import static io.leitstand.jobs.service.JobApplication.jobApplication;
+import static io.leitstand.jobs.service.JobType.jobType;
+import static io.leitstand.jobs.service.TaskType.taskType;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import javax.enterprise.inject.Instance;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.leitstand.jobs.service.JobApplication;
+import io.leitstand.jobs.service.JobType;
+import io.leitstand.jobs.service.TaskType;
+
+public class TaskProcessorDiscoveryServiceTest {
+    
+    private static final JobApplication APP = jobApplication("app");
+    private static final JobType JOB_TYPE = jobType("job");
+    private static final TaskType TASK_TYPE = taskType("task");
+    
+    private TaskProcessor jobTypeProcessor;
+    private TaskProcessor defaultProcessor;
+    private List<TaskProcessors> registries;
+    private Instance<TaskProcessors> instance;
+    private TaskProcessorDiscoveryService service;
+    
+    @SuppressWarnings("unchecked")
+    @Before
+    public void initDiscoveryService() {
+        jobTypeProcessor = mock(TaskProcessor.class);
+        defaultProcessor = mock(TaskProcessor.class);
+        registries = asList(application(APP).jobType(JOB_TYPE).taskProcessor(TASK_TYPE, jobTypeProcessor),
+                            application(APP).defaultProcessor(defaultProcessor));
+        instance = mock(Instance.class);
+        when(instance.iterator()).thenAnswer(invocation -> registries.iterator());
+        service = new TaskProcessorDiscoveryService(instance);
+    }
+    
+    private static Job_Task task(JobApplication app, JobType jobType, TaskType taskType) {
+        Job_Task task = mock(Job_Task.class);
+        when(task.getJobApplication()).thenReturn(app);
+        when(task.getJobType()).thenReturn(jobType);
+        when(task.getTaskType()).thenReturn(taskType);
+        return task;
+    }
+    
+    @Test
+    public void dispatch_to_job_type_task_processor() {
+        assertSame(jobTypeProcessor, service.findElementTaskProcessor(task(APP, JOB_TYPE, TASK_TYPE)));
+    }
+    
+    @Test
+    public void dispatch_to_default_task_processor_of_other_job_types() {
+        assertSame(defaultProcessor, service.findElementTaskProcessor(task(APP, jobType("other"), TASK_TYPE)));
+    }
+    
+    @Test
+    public void dispatch_to_default_task_processor_of_unknown_task_types() {
+        assertSame(defaultProcessor, service.findElementTaskProcessor(task(APP, JOB_TYPE, taskType("other"))));
+    }
+    
+    @Test
+    public void return_null_for_unknown_application() {
+        assertNull(service.findElementTaskProcessor(task(jobApplication("other"), JOB_TYPE, TASK_TYPE)));
+    }
+    
+    @Test
+    public void read_registries_once() {
+        service.findElementTaskProcessor(task(APP, JOB_TYPE, TASK_TYPE));
+        service.findElementTaskProcessor(task(APP, JOB_TYPE, taskType("other")));
+        service.getConcurrencyLimits();
+        service.getIoBoundTaskTypes();
+        verify(instance, times(1)).iterator();
+    }
+    
+    @Test
+    public void read_registries_again_after_refresh() {
+        service.findElementTaskProcessor(task(APP, JOB_TYPE, TASK_TYPE));
+        registries = asList(application(APP).defaultProcessor(defaultProcessor));
+        service.refresh();
+        assertSame(defaultProcessor, service.findElementTaskProcessor(task(APP, JOB_TYPE, TASK_TYPE)));
+        verify(instance, times(2)).iterator();
+    }
+    
+    @Test
+    public void discover_task_processor_registered_after_unsuccessful_lookup() {
+        TaskProcessors registry = mock(TaskProcessors.class);
+        when(registry.providesTaskProcessorsFor(APP, JOB_TYPE)).thenReturn(true);
+        registries = asList(registry);
+        Job_Task task = task(APP, JOB_TYPE, TASK_TYPE);
+        assertNull(service.findElementTaskProcessor(task));
+        
+        when(registry.getTaskProcessor(TASK_TYPE)).thenReturn(jobTypeProcessor);
+        assertSame(jobTypeProcessor, service.findElementTaskProcessor(task));
+    }
+    
+    @Test
+    public void apply_task_type_timeout_before_default_timeout() {
+        registries = asList(application(APP).jobType(JOB_TYPE)
+                                            .timeout(TASK_TYPE, 5, MINUTES)
+                                            .defaultTimeout(1, HOURS));
+        TaskTimeouts timeouts = service.getTaskTimeouts();
+        assertEquals(MINUTES.toMillis(5), timeouts.getTimeout(APP, JOB_TYPE, TASK_TYPE));
+        assertEquals(HOURS.toMillis(1), timeouts.getTimeout(APP, JOB_TYPE, taskType("other")));
+    }
+    
+    @Test
+    public void apply_timeout_of_first_registry_declaring_a_timeout() {
+        registries = asList(application(APP).jobType(JOB_TYPE)
+                                            .timeout(TASK_TYPE, 5, MINUTES),
+                            application(APP).defaultTimeout(1, HOURS));
+        TaskTimeouts timeouts = service.getTaskTimeouts();
+        assertEquals(MINUTES.toMillis(5), timeouts.getTimeout(APP, JOB_TYPE, TASK_TYPE));
+        assertEquals(HOURS.toMillis(1), timeouts.getTimeout(APP, JOB_TYPE, taskType("other")));
+        assertEquals(HOURS.toMillis(1), timeouts.getTimeout(APP, jobType("other"), TASK_TYPE));
+    }
+    
+    @Test
+    public void tasks_without_declared_timeout_never_expire() {
+        TaskTimeouts timeouts = service.getTaskTimeouts();
+        assertEquals(0, timeouts.getTimeout(APP, JOB_TYPE, TASK_TYPE));
+        assertFalse(timeouts.isEnabled());
+    }
+    
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.jobs.model;
+
+import static io.leitstand.jobs.model.TaskRateLimit.rateLimit;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TaskRateLimitTest {
+
+    private static final long NOW = 1_000_000L;
+    
+    @Test
+    public void release_tasks_at_emission_interval() {
+        TaskRateLimit limit = rateLimit(60, 1, MINUTES);
+        assertEquals(1000, limit.getIntervalMillis());
+        assertEquals(0, limit.getToleranceMillis());
+        
+        long release = limit.newBucket(NOW);
+        assertTrue(release <= NOW);
+        release = limit.release(release, NOW);
+        assertEquals(NOW + 1000, release);
+        release = limit.release(release, NOW + 1000);
+        assertEquals(NOW + 2000, release);
+    }
+    
+    @Test
+    public void release_burst_from_new_bucket() {
+        TaskRateLimit limit = rateLimit(60, 1, MINUTES).withBurst(3);
+        assertEquals(2000, limit.getToleranceMillis());
+        
+        long release = limit.newBucket(NOW);
+        int released = 0;
+        while(release <= NOW) {
+            release = limit.release(release, NOW);
+            released++;
+        }
+        assertEquals(3, released);
+        assertEquals(NOW + 1000, release);
+    }
+    
+    @Test
+    public void idle_bucket_permits_full_burst() {
+        TaskRateLimit limit = rateLimit(60, 1, MINUTES).withBurst(3);
+        long release = limit.release(limit.newBucket(NOW), NOW);
+        
+        long later = NOW + 60_000;
+        assertEquals(limit.release(limit.newBucket(later), later), 
+                     limit.release(release, later));
+    }
+    
+    @Test
+    public void lower_rate_limit_has_longer_emission_interval() {
+        TaskRateLimit slow = rateLimit(10, 1, MINUTES);
+        TaskRateLimit fast = rateLimit(10, 1, SECONDS);
+        assertSame(slow, slow.lower(fast));
+        assertSame(slow, fast.lower(slow));
+    }
+    
+}
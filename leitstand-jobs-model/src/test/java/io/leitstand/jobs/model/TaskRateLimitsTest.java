@@ -0,0 +1,92 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.jobs.model;
+
+import static io.leitstand.jobs.model.TaskRateLimit.rateLimit;
+import static io.leitstand.jobs.model.TaskRateLimits.noRateLimits;
+import static io.leitstand.jobs.model.TaskRateLimits.rateLimits;
+import static io.leitstand.jobs.service.JobId.randomJobId;
+import static io.leitstand.jobs.service.TaskType.taskType;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonMap;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import io.leitstand.inventory.service.ElementGroupId;
+import io.leitstand.jobs.service.JobId;
+import io.leitstand.jobs.service.TaskType;
+
+public class TaskRateLimitsTest {
+    
+    private static final TaskType REBOOT = taskType("reboot");
+    private static final TaskType PING = taskType("ping");
+    
+    @Test
+    public void no_rate_limits_are_disabled() {
+        TaskRateLimits limits = noRateLimits();
+        assertFalse(limits.isEnabled());
+        assertTrue(limits.getBuckets(REBOOT, randomJobId(), null).isEmpty());
+    }
+    
+    @Test
+    public void assign_task_type_bucket_to_limited_task_types_only() {
+        TaskRateLimit limit = rateLimit(10, 1, MINUTES);
+        TaskRateLimits limits = rateLimits(singletonMap(REBOOT, limit), null, null);
+        assertTrue(limits.isEnabled());
+        assertEquals(singletonMap("type:reboot", limit), 
+                     limits.getBuckets(REBOOT, randomJobId(), null));
+        assertTrue(limits.getBuckets(PING, randomJobId(), null).isEmpty());
+    }
+    
+    @Test
+    public void assign_element_group_bucket_to_tasks_of_group_bound_jobs_only() {
+        TaskRateLimit limit = rateLimit(10, 1, MINUTES);
+        TaskRateLimits limits = rateLimits(emptyMap(), limit, null);
+        ElementGroupId group = ElementGroupId.valueOf(UUID.randomUUID().toString());
+        assertEquals(singletonMap("group:"+group.getValue(), limit),
+                     limits.getBuckets(PING, randomJobId(), group));
+        assertTrue(limits.getBuckets(PING, randomJobId(), null).isEmpty());
+    }
+    
+    @Test
+    public void assign_all_buckets_of_a_task() {
+        TaskRateLimit limit = rateLimit(10, 1, MINUTES);
+        TaskRateLimits limits = rateLimits(singletonMap(REBOOT, limit), limit, limit);
+        JobId job = randomJobId();
+        ElementGroupId group = ElementGroupId.valueOf(UUID.randomUUID().toString());
+        Map<String,TaskRateLimit> buckets = limits.getBuckets(REBOOT, job, group);
+        assertEquals(3, buckets.size());
+        assertTrue(buckets.containsKey("type:reboot"));
+        assertTrue(buckets.containsKey("group:"+group.getValue()));
+        assertTrue(buckets.containsKey("job:"+job.getValue()));
+    }
+    
+    @Test
+    public void retain_idle_buckets_for_the_longest_burst_tolerance() {
+        TaskRateLimits limits = rateLimits(singletonMap(REBOOT, rateLimit(60, 1, MINUTES).withBurst(5)), 
+                                           rateLimit(60, 1, MINUTES).withBurst(2), 
+                                           null);
+        assertEquals(4000, limits.getMaxToleranceMillis());
+    }
+    
+}
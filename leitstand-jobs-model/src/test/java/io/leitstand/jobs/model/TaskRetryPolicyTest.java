@@ -0,0 +1,86 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.jobs.model;
+
+import static io.leitstand.jobs.model.TaskRetryPolicy.NO_RETRY;
+import static io.leitstand.jobs.model.TaskRetryPolicy.newTaskRetryPolicy;
+import static io.leitstand.jobs.service.ReasonCode.JOB0300E_TASK_PROCESSOR_CALL_FAILED;
+import static io.leitstand.jobs.service.ReasonCode.JOB0301E_TASK_TIMEOUT;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TaskRetryPolicyTest {
+
+    @Test
+    public void never_retry_a_task_by_default() {
+        assertFalse(NO_RETRY.isRetryable(1, null));
+    }
+    
+    @Test
+    public void retry_task_until_all_attempts_are_exhausted() {
+        TaskRetryPolicy policy = newTaskRetryPolicy()
+                                 .withMaxAttempts(3)
+                                 .build();
+        
+        assertTrue(policy.isRetryable(1, null));
+        assertTrue(policy.isRetryable(2, null));
+        assertFalse(policy.isRetryable(3, null));
+    }
+    
+    @Test
+    public void retry_task_for_retryable_reasons_only() {
+        TaskRetryPolicy policy = newTaskRetryPolicy()
+                                 .withMaxAttempts(3)
+                                 .withRetryableReasons(JOB0301E_TASK_TIMEOUT)
+                                 .build();
+        
+        assertTrue(policy.isRetryable(1, JOB0301E_TASK_TIMEOUT.getReasonCode()));
+        assertFalse(policy.isRetryable(1, JOB0300E_TASK_PROCESSOR_CALL_FAILED.getReasonCode()));
+        assertFalse(policy.isRetryable(1, null));
+    }
+    
+    @Test
+    public void double_backoff_per_attempt_with_equal_jitter() {
+        TaskRetryPolicy policy = newTaskRetryPolicy()
+                                 .withInitialBackoff(10, SECONDS)
+                                 .withMaxBackoff(60, SECONDS)
+                                 .build();
+        
+        assertBackoff(5_000, 10_000, policy.getBackoffMillis(1));
+        assertBackoff(10_000, 20_000, policy.getBackoffMillis(2));
+        assertBackoff(20_000, 40_000, policy.getBackoffMillis(3));
+    }
+    
+    @Test
+    public void limit_backoff_to_max_backoff() {
+        TaskRetryPolicy policy = newTaskRetryPolicy()
+                                 .withInitialBackoff(10, SECONDS)
+                                 .withMaxBackoff(60, SECONDS)
+                                 .build();
+        
+        assertBackoff(30_000, 60_000, policy.getBackoffMillis(4));
+        assertBackoff(30_000, 60_000, policy.getBackoffMillis(100));
+    }
+    
+    private static void assertBackoff(long min, long max, long backoff) {
+        assertTrue(backoff >= min);
+        assertTrue(backoff <= max);
+    }
+    
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.jobs.model;
+
+import static io.leitstand.jobs.model.TaskResult.completed;
+import static io.leitstand.jobs.service.TaskId.randomTaskId;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isA;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import io.leitstand.commons.model.Query;
+import io.leitstand.commons.model.Repository;
+import io.leitstand.jobs.service.TaskId;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TaskSchedulerServiceTest {
+
+    @Mock
+    private Repository repository;
+    
+    @Mock
+    private Repository batchRepository;
+    
+    @Mock
+    private TaskProcessingService service;
+    
+    @InjectMocks
+    private TaskSchedulerService scheduler = new TaskSchedulerService();
+    
+    @SuppressWarnings("unchecked")
+    @Test
+    public void load_batch_and_record_claimed_tasks() {
+        Job_Task first = mock(Job_Task.class);
+        Job_Task second = mock(Job_Task.class);
+        when(repository.execute(any(Query.class))).thenReturn(asList(first,second));
+        
+        scheduler.startTasks(asList(randomTaskId(),randomTaskId()));
+        
+        verify(service).startTask(first);
+        verify(service).startTask(second);
+        verifyZeroInteractions(batchRepository);
+    }
+    
+    @SuppressWarnings("unchecked")
+    @Test
+    public void persist_outcomes_of_batch_by_batch_writing_repository() {
+        Job_Task completed = task();
+        Job_Task failed = task();
+        TaskResult result = completed();
+        CompletableFuture<TaskResult> failure = new CompletableFuture<>();
+        failure.completeExceptionally(new IllegalStateException("unit-test"));
+        Map<TaskId,CompletableFuture<TaskResult>> outcomes = new HashMap<>();
+        outcomes.put(completed.getTaskId(), completedFuture(result));
+        outcomes.put(failed.getTaskId(), failure);
+        when(batchRepository.execute(any(Query.class))).thenReturn(asList(completed,failed));
+        
+        scheduler.completeTasks(asList(completed,failed), outcomes);
+        
+        verify(service).applyOutcome(completed, result, null);
+        verify(service).applyOutcome(isA(Job_Task.class), (TaskResult) isNull(), isA(CompletionException.class));
+        verifyZeroInteractions(repository);
+    }
+    
+    @SuppressWarnings("unchecked")
+    @Test
+    public void release_successors_by_batch_writing_repository_after_all_outcomes_have_been_applied() {
+        Job_Task first = task();
+        Job_Task second = task();
+        TaskResult result = completed();
+        Map<TaskId,CompletableFuture<TaskResult>> outcomes = new HashMap<>();
+        outcomes.put(first.getTaskId(), completedFuture(result));
+        outcomes.put(second.getTaskId(), completedFuture(result));
+        when(batchRepository.execute(any(Query.class))).thenReturn(asList(first,second));
+        when(service.applyOutcome(any(Job_Task.class), eq(result), isNull(Throwable.class))).thenReturn(true);
+        
+        scheduler.completeTasks(asList(first,second), outcomes);
+        
+        InOrder order = inOrder(service);
+        order.verify(service).applyOutcome(first, result, null);
+        order.verify(service).applyOutcome(second, result, null);
+        order.verify(service).releaseSuccessorsOf(first, batchRepository);
+        order.verify(service).releaseSuccessorsOf(second, batchRepository);
+        verifyZeroInteractions(repository);
+    }
+    
+    @SuppressWarnings("unchecked")
+    @Test
+    public void copy_processor_changes_onto_reloaded_task() {
+        Job_Task executed = task();
+        TaskId taskId = executed.getTaskId();
+        Job_Task reloaded = mock(Job_Task.class);
+        when(reloaded.getTaskId()).thenReturn(taskId);
+        when(reloaded.isActive()).thenReturn(true);
+        Map<TaskId,CompletableFuture<TaskResult>> outcomes = new HashMap<>();
+        outcomes.put(taskId, completedFuture(completed()));
+        when(batchRepository.execute(any(Query.class))).thenReturn(asList(reloaded));
+        
+        scheduler.completeTasks(asList(executed), outcomes);
+        
+        verify(reloaded).copyProcessorChanges(executed);
+    }
+    
+    private static Job_Task task() {
+        Job_Task task = mock(Job_Task.class);
+        when(task.getTaskId()).thenReturn(randomTaskId());
+        return task;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.jobs.model;
+
+import static io.leitstand.jobs.model.TaskShards.NODE_LEASE_PREFIX;
+import static io.leitstand.jobs.model.TaskShards.SHARD_LEASE_PREFIX;
+import static io.leitstand.jobs.model.TaskShards.noShards;
+import static io.leitstand.jobs.model.TaskShards.shards;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TaskShardsTest {
+    
+    private static final String NODE = "unit-node";
+    
+    private LeaseService leases;
+    
+    @Before
+    public void initTestResources() {
+        leases = mock(LeaseService.class);
+        when(leases.acquireLease(anyString(), eq(NODE), anyLong())).thenReturn(true);
+        when(leases.countLeases(NODE_LEASE_PREFIX)).thenReturn(1);
+    }
+    
+    @Test
+    public void sharding_is_disabled_without_shards() {
+        assertFalse(noShards().isEnabled());
+        assertTrue(noShards().getOwnedShards().isEmpty());
+    }
+
+    @Test
+    public void single_node_owns_all_shards() {
+        TaskShards shards = shards(4);
+        shards.rebalance(leases, NODE, 15);
+        assertTrue(shards.isEnabled());
+        assertEquals(4, shards.getOwnedShards().size());
+        verify(leases).acquireLease(NODE_LEASE_PREFIX+NODE, NODE, 15);
+    }
+    
+    @Test
+    public void node_owns_fair_share_of_shards() {
+        when(leases.countLeases(NODE_LEASE_PREFIX)).thenReturn(3);
+        TaskShards shards = shards(4);
+        shards.rebalance(leases, NODE, 15);
+        assertEquals(2, shards.getOwnedShards().size());
+    }
+    
+    @Test
+    public void release_surplus_shards_when_node_joins() {
+        TaskShards shards = shards(4);
+        shards.rebalance(leases, NODE, 15);
+        
+        when(leases.countLeases(NODE_LEASE_PREFIX)).thenReturn(2);
+        shards.rebalance(leases, NODE, 15);
+        
+        assertEquals(2, shards.getOwnedShards().size());
+        verify(leases,times(2)).releaseLease(anyString(), eq(NODE));
+    }
+    
+    @Test
+    public void do_not_own_shards_leased_by_other_nodes() {
+        when(leases.acquireLease(SHARD_LEASE_PREFIX+"1", NODE, 15)).thenReturn(false);
+        TaskShards shards = shards(2);
+        shards.rebalance(leases, NODE, 15);
+        assertEquals(1, shards.getOwnedShards().size());
+        assertTrue(shards.getOwnedShards().contains(0));
+    }
+    
+    @Test
+    public void release_all_shards() {
+        TaskShards shards = shards(2);
+        shards.rebalance(leases, NODE, 15);
+        shards.releaseAll(leases, NODE);
+        assertTrue(shards.getOwnedShards().isEmpty());
+        verify(leases).releaseLease(SHARD_LEASE_PREFIX+0, NODE);
+        verify(leases).releaseLease(SHARD_LEASE_PREFIX+1, NODE);
+        verify(leases).releaseLease(NODE_LEASE_PREFIX+NODE, NODE);
+    }
+    
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.jobs.model;
+
+import static io.leitstand.jobs.model.TaskProcessors.application;
+import static io.leitstand.jobs.model.TaskTimeouts.noTimeouts;
+import static io.leitstand.jobs.model.TaskTimeouts.taskTimeouts;
+import static io.leitstand.jobs.service.JobApplication.jobApplication;
+import static io.leitstand.jobs.service.JobType.jobType;
+import static io.leitstand.jobs.service.TaskType.taskType;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import io.leitstand.jobs.service.JobApplication;
+import io.leitstand.jobs.service.JobType;
+import io.leitstand.jobs.service.TaskType;
+
+public class TaskTimeoutsTest {
+    
+    private static final JobApplication APP = jobApplication("app");
+    private static final JobType JOB_TYPE = jobType("job");
+    private static final TaskType TASK_TYPE = taskType("task");
+
+    @Test
+    public void no_timeouts_let_no_task_expire() {
+        TaskTimeouts timeouts = noTimeouts();
+        assertFalse(timeouts.isEnabled());
+        assertEquals(0, timeouts.getTimeout(APP, JOB_TYPE, TASK_TYPE));
+    }
+    
+    @Test
+    public void apply_default_timeout_to_tasks_without_declared_timeout() {
+        TaskTimeouts timeouts = taskTimeouts(emptyList(), MINUTES.toMillis(1));
+        assertTrue(timeouts.isEnabled());
+        assertEquals(MINUTES.toMillis(1), timeouts.getTimeout(APP, JOB_TYPE, TASK_TYPE));
+    }
+    
+    @Test
+    public void do_not_apply_timeouts_of_other_job_applications() {
+        TaskTimeouts timeouts = taskTimeouts(asList(application(jobApplication("other")).timeout(TASK_TYPE, 5, MINUTES)), 
+                                             0);
+        assertEquals(0, timeouts.getTimeout(APP, JOB_TYPE, TASK_TYPE));
+    }
+    
+    @Test
+    public void declared_zero_timeout_overrides_default_timeout() {
+        TaskTimeouts timeouts = taskTimeouts(asList(application(APP).timeout(TASK_TYPE, 0, MINUTES)), 
+                                             HOURS.toMillis(1));
+        assertEquals(0, timeouts.getTimeout(APP, JOB_TYPE, TASK_TYPE));
+        assertEquals(HOURS.toMillis(1), timeouts.getTimeout(APP, JOB_TYPE, taskType("other")));
+    }
+    
+    @Test
+    public void keep_task_type_rule_before_default_rule_of_a_registry() {
+        TaskTimeouts timeouts = taskTimeouts(asList(application(APP).defaultTimeout(1, HOURS)
+                                                                    .timeout(TASK_TYPE, 5, MINUTES)), 
+                                             0);
+        assertEquals(2, timeouts.getRules().size());
+        assertEquals(TASK_TYPE, timeouts.getRules().get(0).getTaskType());
+        assertEquals(MINUTES.toMillis(5), timeouts.getTimeout(APP, JOB_TYPE, TASK_TYPE));
+    }
+    
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2020 RtBrick Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy
+ * of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.leitstand.jobs.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TtlCacheTest {
+    
+    private AtomicLong clock;
+    private TtlCache<String,String> cache;
+    
+    @Before
+    public void initCache() {
+        clock = new AtomicLong();
+        cache = new TtlCache<>(2, 1000, clock::get);
+    }
+
+    @Test
+    public void return_cached_value() {
+        cache.put("key", "value");
+        assertEquals("value", cache.get("key"));
+    }
+    
+    @Test
+    public void return_null_for_unknown_key() {
+        assertNull(cache.get("key"));
+    }
+    
+    @Test
+    public void evict_expired_value() {
+        cache.put("key", "value");
+        clock.set(1001);
+        assertNull(cache.get("key"));
+        assertEquals(0, cache.getSize());
+        assertEquals(1, cache.getEvictions());
+    }
+    
+    @Test
+    public void evict_least_recently_used_value_when_size_limit_is_exceeded() {
+        cache.put("a", "a");
+        cache.put("b", "b");
+        cache.get("a");
+        cache.put("c", "c");
+        assertEquals("a", cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals("c", cache.get("c"));
+        assertEquals(1, cache.getEvictions());
+    }
+    
+    @Test
+    public void invalidate_value() {
+        cache.put("key", "value");
+        cache.invalidate("key");
+        assertNull(cache.get("key"));
+    }
+    
+    @Test
+    public void invalidate_matching_values() {
+        cache.put("a", "x");
+        cache.put("b", "y");
+        cache.invalidateIf((key,value) -> "x".equals(value));
+        assertNull(cache.get("a"));
+        assertEquals("y", cache.get("b"));
+    }
+    
+    @Test
+    public void invalidate_all_values() {
+        cache.put("a", "a");
+        cache.put("b", "b");
+        cache.invalidateAll();
+        assertEquals(0, cache.getSize());
+    }
+    
+}